@@ -0,0 +1,24 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.fart.internal;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The Java 21 version of this class, used instead of the base version when running from the multi-release jar.
+ */
+class VirtualThreads {
+    static boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * Creates an executor that runs every task on a new virtual thread.
+     */
+    static ExecutorService create() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("FART-virtual-", 0).factory());
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.fart.internal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+import net.minecraftforge.fart.api.RunStats.Phase;
+import net.minecraftforge.fart.api.Transformer;
+import net.minecraftforge.fart.api.Transformer.Entry;
+
+/**
+ * The actual flight recorder events, loaded by {@link Jfr} when the JVM supports them.
+ */
+class JfrEvents extends Jfr {
+    private static final String CATEGORY = "Forge Auto Renaming Tool";
+
+    private static final EventType PHASE = EventType.getEventType(PhaseEvent.class);
+    private static final EventType TRANSFORM = EventType.getEventType(TransformEvent.class);
+    private static final EventType CLASS_LOOKUP = EventType.getEventType(ClassLookupEvent.class);
+    private static final EventType LIBRARY = EventType.getEventType(LibraryEvent.class);
+
+    @Override
+    Object beginPhase() {
+        return PHASE.isEnabled() ? begin(new PhaseEvent()) : null;
+    }
+
+    @Override
+    void endPhase(Object event, Path input, Phase phase) {
+        if (event == null)
+            return;
+
+        PhaseEvent e = (PhaseEvent)event;
+        e.end();
+        if (e.shouldCommit()) {
+            e.input = input.toString();
+            e.phase = phase.name();
+            e.commit();
+        }
+    }
+
+    @Override
+    Object beginTransform() {
+        return TRANSFORM.isEnabled() ? begin(new TransformEvent()) : null;
+    }
+
+    @Override
+    void endTransform(Object event, Transformer transformer, Entry input, Entry output) {
+        if (event == null)
+            return;
+
+        TransformEvent e = (TransformEvent)event;
+        e.end();
+        if (e.shouldCommit()) {
+            e.transformer = RunRecorder.describe(transformer);
+            e.entry = input.getName();
+            e.inputSize = input.size();
+            e.outputSize = output == null ? 0 : output.size();
+            e.changed = output != input;
+            e.commit();
+        }
+    }
+
+    @Override
+    Object beginClassLookup() {
+        return CLASS_LOOKUP.isEnabled() ? begin(new ClassLookupEvent()) : null;
+    }
+
+    @Override
+    void endClassLookup(Object event, String name, boolean found) {
+        if (event == null)
+            return;
+
+        ClassLookupEvent e = (ClassLookupEvent)event;
+        e.end();
+        if (e.shouldCommit()) {
+            e.className = name;
+            e.found = found;
+            e.commit();
+        }
+    }
+
+    @Override
+    Object beginLibrary() {
+        return LIBRARY.isEnabled() ? begin(new LibraryEvent()) : null;
+    }
+
+    @Override
+    void endLibrary(Object event, Path path, String operation, int classes) {
+        if (event == null)
+            return;
+
+        LibraryEvent e = (LibraryEvent)event;
+        e.end();
+        if (e.shouldCommit()) {
+            e.path = path.toString();
+            e.operation = operation;
+            e.classes = classes;
+            try {
+                e.size = Files.isRegularFile(path) ? Files.size(path) : 0;
+            } catch (IOException ex) {
+                e.size = 0;
+            }
+            e.commit();
+        }
+    }
+
+    private static <T extends Event> T begin(T event) {
+        event.begin();
+        return event;
+    }
+
+    @Name("net.minecraftforge.fart.Phase")
+    @Label("Renamer Phase")
+    @Category(CATEGORY)
+    @Description("A phase of processing a single input jar")
+    @StackTrace(false)
+    static class PhaseEvent extends Event {
+        @Label("Input")
+        String input;
+
+        @Label("Phase")
+        String phase;
+    }
+
+    @Name("net.minecraftforge.fart.Transform")
+    @Label("Slow Transform")
+    @Category(CATEGORY)
+    @Description("A transformer processing a single entry, recorded when it takes longer than the threshold")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static class TransformEvent extends Event {
+        @Label("Transformer")
+        String transformer;
+
+        @Label("Entry")
+        String entry;
+
+        @Label("Input Size")
+        @DataAmount
+        long inputSize;
+
+        @Label("Output Size")
+        @DataAmount
+        long outputSize;
+
+        @Label("Changed")
+        boolean changed;
+    }
+
+    @Name("net.minecraftforge.fart.ClassLookup")
+    @Label("Class Lookup")
+    @Category(CATEGORY)
+    @Description("Looking up a class that wasn't cached yet in the class providers")
+    @StackTrace(false)
+    static class ClassLookupEvent extends Event {
+        @Label("Class")
+        String className;
+
+        @Label("Found")
+        boolean found;
+    }
+
+    @Name("net.minecraftforge.fart.Library")
+    @Label("Library")
+    @Category(CATEGORY)
+    @Description("Opening a library for inheritance, or creating its index")
+    @StackTrace(false)
+    static class LibraryEvent extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Operation")
+        String operation;
+
+        @Label("Classes")
+        int classes;
+
+        @Label("Size")
+        @DataAmount
+        long size;
+    }
+}
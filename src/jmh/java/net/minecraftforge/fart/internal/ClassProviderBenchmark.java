@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.fart.internal;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reading class infos for the inheritance map, and looking them up again once cached.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClassProviderBenchmark {
+    @Param({"2000"})
+    public int classes;
+
+    private Collection<byte[]> data;
+    private List<String> classNames;
+    private SortedClassProvider provider;
+
+    @Setup
+    public void setup() {
+        Fixtures fixtures = new Fixtures(this.classes, 42);
+        this.data = fixtures.getClasses().values();
+        this.classNames = fixtures.getClassNames();
+        this.provider = new SortedClassProvider(Collections.singletonList(fixtures.getClassProvider()), Fixtures.QUIET);
+        for (String name : this.classNames)
+            this.provider.getClass(name);
+    }
+
+    @Benchmark
+    public void parseClassInfo(Blackhole bh) {
+        for (byte[] cls : this.data)
+            bh.consume(new ClassProviderImpl.ClassInfo(cls));
+    }
+
+    @Benchmark
+    public void sortedLookup(Blackhole bh) {
+        for (String name : this.classNames)
+            bh.consume(this.provider.getClass(name));
+    }
+}
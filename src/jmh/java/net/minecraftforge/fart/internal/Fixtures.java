@@ -0,0 +1,532 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.fart.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import net.minecraftforge.fart.api.ClassProvider;
+import net.minecraftforge.fart.api.Logger;
+import net.minecraftforge.fart.api.Transformer.ClassEntry;
+import net.minecraftforge.srgutils.IMappingFile;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Generates a reproducible set of classes and mappings, so that the benchmarks don't depend on any real jar.
+ * <p>
+ * The classes form class and interface hierarchies several levels deep and reference each other's members, so that
+ * resolving and renaming them does real work. A few of them are shaped to trip each of the fixers: records without
+ * their record components, enums with misaligned parameter annotations, and locals with invalid names.
+ * <p>
+ * How many there are, how deep the hierarchies go and what else ends up in the jar is set by a {@link Shape}, so the
+ * same generator serves both the microbenchmarks and the scale tests.
+ */
+public class Fixtures {
+    private static final String PREFIX = "com/example/";
+    private static final String LIBRARY = PREFIX + "lib/L";
+    private static final String ABSENT = PREFIX + "absent/A";
+    private static final int FIELDS = 4;
+    private static final int METHODS = 6;
+    /** Throws away everything, benchmarks shouldn't measure the console. */
+    static final Logger QUIET = Logger.of(Logger.Level.WARN, line -> {});
+
+    private final Shape shape;
+    private final int[] depths;
+    private final Map<String, byte[]> classes = new LinkedHashMap<>();
+    private final Map<String, byte[]> libraries = new LinkedHashMap<>();
+    private final Map<String, Integer> lines = new LinkedHashMap<>();
+    private final List<String> classNames = new ArrayList<>();
+    private final List<String[]> methodRefs = new ArrayList<>();
+    private final List<String[]> fieldRefs = new ArrayList<>();
+    private final StringBuilder mappings = new StringBuilder("tsrg2 left right\n");
+    private int mappingEntries = 0;
+
+    /**
+     * @param count the number of classes to generate
+     * @param seed the seed for everything that is picked at random, the same seed always gives the same classes
+     */
+    public Fixtures(int count, long seed) {
+        this(new Shape().classes(count).seed(seed));
+    }
+
+    public Fixtures(Shape shape) {
+        this.shape = shape;
+        this.depths = new int[shape.classes];
+        Random rand = new Random(shape.seed);
+
+        for (int x = 0; x < shape.libraries; x++)
+            addLibrary(x);
+
+        for (int x = 0; x < shape.classes; x++) {
+            if (x % 30 == 29)
+                addRecord(x);
+            else if (x % 25 == 24)
+                addEnum(x);
+            else if (x % 10 == 0)
+                addInterface(x);
+            else
+                addClass(x, rand);
+        }
+
+        // Real mappings cover far more than any one jar, which makes them slower to load and to look things up in
+        for (int x = 0; this.mappingEntries < shape.mappingEntries; x++) {
+            mapClass(ABSENT + x, "net/renamed/absent/A" + x);
+            for (int f = 0; f < FIELDS; f++)
+                mapField("f" + f, fieldDesc(f));
+            for (int m = 0; m < METHODS; m++)
+                mapMethod("m" + m, methodDesc(m));
+        }
+    }
+
+    static String name(int index) {
+        return PREFIX + 'p' + (index / 100) + "/C" + index;
+    }
+
+    private static String mapped(int index) {
+        return "net/renamed/p" + (index / 100) + "/Mapped" + index;
+    }
+
+    private static String methodDesc(int method) {
+        switch (method % 3) {
+            case 0:  return "()V";
+            case 1:  return "(ILjava/lang/String;)I";
+            default: return "(JLjava/lang/Object;I)Ljava/lang/Object;";
+        }
+    }
+
+    private static String fieldDesc(int field) {
+        return field % 2 == 0 ? "I" : "Ljava/lang/String;";
+    }
+
+    /** The nearest earlier index that is a plain class, or -1. */
+    private static int classBefore(int index) {
+        for (int x = index - 1; x >= 0; x--) {
+            if (x % 30 != 29 && x % 25 != 24 && x % 10 != 0)
+                return x;
+        }
+        return -1;
+    }
+
+    private void addLibrary(int index) {
+        String name = LIBRARY + index;
+        ClassWriter cw = new ClassWriter(0);
+        cw.visit(V1_8, ACC_PUBLIC | ACC_SUPER, name, null, "java/lang/Object", null);
+
+        MethodVisitor init = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(ALOAD, 0);
+        init.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        init.visitInsn(RETURN);
+        init.visitMaxs(1, 1);
+        init.visitEnd();
+
+        // Not mapped, these stand in for the libraries the input is compiled against
+        for (int m = 0; m < METHODS; m++) {
+            MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "lib" + m, "()V", null, null);
+            mv.visitCode();
+            mv.visitInsn(RETURN);
+            mv.visitMaxs(0, 1);
+            mv.visitEnd();
+        }
+        cw.visitEnd();
+        this.libraries.put(name, cw.toByteArray());
+    }
+
+    private void addInterface(int index) {
+        String name = name(index);
+        // Every interface extends the previous one, building interface hierarchies as deep as the shape allows
+        String[] parents = null;
+        this.depths[index] = 1;
+        if (index >= 10 && this.depths[index - 10] < this.shape.interfaceDepth) {
+            parents = new String[] { name(index - 10) };
+            this.depths[index] = this.depths[index - 10] + 1;
+        }
+
+        ClassWriter cw = new ClassWriter(0);
+        cw.visit(V1_8, ACC_PUBLIC | ACC_ABSTRACT | ACC_INTERFACE, name, null, "java/lang/Object", parents);
+        cw.visitSource("C" + index + ".java", null);
+        mapClass(index);
+        for (int m = 0; m < METHODS; m++) {
+            String desc = methodDesc(m);
+            cw.visitMethod(ACC_PUBLIC | ACC_ABSTRACT, "m" + m, desc, null, null).visitEnd();
+            mapMethod("m" + m, desc);
+        }
+        cw.visitEnd();
+        add(name, cw.toByteArray(), 0);
+    }
+
+    private void addClass(int index, Random rand) {
+        String name = name(index);
+        int superIndex = classBefore(index);
+        boolean extend = superIndex != -1 && rand.nextInt(4) != 0 && this.depths[superIndex] < this.shape.classDepth;
+        String superName;
+        if (extend) {
+            superName = name(superIndex);
+            this.depths[index] = this.depths[superIndex] + 1;
+        } else {
+            superName = this.shape.libraries == 0 ? "java/lang/Object" : LIBRARY + rand.nextInt(this.shape.libraries);
+            this.depths[index] = 1;
+        }
+        int intf = (index / 10) * 10;
+        String[] interfaces = { name(intf) };
+
+        ClassWriter cw = new ClassWriter(0);
+        cw.visit(V1_8, ACC_PUBLIC | ACC_SUPER, name, null, superName, interfaces);
+        cw.visitSource("C" + index + ".java", null);
+        mapClass(index);
+
+        for (int f = 0; f < FIELDS; f++) {
+            cw.visitField(ACC_PROTECTED, "f" + f, fieldDesc(f), null, null).visitEnd();
+            mapField("f" + f, fieldDesc(f));
+            this.fieldRefs.add(new String[] { name, "f" + f, fieldDesc(f) });
+        }
+
+        MethodVisitor init = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(ALOAD, 0);
+        init.visitMethodInsn(INVOKESPECIAL, superName, "<init>", "()V", false);
+        init.visitInsn(RETURN);
+        init.visitMaxs(1, 1);
+        init.visitEnd();
+
+        int line = 10;
+        for (int m = 0; m < METHODS; m++) {
+            String desc = methodDesc(m);
+            mapMethod("m" + m, desc);
+            this.methodRefs.add(new String[] { name, "m" + m, desc });
+            line = addMethod(cw, name, extend ? superName : null, interfaces[0], m, desc, rand, line);
+        }
+        cw.visitEnd();
+        add(name, cw.toByteArray(), line);
+    }
+
+    private int addMethod(ClassWriter cw, String owner, String superName, String intf, int method, String desc, Random rand, int line) {
+        Type[] args = Type.getArgumentTypes(desc);
+        Type ret = Type.getReturnType(desc);
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "m" + method, desc, null, null);
+        mv.visitCode();
+        Label start = new Label();
+        Label end = new Label();
+        mv.visitLabel(start);
+
+        // Touch a field, and call into both the parents, so that there are member references to resolve
+        mv.visitLineNumber(line++, start);
+        mv.visitVarInsn(ALOAD, 0);
+        int field = rand.nextInt(FIELDS / 2) * 2;
+        mv.visitFieldInsn(GETFIELD, owner, "f" + field, fieldDesc(field));
+        mv.visitInsn(POP);
+        Label call = new Label();
+        mv.visitLabel(call);
+        mv.visitLineNumber(line++, call);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKEVIRTUAL, owner, "m0", "()V", false);
+        if (superName != null) {
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitMethodInsn(INVOKESPECIAL, superName, "m0", "()V", false);
+        } else if (this.shape.libraries != 0) {
+            // Inherited from a library, so only found by walking up into it
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitMethodInsn(INVOKEVIRTUAL, owner, "lib" + method, "()V", false);
+        }
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKEINTERFACE, intf, "m0", "()V", true);
+
+        switch (ret.getSort()) {
+            case Type.VOID: mv.visitInsn(RETURN); break;
+            case Type.INT: mv.visitInsn(ICONST_0); mv.visitInsn(IRETURN); break;
+            default: mv.visitInsn(ACONST_NULL); mv.visitInsn(ARETURN); break;
+        }
+        mv.visitLabel(end);
+
+        mv.visitLocalVariable("this", "L" + owner + ";", null, start, end, 0);
+        int local = 1;
+        for (int x = 0; x < args.length; x++) {
+            // Every so often use a name that isn't a valid java identifier, like obfuscators do
+            String pname = rand.nextInt(8) == 0 ? "\u2603" + x : "arg" + x;
+            mv.visitLocalVariable(pname, args[x].getDescriptor(), null, start, end, local);
+            local += args[x].getSize();
+        }
+        mv.visitMaxs(2, local);
+        mv.visitEnd();
+        return line;
+    }
+
+    private void addEnum(int index) {
+        String name = name(index);
+        String desc = "L" + name + ";";
+        ClassWriter cw = new ClassWriter(0);
+        cw.visit(V1_8, ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_ENUM, name, "Ljava/lang/Enum<" + desc + ">;", "java/lang/Enum", null);
+        cw.visitSource("C" + index + ".java", null);
+        mapClass(index);
+        cw.visitField(ACC_PUBLIC | ACC_STATIC | ACC_FINAL | ACC_ENUM, "A", desc, null, null).visitEnd();
+        mapField("A", desc);
+
+        // Proguard leaves the annotations of the synthetic name and ordinal parameters out, so they no longer line up
+        MethodVisitor mv = cw.visitMethod(ACC_PRIVATE, "<init>", "(Ljava/lang/String;ILjava/lang/Object;)V", null, null);
+        mv.visitAnnotableParameterCount(1, false);
+        mv.visitParameterAnnotation(0, "Ljava/lang/Deprecated;", false).visitEnd();
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitVarInsn(ILOAD, 2);
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Enum", "<init>", "(Ljava/lang/String;I)V", false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(3, 4);
+        mv.visitEnd();
+        cw.visitEnd();
+        add(name, cw.toByteArray(), 0);
+    }
+
+    private void addRecord(int index) {
+        String name = name(index);
+        ClassWriter cw = new ClassWriter(0);
+        // The Record attribute is left out, like Proguard does, for RecordFixer to put back
+        cw.visit(V16, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, name, null, "java/lang/Record", null);
+        cw.visitSource("C" + index + ".java", null);
+        mapClass(index);
+        for (int f = 0; f < FIELDS; f++) {
+            cw.visitField(ACC_PRIVATE | ACC_FINAL, "f" + f, fieldDesc(f), null, null).visitEnd();
+            mapField("f" + f, fieldDesc(f));
+        }
+        cw.visitEnd();
+        add(name, cw.toByteArray(), 0);
+    }
+
+    private void add(String name, byte[] data, int lineCount) {
+        this.classes.put(name, data);
+        this.classNames.add(name);
+        if (lineCount > 0)
+            this.lines.put(name, lineCount);
+    }
+
+    private void mapClass(int index) {
+        mapClass(name(index), mapped(index));
+    }
+
+    private void mapClass(String name, String mapped) {
+        this.mappingEntries++;
+        this.mappings.append(name).append(' ').append(mapped).append('\n');
+    }
+
+    private void mapField(String name, String desc) {
+        this.mappingEntries++;
+        this.mappings.append('\t').append(name).append(' ').append(desc).append(' ').append(name).append("_mapped\n");
+    }
+
+    private void mapMethod(String name, String desc) {
+        this.mappingEntries++;
+        this.mappings.append('\t').append(name).append(' ').append(desc).append(' ').append(name).append("_mapped\n");
+        // EnhancedRemapper looks parameters up by their argument index, so every argument needs one
+        int count = Type.getArgumentTypes(desc).length;
+        for (int index = 0; index < count; index++)
+            this.mappings.append("\t\t").append(index).append(" arg").append(index).append(" p_").append(index).append('\n');
+    }
+
+    public Map<String, byte[]> getClasses() {
+        return this.classes;
+    }
+
+    public Map<String, byte[]> getLibraryClasses() {
+        return this.libraries;
+    }
+
+    public List<String> getClassNames() {
+        return this.classNames;
+    }
+
+    /** Every method declared by a generated class, as owner, name and descriptor. */
+    public List<String[]> getMethodRefs() {
+        return this.methodRefs;
+    }
+
+    /** Every field declared by a generated class, as owner, name and descriptor. */
+    public List<String[]> getFieldRefs() {
+        return this.fieldRefs;
+    }
+
+    public List<ClassEntry> getEntries() {
+        List<ClassEntry> ret = new ArrayList<>(this.classes.size());
+        for (Map.Entry<String, byte[]> entry : this.classes.entrySet())
+            ret.add(ClassEntry.create(entry.getKey() + ".class", ClassEntry.STABLE_TIMESTAMP, entry.getValue()));
+        return ret;
+    }
+
+    public ClassProvider getClassProvider() {
+        ClassProvider.Builder builder = ClassProvider.builder();
+        for (Map.Entry<String, byte[]> entry : this.classes.entrySet())
+            builder.addClass(entry.getKey(), entry.getValue());
+        return builder.build();
+    }
+
+    /** The number of classes, fields and methods in the mappings. */
+    public int getMappingEntries() {
+        return this.mappingEntries;
+    }
+
+    /** The mappings in TSRG2 format, renaming every class, member and parameter. */
+    public String getMappingText() {
+        return this.mappings.toString();
+    }
+
+    public IMappingFile getMappings() throws IOException {
+        return IMappingFile.load(new ByteArrayInputStream(getMappingText().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Writes a source jar with Fernflower line number data for every class with code, as read by {@link FFLineFixer}.
+     */
+    public void writeLineData(File file) throws IOException {
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file))) {
+            for (Map.Entry<String, Integer> entry : this.lines.entrySet()) {
+                int count = entry.getValue();
+                ByteBuffer extra = ByteBuffer.allocate(4 + 1 + count * 4).order(ByteOrder.LITTLE_ENDIAN);
+                extra.putShort((short)0x4646);
+                extra.putShort((short)(1 + count * 4));
+                extra.put((byte)1);
+                for (int x = 0; x < count; x++) {
+                    extra.putShort((short)x);
+                    extra.putShort((short)(x * 2 + 1));
+                }
+
+                ZipEntry zentry = new ZipEntry(entry.getKey() + ".java");
+                zentry.setExtra(extra.array());
+                zip.putNextEntry(zentry);
+                zip.write(("// " + entry.getKey() + '\n').getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * Writes the classes to a jar, along with the resources asked for by the shape.
+     * Resources are generated while they are written, so they can be far larger than the heap.
+     */
+    public void writeJar(File file) throws IOException {
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file))) {
+            zip.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+            zip.write("Manifest-Version: 1.0\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+
+            writeClasses(zip, this.classes);
+
+            // Resources are usually compressed already, so there is no use in trying hard to compress them again
+            zip.setLevel(Deflater.BEST_SPEED);
+            byte[] buf = new byte[64 * 1024];
+            for (int x = 0; x < this.shape.resources; x++) {
+                zip.putNextEntry(new ZipEntry("assets/data/r" + x + ".bin"));
+                Random rand = new Random(this.shape.seed + x);
+                for (long left = this.shape.resourceSize; left > 0; left -= buf.length) {
+                    rand.nextBytes(buf);
+                    zip.write(buf, 0, (int)Math.min(left, buf.length));
+                }
+                zip.closeEntry();
+            }
+        }
+    }
+
+    /** Writes the library classes the generated classes extend to a jar, to be given to the renamer as a library. */
+    public void writeLibrary(File file) throws IOException {
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file))) {
+            writeClasses(zip, this.libraries);
+        }
+    }
+
+    private static void writeClasses(ZipOutputStream zip, Map<String, byte[]> classes) throws IOException {
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            ZipEntry zentry = new ZipEntry(entry.getKey() + ".class");
+            zentry.setTime(ClassEntry.STABLE_TIMESTAMP);
+            zip.putNextEntry(zentry);
+            zip.write(entry.getValue());
+            zip.closeEntry();
+        }
+    }
+
+    /**
+     * What to generate. The defaults are a small jar with no libraries, no extra mappings and no resources.
+     */
+    public static class Shape {
+        private int classes = 1000;
+        private int classDepth = Integer.MAX_VALUE;
+        private int interfaceDepth = Integer.MAX_VALUE;
+        private int libraries = 0;
+        private int mappingEntries = 0;
+        private int resources = 0;
+        private long resourceSize = 0;
+        private long seed = 42;
+
+        /** The number of classes, including interfaces, enums and records. */
+        public Shape classes(int value) {
+            this.classes = value;
+            return this;
+        }
+
+        /** The most classes in a single chain of super classes. */
+        public Shape classDepth(int value) {
+            this.classDepth = value;
+            return this;
+        }
+
+        /** The most interfaces in a single chain of interfaces extending each other. */
+        public Shape interfaceDepth(int value) {
+            this.interfaceDepth = value;
+            return this;
+        }
+
+        /** The number of library classes, which classes at the root of a hierarchy extend instead of Object. */
+        public Shape libraries(int value) {
+            this.libraries = value;
+            return this;
+        }
+
+        /** The least number of class, field and method mappings, padded with mappings for classes that aren't in the jar. */
+        public Shape mappingEntries(int value) {
+            this.mappingEntries = value;
+            return this;
+        }
+
+        /** The number of resources, and the size of each in bytes. */
+        public Shape resources(int count, long size) {
+            this.resources = count;
+            this.resourceSize = size;
+            return this;
+        }
+
+        public Shape seed(long value) {
+            this.seed = value;
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return "classes=" + this.classes +
+                ", classDepth=" + this.classDepth +
+                ", interfaceDepth=" + this.interfaceDepth +
+                ", libraries=" + this.libraries +
+                ", mappingEntries=" + this.mappingEntries +
+                ", resources=" + this.resources +
+                ", resourceSize=" + this.resourceSize +
+                ", seed=" + this.seed;
+        }
+    }
+}
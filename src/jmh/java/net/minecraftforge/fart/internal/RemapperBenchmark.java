@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.fart.internal;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Lookups on a fully resolved {@link EnhancedRemapper}, which is what every member reference of every class goes through.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RemapperBenchmark {
+    @Param({"2000"})
+    public int classes;
+
+    private EnhancedRemapper remapper;
+    private List<String> classNames;
+    private List<String[]> methods;
+    private List<String[]> fields;
+
+    @Setup
+    public void setup() throws IOException {
+        Fixtures fixtures = new Fixtures(this.classes, 42);
+        SortedClassProvider provider = new SortedClassProvider(Collections.singletonList(fixtures.getClassProvider()), Fixtures.QUIET);
+        this.remapper = new EnhancedRemapper(provider, fixtures.getMappings(), Fixtures.QUIET);
+        this.classNames = fixtures.getClassNames();
+        this.methods = fixtures.getMethodRefs();
+        this.fields = fixtures.getFieldRefs();
+
+        AsyncHelper async = new AsyncHelper(1);
+        try {
+            this.remapper.resolveHierarchy(this.classNames, async);
+        } finally {
+            async.shutdown();
+        }
+    }
+
+    @Benchmark
+    public void mapClassName(Blackhole bh) {
+        for (String name : this.classNames)
+            bh.consume(this.remapper.map(name));
+    }
+
+    @Benchmark
+    public void mapMethodName(Blackhole bh) {
+        for (String[] ref : this.methods)
+            bh.consume(this.remapper.mapMethodName(ref[0], ref[1], ref[2]));
+    }
+
+    @Benchmark
+    public void mapFieldName(Blackhole bh) {
+        for (String[] ref : this.fields)
+            bh.consume(this.remapper.mapFieldName(ref[0], ref[1], ref[2]));
+    }
+
+    @Benchmark
+    public void mapParameterName(Blackhole bh) {
+        for (String[] ref : this.methods)
+            bh.consume(this.remapper.mapParameterName(ref[0], ref[1], ref[2], 1, "arg1"));
+    }
+
+    @Benchmark
+    public void mapMissingClass(Blackhole bh) {
+        // Classes that aren't anywhere on the class path are looked up just as often, and must be just as cheap
+        for (String[] ref : this.methods)
+            bh.consume(this.remapper.mapMethodName("java/lang/Object", ref[1], ref[2]));
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.fart.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import joptsimple.OptionException;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+import net.minecraftforge.fart.api.IdentifierFixerConfig;
+import net.minecraftforge.fart.api.Renamer;
+import net.minecraftforge.fart.api.Transformer;
+import net.minecraftforge.srgutils.IMappingFile;
+
+/**
+ * Runs the whole pipeline over a generated jar at the scale of a real game jar, once for every thread count, and
+ * reports wall time, throughput, peak heap and time spent in GC as JSON so results can be compared between builds.
+ * <p>
+ * The generated files are kept in the work directory, and reused as long as they were generated with the same shape.
+ */
+public class ScaleHarness {
+    public static void main(String[] args) throws IOException {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        OptionParser parser = new OptionParser();
+        OptionSpec<File> dirO = parser.accepts("dir", "Directory to generate the jars and mappings in").withRequiredArg().ofType(File.class).defaultsTo(new File("build/scale"));
+        OptionSpec<File> outputO = parser.accepts("output", "File to write the results to, defaults to System.out").withRequiredArg().ofType(File.class);
+        OptionSpec<Integer> classesO = parser.accepts("classes", "Number of classes in the input").withRequiredArg().ofType(Integer.class).defaultsTo(60000);
+        OptionSpec<Integer> classDepthO = parser.accepts("class-depth", "Most super classes in a single hierarchy").withRequiredArg().ofType(Integer.class).defaultsTo(8);
+        OptionSpec<Integer> interfaceDepthO = parser.accepts("interface-depth", "Most interfaces in a single hierarchy").withRequiredArg().ofType(Integer.class).defaultsTo(32);
+        OptionSpec<Integer> librariesO = parser.accepts("libraries", "Number of library classes the input extends").withRequiredArg().ofType(Integer.class).defaultsTo(500);
+        OptionSpec<Integer> mappingsO = parser.accepts("mapping-entries", "Least number of class, field and method mappings").withRequiredArg().ofType(Integer.class).defaultsTo(500000);
+        OptionSpec<String> formatO = parser.accepts("mapping-format", "Format to write the mappings in, any supported by SRGUtils").withRequiredArg().defaultsTo("tsrg2");
+        OptionSpec<Integer> resourcesO = parser.accepts("resources", "Number of resources in the input").withRequiredArg().ofType(Integer.class).defaultsTo(0);
+        OptionSpec<Long> resourceSizeO = parser.accepts("resource-size", "Size of each resource in bytes").withRequiredArg().ofType(Long.class).defaultsTo(1024L * 1024);
+        OptionSpec<Long> seedO = parser.accepts("seed", "Seed to generate the input from").withRequiredArg().ofType(Long.class).defaultsTo(42L);
+        OptionSpec<Integer> threadsO = parser.accepts("threads", "Comma separated thread counts to run with").withRequiredArg().ofType(Integer.class).withValuesSeparatedBy(',').defaultsTo(1, 2, 4, cpus);
+        OptionSpec<Integer> warmupO = parser.accepts("warmup", "Runs to discard for each thread count").withRequiredArg().ofType(Integer.class).defaultsTo(1);
+        OptionSpec<Integer> iterationsO = parser.accepts("iterations", "Runs to measure for each thread count").withRequiredArg().ofType(Integer.class).defaultsTo(3);
+        OptionSpec<Void> fixersO = parser.accepts("fixers", "Also run the record, parameter annotation and identifier fixers");
+        OptionSet options;
+        try {
+            options = parser.parse(args);
+        } catch (OptionException ex) {
+            System.err.println("Error: " + ex.getMessage());
+            System.err.println();
+            parser.printHelpOn(System.err);
+            System.exit(1);
+            return;
+        }
+
+        Fixtures.Shape shape = new Fixtures.Shape()
+            .classes(options.valueOf(classesO))
+            .classDepth(options.valueOf(classDepthO))
+            .interfaceDepth(options.valueOf(interfaceDepthO))
+            .libraries(options.valueOf(librariesO))
+            .mappingEntries(options.valueOf(mappingsO))
+            .resources(options.valueOf(resourcesO), options.valueOf(resourceSizeO))
+            .seed(options.valueOf(seedO));
+        String format = options.valueOf(formatO);
+
+        File dir = options.valueOf(dirO);
+        File input = new File(dir, "input.jar");
+        File library = new File(dir, "library.jar");
+        File mappings = new File(dir, "mappings." + format.toLowerCase(Locale.ROOT));
+        generate(dir, shape, format, input, library, mappings);
+
+        Json json = new Json();
+        json.begin(null, '{')
+            .value("java", System.getProperty("java.version"))
+            .value("processors", cpus)
+            .value("maxHeapBytes", Runtime.getRuntime().maxMemory())
+            .begin("shape", '{')
+                .value("classes", options.valueOf(classesO))
+                .value("classDepth", options.valueOf(classDepthO))
+                .value("interfaceDepth", options.valueOf(interfaceDepthO))
+                .value("libraries", options.valueOf(librariesO))
+                .value("mappingEntries", options.valueOf(mappingsO))
+                .value("mappingFormat", format)
+                .value("resources", options.valueOf(resourcesO))
+                .value("resourceSize", options.valueOf(resourceSizeO))
+                .value("seed", options.valueOf(seedO))
+            .end('}')
+            .value("inputBytes", input.length())
+            .begin("results", '[');
+
+        int classes = options.valueOf(classesO);
+        for (int threads : options.valuesOf(threadsO)) {
+            System.err.println("Running with " + threads + " threads");
+            File output = new File(dir, "output-" + threads + ".jar");
+
+            long start = System.nanoTime();
+            Renamer.Builder builder = Renamer.builder()
+                .lib(library)
+                .withJvmClasspath()
+                .threads(threads)
+                .logger(line -> {})
+                .add(Transformer.renamerFactory(IMappingFile.load(mappings), true));
+            if (options.has(fixersO)) {
+                builder.add(Transformer.recordFixerFactory())
+                    .add(Transformer.parameterAnnotationFixerFactory())
+                    .add(Transformer.identifierFixerFactory(IdentifierFixerConfig.ALL));
+            }
+
+            try (Renamer renamer = builder.build()) {
+                json.begin(null, '{')
+                    .value("threads", threads)
+                    .value("setupMillis", (System.nanoTime() - start) / 1_000_000)
+                    .begin("runs", '[');
+
+                for (int x = 0; x < options.valueOf(warmupO); x++)
+                    renamer.run(input, output);
+
+                for (int x = 0; x < options.valueOf(iterationsO); x++) {
+                    System.gc();
+                    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+                        pool.resetPeakUsage();
+                    long[] gcBefore = gcStats();
+
+                    start = System.nanoTime();
+                    renamer.run(input, output);
+                    long wall = System.nanoTime() - start;
+
+                    long[] gcAfter = gcStats();
+                    double seconds = wall / 1_000_000_000D;
+                    json.begin(null, '{')
+                        .value("wallMillis", wall / 1_000_000)
+                        .value("classesPerSecond", Math.round(classes / seconds))
+                        .value("inputMegabytesPerSecond", Math.round(input.length() / seconds / (1024 * 1024) * 100) / 100D)
+                        .value("outputBytes", output.length())
+                        .value("peakHeapBytes", peakHeap())
+                        .value("gcCount", gcAfter[0] - gcBefore[0])
+                        .value("gcMillis", gcAfter[1] - gcBefore[1])
+                        .end('}');
+                }
+
+                json.end(']').end('}');
+            } finally {
+                Files.deleteIfExists(output.toPath());
+            }
+        }
+        json.end(']').end('}');
+
+        if (options.has(outputO)) {
+            File out = options.valueOf(outputO);
+            Files.write(out.toPath(), json.toString().getBytes(StandardCharsets.UTF_8));
+            System.err.println("Results written to " + out.getAbsolutePath());
+        } else {
+            System.out.println(json);
+        }
+    }
+
+    private static void generate(File dir, Fixtures.Shape shape, String format, File input, File library, File mappings) throws IOException {
+        File marker = new File(dir, "shape.txt");
+        String description = shape + ", format=" + format;
+        if (marker.exists() && input.exists() && library.exists() && mappings.exists() &&
+            description.equals(new String(Files.readAllBytes(marker.toPath()), StandardCharsets.UTF_8))) {
+            System.err.println("Reusing generated input: " + description);
+            return;
+        }
+
+        System.err.println("Generating input: " + description);
+        if (!dir.exists() && !dir.mkdirs())
+            throw new IOException("Could not create directory: " + dir.getAbsolutePath());
+        Files.deleteIfExists(marker.toPath());
+
+        Fixtures fixtures = new Fixtures(shape);
+        fixtures.writeJar(input);
+        fixtures.writeLibrary(library);
+        if ("tsrg2".equalsIgnoreCase(format))
+            Files.write(mappings.toPath(), fixtures.getMappingText().getBytes(StandardCharsets.UTF_8));
+        else
+            fixtures.getMappings().write(mappings.toPath(), IMappingFile.Format.valueOf(format.toUpperCase(Locale.ROOT)), false);
+        System.err.println("Generated " + fixtures.getClassNames().size() + " classes, " + fixtures.getMappingEntries() + " mappings, " + input.length() + " bytes");
+
+        Files.write(marker.toPath(), description.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Total collections and milliseconds spent collecting, across all collectors. */
+    private static long[] gcStats() {
+        long[] ret = new long[2];
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ret[0] += Math.max(0, gc.getCollectionCount());
+            ret[1] += Math.max(0, gc.getCollectionTime());
+        }
+        return ret;
+    }
+
+    /**
+     * The sum of the peak usage of every heap pool since they were last reset. The pools don't all peak at the same
+     * time, so this is an upper bound, but a stable one that is good enough to compare runs.
+     */
+    private static long peakHeap() {
+        long ret = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP)
+                ret += pool.getPeakUsage().getUsed();
+        }
+        return ret;
+    }
+
+    /**
+     * Just enough of a JSON writer for the results, which are only ever numbers and plain strings.
+     */
+    private static class Json {
+        private final StringBuilder buf = new StringBuilder();
+        private final List<Boolean> first = new ArrayList<>();
+
+        private Json key(String key) {
+            int depth = this.first.size();
+            if (depth > 0) {
+                if (!this.first.set(depth - 1, false))
+                    this.buf.append(',');
+                this.buf.append('\n');
+                for (int x = 0; x < depth; x++)
+                    this.buf.append("  ");
+            }
+            if (key != null)
+                this.buf.append('"').append(key).append("\": ");
+            return this;
+        }
+
+        Json begin(String key, char bracket) {
+            key(key).buf.append(bracket);
+            this.first.add(true);
+            return this;
+        }
+
+        Json end(char bracket) {
+            boolean empty = this.first.remove(this.first.size() - 1);
+            if (!empty) {
+                this.buf.append('\n');
+                for (int x = 0; x < this.first.size(); x++)
+                    this.buf.append("  ");
+            }
+            this.buf.append(bracket);
+            return this;
+        }
+
+        Json value(String key, Object value) {
+            key(key);
+            if (value instanceof String)
+                this.buf.append('"').append(((String)value).replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+            else
+                this.buf.append(value);
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return this.buf.toString();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.fart.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.minecraftforge.fart.api.IdentifierFixerConfig;
+import net.minecraftforge.fart.api.Transformer;
+import net.minecraftforge.fart.api.Transformer.ClassEntry;
+
+/**
+ * Each built in class transformer on its own, run over every generated class.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransformerBenchmark {
+    @Param({"2000"})
+    public int classes;
+
+    private List<ClassEntry> entries;
+    private RenamingTransformer renamer;
+    private IdentifierFixer identifierFixer;
+    private FFLineFixer lineFixer;
+    private File lineData;
+
+    @Setup
+    public void setup() throws IOException {
+        Fixtures fixtures = new Fixtures(this.classes, 42);
+        this.entries = fixtures.getEntries();
+
+        SortedClassProvider provider = new SortedClassProvider(Collections.singletonList(fixtures.getClassProvider()), Fixtures.QUIET);
+        this.renamer = new RenamingTransformer(provider, fixtures.getMappings(), Fixtures.QUIET);
+        AsyncHelper async = new AsyncHelper(1);
+        try {
+            this.renamer.resolveHierarchy(fixtures.getClassNames(), async);
+        } finally {
+            async.shutdown();
+        }
+
+        this.identifierFixer = new IdentifierFixer(IdentifierFixerConfig.ALL);
+        this.lineData = File.createTempFile("fart-lines", ".jar");
+        fixtures.writeLineData(this.lineData);
+        this.lineFixer = new FFLineFixer(Fixtures.QUIET, this.lineData);
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.lineData.delete();
+    }
+
+    private void run(Transformer transformer, Blackhole bh) {
+        for (ClassEntry entry : this.entries)
+            bh.consume(transformer.process(entry));
+    }
+
+    @Benchmark
+    public void renamer(Blackhole bh) {
+        run(this.renamer, bh);
+    }
+
+    @Benchmark
+    public void recordFixer(Blackhole bh) {
+        run(RecordFixer.INSTANCE, bh);
+    }
+
+    @Benchmark
+    public void parameterAnnotationFixer(Blackhole bh) {
+        run(ParameterAnnotationFixer.INSTANCE, bh);
+    }
+
+    @Benchmark
+    public void identifierFixer(Blackhole bh) {
+        run(this.identifierFixer, bh);
+    }
+
+    @Benchmark
+    public void lineFixer(Blackhole bh) {
+        run(this.lineFixer, bh);
+    }
+
+    @Benchmark
+    public FFLineFixer lineFixerParse() {
+        return new FFLineFixer(Fixtures.QUIET, this.lineData);
+    }
+}
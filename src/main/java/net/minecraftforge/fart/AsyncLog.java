@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.fart;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * Hands log lines off to a thread of its own, so that the workers never wait on the console or a client's socket.
+ * <p>
+ * The thread writes everything that queued up since its last write as a single message, so a burst of lines costs a
+ * single write and flush rather than one per line. Lines keep their order, and are all written once this is closed.
+ */
+final class AsyncLog implements Consumer<String>, Closeable {
+    private static final int CAPACITY = 8192;
+    // Compared by identity, so that nothing logged can be mistaken for it
+    private static final String END = new String();
+
+    private final Consumer<String> out;
+    private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private final Thread thread;
+    private volatile boolean closed = false;
+
+    AsyncLog(Consumer<String> out) {
+        this.out = out;
+        this.thread = new Thread(this::drain, "FART Log");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queues a line to be written, waiting if the writer fell too far behind so that memory use stays bounded.
+     */
+    @Override
+    public void accept(String line) {
+        if (this.closed) {
+            this.out.accept(line);
+            return;
+        }
+
+        try {
+            this.queue.put(line);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.out.accept(line);
+        }
+    }
+
+    private void drain() {
+        List<String> lines = new ArrayList<>();
+        StringBuilder buf = new StringBuilder();
+        while (true) {
+            try {
+                lines.add(this.queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            this.queue.drainTo(lines);
+
+            boolean end = false;
+            for (String line : lines) {
+                if (line == END) {
+                    end = true;
+                    break;
+                }
+                if (buf.length() > 0)
+                    buf.append(System.lineSeparator());
+                buf.append(line);
+            }
+
+            if (buf.length() > 0) {
+                try {
+                    this.out.accept(buf.toString());
+                } catch (RuntimeException e) {
+                    // Nowhere left to log this, but the lines that follow may still make it
+                }
+            }
+            buf.setLength(0);
+            lines.clear();
+
+            if (end)
+                return;
+        }
+    }
+
+    /**
+     * Waits for every line queued so far to be written, anything logged afterwards is written directly.
+     */
+    @Override
+    public void close() {
+        if (this.closed)
+            return;
+
+        try {
+            this.queue.put(END);
+            this.thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.closed = true;
+        }
+    }
+}
@@ -0,0 +1,411 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.fart;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import net.minecraftforge.fart.api.Renamer;
+
+/**
+ * Keeps the tool running between invocations, so that the JVM, the parsed mappings and the libraries stay warm.
+ * <p>
+ * The daemon listens on a loopback port, which it writes to a file along with a random secret that clients have to
+ * send back, so only users who can read the file can use it. Each request is the arguments of a normal invocation,
+ * and is answered with its log output followed by an exit code.
+ */
+final class Daemon {
+    private static final byte OUT = 0;
+    private static final byte ERR = 1;
+    private static final byte EXIT = 2;
+    // Clients send their whole request right after connecting, anyone taking longer is not a client of ours
+    private static final int HANDSHAKE_TIMEOUT = 10_000;
+
+    private Daemon() {}
+
+    /**
+     * Runs the daemon until it is asked to stop.
+     *
+     * @param file the file to write the connection details to
+     */
+    static void serve(File file, Consumer<String> log) throws IOException {
+        byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+        StringBuilder secret = new StringBuilder();
+        for (byte b : random)
+            secret.append(String.format("%02x", b & 0xFF));
+
+        RenamerCache cache = new RenamerCache();
+        ExecutorService connections = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "FART Daemon Connection");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        // Also run by the request that stops us, closing the socket ends the accept loop below
+        Runnable stop = () -> {
+            try {
+                server.close();
+            } catch (IOException e) {
+                // We're shutting down anyways
+            }
+        };
+        cache.onStop = stop;
+
+        try {
+            writeDetails(file, server.getLocalPort(), secret.toString());
+            log.accept("Daemon listening on port " + server.getLocalPort() + ", connection details in " + file.getAbsolutePath());
+
+            while (!server.isClosed()) {
+                Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (IOException e) {
+                    if (server.isClosed())
+                        break;
+                    throw e;
+                }
+                connections.submit(() -> handle(socket, secret.toString(), cache, log));
+            }
+        } finally {
+            stop.run();
+            // Give the running requests, including the one that stopped us, a chance to finish answering
+            connections.shutdown();
+            try {
+                connections.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            cache.close();
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    private static void writeDetails(File file, int port, String secret) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs())
+            throw new IOException("Could not create directory: " + parent.getAbsolutePath());
+
+        // Written to a temp file first, so that clients never see it half written, or readable by others.
+        Path tmp = Files.createTempFile(parent.toPath(), file.getName(), ".tmp");
+        try {
+            Files.setPosixFilePermissions(tmp, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException e) {
+            // Not a posix file system, we just get the default permissions
+        }
+        Files.write(tmp, Arrays.asList(Integer.toString(port), secret), StandardCharsets.UTF_8);
+        Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void handle(Socket socket, String secret, RenamerCache cache, Consumer<String> log) {
+        try (Socket s = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+            // Without a timeout, connections that never send anything would each hold on to a thread forever
+            s.setSoTimeout(HANDSHAKE_TIMEOUT);
+            if (!MessageDigest.isEqual(secret.getBytes(StandardCharsets.UTF_8), readString(in).getBytes(StandardCharsets.UTF_8))) {
+                log.accept("Rejected connection with the wrong secret from " + s.getRemoteSocketAddress());
+                return;
+            }
+
+            File cwd = new File(readString(in));
+            String[] args = new String[in.readInt()];
+            for (int x = 0; x < args.length; x++)
+                args[x] = readString(in);
+            // Runs take however long they take, and the client sends nothing while waiting for them
+            s.setSoTimeout(0);
+
+            Connection connection = new Connection(s, in, out, cwd);
+            int ret;
+            try {
+                ret = Main.run(args, connection, cache) ? 0 : 1;
+            } catch (Throwable t) {
+                StringWriter trace = new StringWriter();
+                t.printStackTrace(new PrintWriter(trace));
+                for (String line : trace.toString().split("\r?\n"))
+                    connection.err.accept(line);
+                ret = 1;
+            }
+            connection.exit(ret);
+        } catch (IOException e) {
+            log.accept("Lost connection to client: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Forwards the arguments to the daemon, and prints its output until it is done.
+     *
+     * @param file the file the daemon wrote its connection details to
+     * @return the exit code of the request
+     */
+    static int connect(File file, String[] args) throws IOException {
+        List<String> details;
+        try {
+            details = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read daemon details from: " + file.getAbsolutePath(), e);
+        }
+        if (details.size() < 2)
+            throw new IllegalStateException("Invalid daemon details in: " + file.getAbsolutePath());
+
+        int port = Integer.parseInt(details.get(0).trim());
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            writeString(out, details.get(1).trim());
+            writeString(out, new File("").getAbsolutePath());
+            out.writeInt(args.length);
+            for (String arg : args)
+                writeString(out, arg);
+            out.flush();
+
+            while (true) {
+                byte type = in.readByte();
+                if (type == EXIT)
+                    return in.readInt();
+                String line = readString(in);
+                if (type == ERR)
+                    System.err.println(line);
+                else
+                    System.out.println(line);
+            }
+        }
+    }
+
+    // Strings are sent as length prefixed UTF-8 as DataOutputStream.writeUTF can't send more than 64k, which a stack trace could.
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] data = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0 || len > 16 * 1024 * 1024)
+            throw new IOException("Invalid string length: " + len);
+        byte[] data = new byte[len];
+        in.readFully(data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A request from a client, all output is sent back to it.
+     */
+    private static class Connection extends Main.Session {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        Connection(Socket socket, DataInputStream in, DataOutputStream out, File cwd) {
+            super(cwd, send(out, OUT), send(out, ERR));
+            this.socket = socket;
+            this.in = in;
+            this.out = out;
+        }
+
+        private static Consumer<String> send(DataOutputStream out, byte type) {
+            return line -> {
+                // Renamers log from many threads at once
+                synchronized (out) {
+                    try {
+                        out.writeByte(type);
+                        writeString(out, line);
+                        out.flush();
+                    } catch (IOException e) {
+                        // The client is gone, but we still finish the run we started for it
+                    }
+                }
+            };
+        }
+
+        void exit(int code) throws IOException {
+            synchronized (this.out) {
+                this.out.writeByte(EXIT);
+                this.out.writeInt(code);
+                this.out.flush();
+            }
+        }
+
+        /**
+         * The client never sends anything after its request, so it is still there for as long as reading times out.
+         */
+        @Override
+        boolean waitForChanges() {
+            try {
+                this.socket.setSoTimeout(1000);
+                return this.in.read() != -1;
+            } catch (SocketTimeoutException e) {
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface RenamerFactory {
+        Renamer create() throws IOException;
+    }
+
+    /**
+     * The renamers kept alive by the daemon, keyed by everything that went into building them.
+     * A renamer is rebuilt once any of the files it was built from changes.
+     */
+    static class RenamerCache implements Closeable {
+        private final Map<String, Cached> renamers = new HashMap<>();
+        private Runnable onStop = () -> {};
+
+        /**
+         * Returns a renamer for the key, building a new one if there is none or any of its files changed.
+         * Renamers are built while holding the cache lock, requests are rare enough that this isn't worth avoiding.
+         */
+        synchronized Lease get(String key, List<File> files, RenamerFactory factory, Consumer<String> log) throws IOException {
+            Cached cached = this.renamers.get(key);
+            if (cached != null && cached.isChanged()) {
+                log.accept("Configuration files changed, creating a new renamer");
+                this.renamers.remove(key);
+                cached.stale = true;
+                cached.closeIfUnused();
+                cached = null;
+            }
+
+            if (cached == null) {
+                List<FileStamp> stamps = FileStamp.of(files.toArray(new File[files.size()]));
+                cached = new Cached(factory.create(), stamps);
+                this.renamers.put(key, cached);
+            } else {
+                log.accept("Reusing renamer from a previous request");
+            }
+
+            cached.users++;
+            return new Lease(cached);
+        }
+
+        void stop() {
+            this.onStop.run();
+        }
+
+        @Override
+        public synchronized void close() {
+            for (Cached cached : this.renamers.values()) {
+                cached.stale = true;
+                cached.closeIfUnused();
+            }
+            this.renamers.clear();
+        }
+
+        private class Cached {
+            private final Renamer renamer;
+            private final List<FileStamp> stamps;
+            private int users = 0;
+            private boolean stale = false;
+
+            private Cached(Renamer renamer, List<FileStamp> stamps) {
+                this.renamer = renamer;
+                this.stamps = stamps;
+            }
+
+            private boolean isChanged() {
+                for (FileStamp stamp : this.stamps) {
+                    if (stamp.isChanged())
+                        return true;
+                }
+                return false;
+            }
+
+            // Only called while holding the cache lock
+            private void closeIfUnused() {
+                if (!this.stale || this.users != 0)
+                    return;
+                try {
+                    this.renamer.close();
+                } catch (IOException e) {
+                    // Nothing we can do about it, and it no longer matters to anyone
+                }
+            }
+        }
+
+        /**
+         * A renamer in use by a request, it is only closed once every request using it is done.
+         */
+        class Lease implements Closeable {
+            private final Cached cached;
+
+            private Lease(Cached cached) {
+                this.cached = cached;
+            }
+
+            Renamer getRenamer() {
+                return this.cached.renamer;
+            }
+
+            @Override
+            public void close() {
+                synchronized (RenamerCache.this) {
+                    this.cached.users--;
+                    this.cached.closeIfUnused();
+                }
+            }
+        }
+    }
+
+    /**
+     * The size and modification time of a file when it was last looked at.
+     */
+    static class FileStamp {
+        private final File file;
+        private final long modified;
+        private final long length;
+
+        private FileStamp(File file) {
+            this.file = file;
+            this.modified = file.lastModified();
+            this.length = file.length();
+        }
+
+        static List<FileStamp> of(File... files) {
+            List<FileStamp> ret = new ArrayList<>(files.length);
+            for (File file : files)
+                ret.add(new FileStamp(file));
+            return ret;
+        }
+
+        File getFile() {
+            return this.file;
+        }
+
+        boolean isChanged() {
+            return this.file.lastModified() != this.modified || this.file.length() != this.length;
+        }
+    }
+}
@@ -7,25 +7,37 @@ package net.minecraftforge.fart;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.io.StringWriter;
 import java.io.FileOutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
 
+import org.jetbrains.annotations.Nullable;
+
 import joptsimple.OptionException;
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 import joptsimple.OptionSpec;
 import net.minecraftforge.fart.api.IdentifierFixerConfig;
+import net.minecraftforge.fart.api.Logger;
 import net.minecraftforge.fart.api.Renamer;
+import net.minecraftforge.fart.api.RunListener;
+import net.minecraftforge.fart.api.RunStats;
 import net.minecraftforge.fart.api.SignatureStripperConfig;
 import net.minecraftforge.fart.api.SourceFixerConfig;
+import net.minecraftforge.fart.api.TraceRecorder;
 import net.minecraftforge.fart.api.Transformer;
+import net.minecraftforge.fart.internal.StatsJson;
 import net.minecraftforge.srgutils.IMappingFile;
 
 public class Main {
@@ -58,138 +70,394 @@ public class Main {
                 params.add(args[x]);
             }
         }
+
+        // The client only forwards everything else to the daemon, so it never needs to know about the other options.
+        for (int x = 0; x < params.size(); x++) {
+            String arg = params.get(x);
+            if (!arg.equals("--connect") && !arg.startsWith("--connect="))
+                continue;
+
+            File file;
+            if (arg.startsWith("--connect=")) {
+                file = new File(arg.substring(10));
+                params.remove(x);
+            } else if (params.size() > x + 1) {
+                file = new File(params.get(x + 1));
+                params.subList(x, x + 2).clear();
+            } else {
+                System.err.println("Error: Must specify the daemon file when using --connect argument.");
+                System.exit(1);
+                return;
+            }
+
+            int ret = Daemon.connect(file, params.toArray(new String[params.size()]));
+            if (ret != 0)
+                System.exit(ret);
+            return;
+        }
+
         args = params.toArray(new String[params.size()]);
+        if (!run(args, Session.LOCAL, null))
+            System.exit(1);
+    }
 
+    /**
+     * Runs the tool with the given arguments, this is used both by {@link #main(String[])} and for each request to a daemon.
+     *
+     * @param cache the renamers kept alive by the daemon, or {@code null} when running on our own
+     * @return {@code false} if the arguments were invalid
+     */
+    static boolean run(String[] args, Session session, @Nullable Daemon.RenamerCache cache) throws IOException {
         OptionParser parser = new OptionParser();
-        OptionSpec<File> inputO  = parser.accepts("input",  "Input jar file").withRequiredArg().ofType(File.class).required();
+        OptionSpec<File> jobsO   = parser.accepts("jobs",   "File listing many jars to process, one per line as the input and optionally a tab and the output").withRequiredArg().ofType(File.class);
+        OptionSpec<File> daemonO = parser.accepts("daemon", "Stay running in the background, and process the requests of clients started with --connect. Connection details are written to the given file").withRequiredArg().ofType(File.class);
+        parser.accepts("connect", "Forward all other arguments to the daemon described by the given file, instead of running in this process").withRequiredArg().ofType(File.class);
+        OptionSpec<Void> stopO   = parser.accepts("stop",   "Together with --connect, stops the daemon");
+        OptionSpec<File> inputO  = parser.accepts("input",  "Input jar file").requiredUnless("jobs", "daemon", "stop").withRequiredArg().ofType(File.class);
         OptionSpec<File> outputO = parser.accepts("output", "Output jar file, if unspecifed, overwrites input").withRequiredArg().ofType(File.class);
+        OptionSpec<Void> watchO  = parser.accepts("watch",  "Keep running, and run again whenever an input changes");
+        OptionSpec<File> statsO  = parser.accepts("stats",  "File to write what each run spent its time on to, as JSON").withRequiredArg().ofType(File.class);
+        OptionSpec<File> traceO  = parser.accepts("trace",  "File to write a timeline of what each thread did to, in the Chrome trace event format").withRequiredArg().ofType(File.class);
         OptionSpec<File> mapO    = parser.acceptsAll(Arrays.asList("map", "names"),    "Mapping file to apply").withRequiredArg().ofType(File.class);
         OptionSpec<File> logO    = parser.accepts("log",    "File to log data to, optional, defaults to System.out").withRequiredArg().ofType(File.class);
+        OptionSpec<Logger.Level> logLevelO = parser.accepts("log-level", "Least important messages to log, 'info' skips listing every entry of the output").withRequiredArg().withValuesConvertedBy(new EnumConverter<>(Logger.Level.class)).defaultsTo(Logger.Level.VERBOSE);
         OptionSpec<File> libO    = parser.acceptsAll(Arrays.asList("lib", "e"), "Additional library to use for inheritance").withRequiredArg().ofType(File.class);
+        OptionSpec<File> libIndexO = parser.accepts("lib-index", "Directory to cache library inheritance indexes in, speeds up runs with the same libraries").withRequiredArg().ofType(File.class);
         OptionSpec<Void> fixAnnO = parser.accepts("ann-fix", "Fixes misaligned parameter annotations caused by Proguard.");
         OptionSpec<Void> fixRecordsO = parser.accepts("record-fix", "Fixes record component data stripped by Proguard.");
         OptionSpec<IdentifierFixerConfig> fixIdsO = parser.accepts("ids-fix", "Fixes local variables that are not valid java identifiers.").withOptionalArg().withValuesConvertedBy(new EnumConverter<>(IdentifierFixerConfig.class)).defaultsTo(IdentifierFixerConfig.ALL);
         OptionSpec<SourceFixerConfig> fixSrcO = parser.accepts("src-fix", "Fixes the 'SourceFile' attribute of classes.").withOptionalArg().withValuesConvertedBy(new EnumConverter<>(SourceFixerConfig.class)).defaultsTo(SourceFixerConfig.JAVA);
         OptionSpec<SignatureStripperConfig> stripSigsO = parser.accepts("strip-sigs", "Strip invalid codesigning signatures from the Jar manifest").withOptionalArg().withValuesConvertedBy(new EnumConverter<>(SignatureStripperConfig.class)).defaultsTo(SignatureStripperConfig.ALL);
         OptionSpec<Integer> threadsO = parser.accepts("threads", "Number of threads to use, defaults to processor count.").withRequiredArg().ofType(Integer.class).defaultsTo(Runtime.getRuntime().availableProcessors());
+        OptionSpec<Void> virtualThreadsO = parser.accepts("virtual-threads", "Run each task on a virtual thread instead of a pool of --threads threads, needs Java 21");
+        OptionSpec<Integer> memoryBudgetO = parser.accepts("memory-budget", "Megabytes of output to hold in memory until it is written, the rest is spilled to a temporary file").withRequiredArg().ofType(Integer.class);
+        OptionSpec<Void> offHeapO = parser.accepts("off-heap", "Hold resources and output in direct memory instead of the heap, for lower GC pauses with large jars");
         OptionSpec<File> ffLinesO = parser.accepts("ff-line-numbers", "Applies line number corrections from Fernflower.").withRequiredArg().ofType(File.class);
         OptionSpec<Void> reverseO = parser.accepts("reverse", "Reverse provided mapping file before applying");
+        OptionSpec<Void> storeO = parser.accepts("store", "Store output entries without compressing them, useful for intermediate files");
+        OptionSpec<Void> passthroughO = parser.accepts("passthrough", "Copy entries that weren't changed to the output without compressing them again");
         OptionSpec<Void> disableAbstractParam = parser.accepts("disable-abstract-param", "Disables collection of names of parameters of abstract methods for FernFlower");
         OptionSet options;
         try {
             options = parser.parse(expandArgs(args));
         } catch (OptionException ex) {
-            System.err.println("Error: " + ex.getMessage());
-            System.err.println();
-            parser.printHelpOn(System.err);
-            System.exit(1);
-            return;
+            session.err.accept("Error: " + ex.getMessage());
+            session.err.accept("");
+            StringWriter help = new StringWriter();
+            parser.printHelpOn(help);
+            for (String line : help.toString().split("\r?\n"))
+                session.err.accept(line);
+            return false;
+        }
+
+        if (options.has(daemonO)) {
+            if (cache != null) {
+                session.err.accept("Error: A daemon can not start another daemon");
+                return false;
+            }
+            Daemon.serve(session.file(options.valueOf(daemonO)), session.out);
+            return true;
+        }
+
+        if (options.has(stopO)) {
+            if (cache == null) {
+                session.err.accept("Error: --stop can only be used together with --connect");
+                return false;
+            }
+            session.out.accept("Stopping daemon");
+            cache.stop();
+            return true;
         }
 
         Consumer<String> log = ln -> {
             if (!ln.isEmpty()) {
-                System.out.println(ln);
+                session.out.accept(ln);
             }
         };
+        PrintStream logFile = null;
         if (options.has(logO)) {
-            PrintStream out = System.out;
-            @SuppressWarnings("resource")
-            PrintStream file = new PrintStream(new FileOutputStream(options.valueOf(logO)));
+            Consumer<String> out = log;
+            PrintStream file = logFile = new PrintStream(new FileOutputStream(session.file(options.valueOf(logO))));
             log = ln -> {
                 if (!ln.isEmpty()) {
-                    out.println(ln);
+                    out.accept(ln);
                     file.println(ln);
                 }
             };
         }
 
-        log.accept("Forge Auto Renaming Tool v" + getVersion());
-        Renamer.Builder builder = Renamer.builder();
-        builder.withJvmClasspath();
-        builder.logger(log);
-
-        // Move this up top so that the log lines are above the rest of the config as they can be spammy.
-        // Its useful information but we care more about the specific configs.
-        if (options.has(libO)) {
-            for (File lib : options.valuesOf(libO)) {
-                log.accept("lib: " + lib.getAbsolutePath());
-                builder.lib(lib);
+        // Renamers log from many threads at once, they shouldn't have to wait for the output to keep up
+        AsyncLog asyncLog = new AsyncLog(log);
+        log = asyncLog;
+        try {
+            log.accept("Forge Auto Renaming Tool v" + getVersion());
+
+            // Everything that changes how the renamer is built, so that the daemon can tell when it can reuse one.
+            Set<OptionSpec<?>> perRun = new HashSet<>(Arrays.asList(jobsO, inputO, outputO, watchO, logO, statsO, traceO));
+            List<String> key = new ArrayList<>();
+            List<File> files = new ArrayList<>();
+            for (Map.Entry<OptionSpec<?>, List<?>> entry : options.asMap().entrySet()) {
+                if (perRun.contains(entry.getKey()) || !options.has(entry.getKey()))
+                    continue;
+                key.add(entry.getKey().options().toString());
+                for (Object value : entry.getValue()) {
+                    if (value instanceof File) {
+                        File file = session.file((File)value);
+                        if (entry.getKey() != libIndexO) // The index directory changes whenever we write to it
+                            files.add(file);
+                        value = file.getAbsolutePath();
+                    }
+                    key.add(String.valueOf(value));
+                }
+            }
+
+            List<Renamer.Job> jobs = new ArrayList<>();
+            if (options.has(jobsO))
+                jobs.addAll(readJobs(session.file(options.valueOf(jobsO)), session));
+            if (options.has(inputO)) {
+                File inputF = session.file(options.valueOf(inputO));
+                jobs.add(0, Renamer.Job.create(inputF, options.has(outputO) ? session.file(options.valueOf(outputO)) : inputF));
             }
-        }
 
-        log.accept("log: " + (options.has(logO) ? options.valueOf(logO).getAbsolutePath() : "null"));
+            // Listeners are given to each job rather than the renamer, as the daemon shares renamers between clients
+            File statsF = options.has(statsO) ? session.file(options.valueOf(statsO)) : null;
+            RunStats[] stats = new RunStats[jobs.size()];
+            File traceF = options.has(traceO) ? session.file(options.valueOf(traceO)) : null;
+            TraceRecorder trace = traceF == null ? null : TraceRecorder.create();
+            // Daemon renamers outlive the request that built them, and may be running for other clients at the same time,
+            // so each request's jobs carry its logger rather than the renamer.
+            Logger jobLogger = cache == null ? null : Logger.of(options.valueOf(logLevelO), log);
+            for (int x = 0; x < jobs.size(); x++) {
+                int index = x;
+                RunListener listener = trace;
+                if (statsF != null) {
+                    RunListener collect = new RunListener() {
+                        @Override
+                        public void onRunEnd(RunStats run) {
+                            stats[index] = run;
+                        }
+                    };
+                    listener = trace == null ? collect : collect.andThen(trace);
+                }
+                Renamer.Job job = jobs.get(x);
+                if (listener != null || jobLogger != null)
+                    jobs.set(x, Renamer.Job.create(job.getInput(), job.getOutput(), listener, jobLogger));
+            }
 
-        File inputF = options.valueOf(inputO);
-        log.accept("input: " + inputF.getAbsolutePath());
+            // Logged among the config of a new renamer, or on its own when the daemon reuses one
+            Consumer<String> fLog = log;
+            AtomicBoolean loggedJobs = new AtomicBoolean();
+            Runnable logJobs = () -> {
+                if (loggedJobs.getAndSet(true))
+                    return;
+                if (options.has(jobsO)) {
+                    fLog.accept("jobs: " + session.file(options.valueOf(jobsO)).getAbsolutePath());
+                    fLog.accept("  " + (options.has(inputO) ? jobs.size() - 1 : jobs.size()) + " jobs");
+                }
+                if (options.has(inputO)) {
+                    fLog.accept("input: " + jobs.get(0).getInput().getAbsolutePath());
+                    fLog.accept("output: " + jobs.get(0).getOutput().getAbsolutePath());
+                }
+            };
 
-        File outputF = options.has(outputO) ? options.valueOf(outputO) : inputF;
-        log.accept("output: " + outputF.getAbsolutePath());
+            Daemon.RenamerFactory factory = () -> {
+                Renamer.Builder builder = Renamer.builder();
+                builder.withJvmClasspath();
+                builder.logger(Logger.of(options.valueOf(logLevelO), cache == null ? fLog : line -> {}));
 
-        log.accept("threads: " + options.valueOf(threadsO));
-        builder.threads(options.valueOf(threadsO));
+                // Move this up top so that the log lines are above the rest of the config as they can be spammy.
+                // Its useful information but we care more about the specific configs.
+                if (options.has(libO)) {
+                    for (File lib : options.valuesOf(libO)) {
+                        lib = session.file(lib);
+                        fLog.accept("lib: " + lib.getAbsolutePath());
+                        builder.lib(lib);
+                    }
+                }
 
-        // Map is optional so that we can run other fixes without renaming.
-        // This does mean that it's not strictly a 'renaming' tool but screw it I like the name.
-        if (options.has(mapO)) {
-            File mapF = options.valueOf(mapO);
-            log.accept("Names: " + mapF.getAbsolutePath() + "(reversed: " + options.has(reverseO) + ")");
-            IMappingFile mappings = IMappingFile.load(mapF);
-            if (options.has(reverseO)) {
-                mappings = mappings.reverse();
-            }
+                if (options.has(libIndexO)) {
+                    File libIndex = session.file(options.valueOf(libIndexO));
+                    fLog.accept("lib-index: " + libIndex.getAbsolutePath());
+                    builder.libraryIndex(libIndex);
+                }
 
-            builder.add(Transformer.renamerFactory(mappings, !options.has(disableAbstractParam)));
-        } else {
-            log.accept("Names: null");
-        }
+                fLog.accept("log: " + (options.has(logO) ? session.file(options.valueOf(logO)).getAbsolutePath() : "null"));
+                fLog.accept("log-level: " + options.valueOf(logLevelO));
 
-        if (options.has(fixAnnO)) {
-            log.accept("Fix Annotations: true");
-            builder.add(Transformer.parameterAnnotationFixerFactory());
-        } else {
-            log.accept("Fix Annotations: false");
-        }
+                logJobs.run();
 
-        if (options.has(fixRecordsO)) {
-            log.accept("Fix Records: true");
-            builder.add(Transformer.recordFixerFactory());
-        } else {
-            log.accept("Fix Records: false");
-        }
+                fLog.accept("threads: " + options.valueOf(threadsO));
+                builder.threads(options.valueOf(threadsO));
 
-        if (options.has(fixIdsO)) {
-            log.accept("Fix Identifiers: " + options.valueOf(fixIdsO));
-            builder.add(Transformer.identifierFixerFactory(options.valueOf(fixIdsO)));
-        } else {
-            log.accept("Fix Identifiers: false");
-        }
+                fLog.accept("virtual-threads: " + options.has(virtualThreadsO));
+                builder.virtualThreads(options.has(virtualThreadsO));
 
-        if (options.has(fixSrcO)) {
-            log.accept("Fix SourceFile: " + options.valueOf(fixSrcO));
-            builder.add(Transformer.sourceFixerFactory(options.valueOf(fixSrcO)));
-        } else {
-            log.accept("Fix SourceFile: false");
-        }
+                if (options.has(memoryBudgetO)) {
+                    fLog.accept("memory-budget: " + options.valueOf(memoryBudgetO) + " MB");
+                    builder.memoryBudget(options.valueOf(memoryBudgetO) * 1024L * 1024L);
+                } else {
+                    fLog.accept("memory-budget: unlimited");
+                }
+
+                fLog.accept("off-heap: " + options.has(offHeapO));
+                builder.offHeap(options.has(offHeapO));
+
+                fLog.accept("store: " + options.has(storeO));
+                builder.stored(options.has(storeO));
+
+                fLog.accept("passthrough: " + options.has(passthroughO));
+                builder.passthrough(options.has(passthroughO));
+
+                // Map is optional so that we can run other fixes without renaming.
+                // This does mean that it's not strictly a 'renaming' tool but screw it I like the name.
+                if (options.has(mapO)) {
+                    File mapF = session.file(options.valueOf(mapO));
+                    fLog.accept("Names: " + mapF.getAbsolutePath() + "(reversed: " + options.has(reverseO) + ")");
+                    IMappingFile mappings = IMappingFile.load(mapF);
+                    if (options.has(reverseO)) {
+                        mappings = mappings.reverse();
+                    }
+
+                    builder.add(Transformer.renamerFactory(mappings, !options.has(disableAbstractParam)));
+                } else {
+                    fLog.accept("Names: null");
+                }
 
-        if (options.has(ffLinesO)) {
-            File lines = options.valueOf(ffLinesO);
-            log.accept("Fix Line Numbers: " + lines.getAbsolutePath());
-            builder.add(Transformer.fernFlowerLineFixerFactory(lines));
-        } else {
-            log.accept("Fix Line Numbers: false");
+                if (options.has(fixAnnO)) {
+                    fLog.accept("Fix Annotations: true");
+                    builder.add(Transformer.parameterAnnotationFixerFactory());
+                } else {
+                    fLog.accept("Fix Annotations: false");
+                }
+
+                if (options.has(fixRecordsO)) {
+                    fLog.accept("Fix Records: true");
+                    builder.add(Transformer.recordFixerFactory());
+                } else {
+                    fLog.accept("Fix Records: false");
+                }
+
+                if (options.has(fixIdsO)) {
+                    fLog.accept("Fix Identifiers: " + options.valueOf(fixIdsO));
+                    builder.add(Transformer.identifierFixerFactory(options.valueOf(fixIdsO)));
+                } else {
+                    fLog.accept("Fix Identifiers: false");
+                }
+
+                if (options.has(fixSrcO)) {
+                    fLog.accept("Fix SourceFile: " + options.valueOf(fixSrcO));
+                    builder.add(Transformer.sourceFixerFactory(options.valueOf(fixSrcO)));
+                } else {
+                    fLog.accept("Fix SourceFile: false");
+                }
+
+                if (options.has(ffLinesO)) {
+                    File lines = session.file(options.valueOf(ffLinesO));
+                    fLog.accept("Fix Line Numbers: " + lines.getAbsolutePath());
+                    builder.add(Transformer.fernFlowerLineFixerFactory(lines));
+                } else {
+                    fLog.accept("Fix Line Numbers: false");
+                }
+
+                if (options.has(stripSigsO)) {
+                    SignatureStripperConfig config = options.valueOf(stripSigsO);
+                    fLog.accept("Strip codesigning signatures: " + config);
+                    builder.add(Transformer.signatureStripperFactory(config));
+                } else {
+                    fLog.accept("Strip codesigning signatures: false");
+                }
+
+                return builder.build();
+            };
+
+            if (cache == null) {
+                try (Renamer renamer = factory.create()) {
+                    run(renamer, jobs);
+                    writeStats(statsF, stats, log);
+                    writeTrace(traceF, trace, log);
+                    while (options.has(watchO) && waitForChange(jobs, session, log)) {
+                        run(renamer, jobs);
+                        writeStats(statsF, stats, log);
+                        writeTrace(traceF, trace, log);
+                    }
+                }
+            } else {
+                String cacheKey = String.join("\0", key);
+                do {
+                    try (Daemon.RenamerCache.Lease lease = cache.get(cacheKey, files, factory, log)) {
+                        logJobs.run();
+                        // Daemon renamers may be used by several clients at once, which only runAll supports.
+                        lease.getRenamer().runAll(jobs);
+                    }
+                    writeStats(statsF, stats, log);
+                    writeTrace(traceF, trace, log);
+                } while (options.has(watchO) && waitForChange(jobs, session, log));
+            }
+        } finally {
+            asyncLog.close();
+            if (logFile != null)
+                logFile.close();
         }
+        return true;
+    }
 
-        if (options.has(stripSigsO)) {
-            SignatureStripperConfig config = options.valueOf(stripSigsO);
-            log.accept("Strip codesigning signatures: " + config);
-            builder.add(Transformer.signatureStripperFactory(config));
-        } else {
-            log.accept("Strip codesigning signatures: false");
+    private static void run(Renamer renamer, List<Renamer.Job> jobs) {
+        if (jobs.size() == 1)
+            renamer.run(jobs.get(0));
+        else
+            renamer.runAll(jobs);
+    }
+
+    private static void writeStats(@Nullable File file, RunStats[] stats, Consumer<String> log) throws IOException {
+        if (file == null)
+            return;
+        StatsJson.write(file, stats);
+        log.accept("Stats written to: " + file.getAbsolutePath());
+    }
+
+    private static void writeTrace(@Nullable File file, @Nullable TraceRecorder trace, Consumer<String> log) throws IOException {
+        if (file == null || trace == null)
+            return;
+        trace.write(file);
+        trace.clear();
+        log.accept("Trace written to: " + file.getAbsolutePath());
+    }
+
+    /**
+     * Waits until any of the inputs changes, or the session ends.
+     *
+     * @return {@code false} if the session ended
+     */
+    private static boolean waitForChange(List<Renamer.Job> jobs, Session session, Consumer<String> log) {
+        List<Daemon.FileStamp> stamps = Daemon.FileStamp.of(jobs.stream().map(Renamer.Job::getInput).toArray(File[]::new));
+        log.accept("Watching " + stamps.size() + " inputs for changes");
+        while (session.waitForChanges()) {
+            for (Daemon.FileStamp stamp : stamps) {
+                if (stamp.isChanged()) {
+                    log.accept("Input changed: " + stamp.getFile().getAbsolutePath());
+                    return true;
+                }
+            }
         }
+        return false;
+    }
+
+    /**
+     * Reads a job list, each line is an input jar, optionally followed by a tab and the output jar.
+     * Without an output the input is overwritten. Empty lines and lines starting with # are skipped.
+     */
+    private static List<Renamer.Job> readJobs(File file, Session session) throws IOException {
+        List<Renamer.Job> ret = new ArrayList<>();
+        for (String line : Files.readAllLines(file.toPath())) {
+            if (line.trim().isEmpty() || line.startsWith("#"))
+                continue;
 
-        try (Renamer renamer = builder.build()) {
-            renamer.run(inputF, outputF);
+            int idx = line.indexOf('\t');
+            File input = session.file(new File(idx == -1 ? line : line.substring(0, idx)));
+            File output = idx == -1 ? input : session.file(new File(line.substring(idx + 1)));
+            ret.add(Renamer.Job.create(input, output));
         }
+        return ret;
     }
 
     private static String[] expandArgs(String[] args) throws IOException {
@@ -215,6 +483,49 @@ public class Main {
         return ver == null ? "UNKNOWN" : ver;
     }
 
+    /**
+     * Where a run gets its output and files from, which is either this process, or a client connected to the daemon.
+     */
+    static abstract class Session {
+        static final Session LOCAL = new Session(null, System.out::println, System.err::println) {
+            @Override
+            boolean waitForChanges() {
+                try {
+                    Thread.sleep(1000);
+                    return true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        };
+
+        @Nullable
+        private final File cwd;
+        final Consumer<String> out;
+        final Consumer<String> err;
+
+        Session(@Nullable File cwd, Consumer<String> out, Consumer<String> err) {
+            this.cwd = cwd;
+            this.out = out;
+            this.err = err;
+        }
+
+        /**
+         * Resolves a file given on the command line against the working directory of whoever gave it.
+         */
+        File file(File file) {
+            return this.cwd == null || file.isAbsolute() ? file : new File(this.cwd, file.getPath());
+        }
+
+        /**
+         * Blocks for a while between checks for changed inputs.
+         *
+         * @return {@code false} if watching should stop
+         */
+        abstract boolean waitForChanges();
+    }
+
     private static class EnumConverter<T extends Enum<T>> extends joptsimple.util.EnumConverter<T> {
         private EnumConverter(Class<T> enumClazz) {
             super(enumClazz);
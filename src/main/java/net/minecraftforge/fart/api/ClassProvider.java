@@ -27,7 +27,7 @@ public interface ClassProvider extends Closeable {
      * Creates a default instance of a {@link ClassProvider.Builder}.
      * <p>
      * The default supported library paths are ZIP files and directories.
-     * Upon calling {@link Builder#addLibrary(Path)}, the path will be walked for all class files and stored.
+     * Upon calling {@link Builder#build()}, each library path will be walked for all class files and stored.
      * Like a class path, entries added earlier take precedence over later entries with the same name.
      */
     public static Builder builder() {
@@ -57,6 +57,7 @@ public interface ClassProvider extends Closeable {
 
     /**
      * Creates a class provider which reads class data from the default classloader that loaded this class.
+     * Class files are read as resources, so classes are never loaded just to be inspected.
      */
     static ClassProvider fromJvmClasspath() {
         return new ClassLoaderClassProvider(null);
@@ -65,6 +66,7 @@ public interface ClassProvider extends Closeable {
     /**
      * Creates a class provider which reads class data from the provided classloader,
      * or the classloader of this class if null.
+     * Class files are read as resources, so classes are never loaded just to be inspected.
      *
      * @param classLoader the classloader to read from, or {@code null} for the default JVM classpath
      */
@@ -113,6 +115,18 @@ public interface ClassProvider extends Closeable {
          */
         Builder shouldCacheAll(boolean value);
 
+        /**
+         * Sets a directory to keep inheritance indexes of library ZIP files in.
+         * <p>
+         * Each library ZIP file is then read from its index instead of being scanned and parsed, and the index is
+         * created or refreshed automatically whenever the library is new or has changed since it was indexed.
+         * Directories are always read directly.
+         *
+         * @param directory the directory to store indexes in, or {@code null} to not use indexes
+         * @return this builder
+         */
+        Builder indexCache(@Nullable Path directory);
+
         /**
          * Builds the {@link ClassProvider} instance based on this configured builder.
          *
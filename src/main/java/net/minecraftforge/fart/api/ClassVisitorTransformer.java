@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.fart.api;
+
+import java.util.Collections;
+
+import net.minecraftforge.fart.internal.VisitorPipeline;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+
+/**
+ * A {@link Transformer} that transforms classes by contributing an ASM {@link ClassVisitor} instead of
+ * parsing and writing the class itself.
+ * <p>
+ * Consecutive visitor transformers registered to a {@link Renamer.Builder} are chained together, so each class
+ * is parsed and written only once no matter how many of them there are. Transformers that only implement
+ * {@link Transformer#process(ClassEntry)} still work, and simply split the chain in two.
+ */
+public interface ClassVisitorTransformer extends Transformer {
+    /**
+     * Starts transforming a class.
+     * This is called for every transformer in the chain before the class is parsed.
+     *
+     * @param entry the class entry as it was before the chain started
+     * @param className the internal name of the class as seen by this transformer,
+     *                  which differs from the entry's if an earlier transformer in the chain renames it
+     * @return the pass that transforms this class, or {@code null} if this transformer has nothing to do for it
+     */
+    @Nullable
+    Pass begin(ClassEntry entry, String className);
+
+    /**
+     * Runs this transformer on its own.
+     */
+    @Override
+    default ClassEntry process(ClassEntry entry) {
+        return VisitorPipeline.run(entry, Collections.singletonList(this));
+    }
+
+    /**
+     * The work done by a {@link ClassVisitorTransformer} on a single class.
+     */
+    interface Pass {
+        /**
+         * Creates the visitor for this pass.
+         *
+         * @param parent the visitor that the transformed class must be passed on to
+         * @return the visitor that will receive the class
+         */
+        ClassVisitor visitor(ClassVisitor parent);
+
+        /**
+         * Checks the header or constant pool of the class before it is parsed, and returns {@code false} if this pass
+         * can already tell it has nothing to do. Rejected passes are dropped from the chain, and if no pass is left
+         * the class is neither parsed nor written. Defaults to {@code true}.
+         * <p>
+         * The reader holds the class as it was before the chain started, so only things that earlier passes don't
+         * change should be checked. Passes that rename the class must accept every class.
+         *
+         * @param reader the reader of the class, which must not be used to parse it
+         * @return {@code true} if the class needs this pass
+         */
+        default boolean accepts(ClassReader reader) {
+            return true;
+        }
+
+        /**
+         * Returns {@code true} if this pass changed the class.
+         * This is called once the class has been visited, if no pass in the chain made a change the original entry is kept.
+         */
+        boolean madeChange();
+
+        /**
+         * Returns the internal name the class will have after this pass.
+         *
+         * @param name the internal name of the class before this pass
+         */
+        default String mapClassName(String name) {
+            return name;
+        }
+
+        /**
+         * Returns {@code true} if the constant pool of the original class can be copied to the output.
+         * Passes that rename things should return {@code false}, so that the stale names are dropped.
+         */
+        default boolean copyConstantPool() {
+            return true;
+        }
+    }
+}
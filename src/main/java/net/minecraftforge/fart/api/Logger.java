@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.fart.api;
+
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.jetbrains.annotations.Nullable;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Handles the log output of a {@link Renamer}.
+ * <p>
+ * Messages that are logged often, such as one per entry, are given as suppliers so that they are only built
+ * when their level is enabled. Methods may be called from any thread.
+ *
+ * @see Renamer.Builder#logger(Logger)
+ */
+public interface Logger {
+    /**
+     * Returns whether messages of the given level are logged.
+     *
+     * @param level the level
+     * @return {@code true} if messages of the level are logged
+     */
+    boolean isEnabled(Level level);
+
+    /**
+     * Logs a message, whether its level is enabled is checked by the caller.
+     *
+     * @param level the level of the message
+     * @param message the message
+     */
+    void log(Level level, String message);
+
+    /**
+     * Logs a message if its level is enabled.
+     *
+     * @param level the level of the message
+     * @param message supplies the message, only called if the level is enabled
+     */
+    default void log(Level level, Supplier<String> message) {
+        if (isEnabled(level))
+            log(level, message.get());
+    }
+
+    /**
+     * Logs a message at the {@link Level#DEBUG DEBUG} level.
+     *
+     * @param message supplies the message, only called if the level is enabled
+     */
+    default void debug(Supplier<String> message) {
+        log(Level.DEBUG, message);
+    }
+
+    /**
+     * Logs a message at the {@link Level#VERBOSE VERBOSE} level.
+     *
+     * @param message supplies the message, only called if the level is enabled
+     */
+    default void verbose(Supplier<String> message) {
+        log(Level.VERBOSE, message);
+    }
+
+    /**
+     * Logs a message at the {@link Level#INFO INFO} level.
+     *
+     * @param message the message
+     */
+    default void info(String message) {
+        if (isEnabled(Level.INFO))
+            log(Level.INFO, message);
+    }
+
+    /**
+     * Logs a message at the {@link Level#WARN WARN} level.
+     *
+     * @param message the message
+     */
+    default void warn(String message) {
+        if (isEnabled(Level.WARN))
+            log(Level.WARN, message);
+    }
+
+    /**
+     * Creates a logger that sends every message of at least the given level to a consumer.
+     *
+     * @param level the lowest level to log
+     * @param out the consumer of the messages
+     * @return the logger
+     */
+    static Logger of(Level level, Consumer<String> out) {
+        requireNonNull(level, "level");
+        requireNonNull(out, "out");
+        return new Logger() {
+            @Override
+            public boolean isEnabled(Level lvl) {
+                return lvl.compareTo(level) >= 0;
+            }
+
+            @Override
+            public void log(Level lvl, String message) {
+                out.accept(message);
+            }
+        };
+    }
+
+    /**
+     * Creates a logger that sends {@link Level#DEBUG DEBUG} messages to one consumer, and everything else to another.
+     *
+     * @param out the consumer of all but debug messages
+     * @param debug the consumer of debug messages, or {@code null} to not log them
+     * @return the logger
+     */
+    static Logger of(Consumer<String> out, @Nullable Consumer<String> debug) {
+        requireNonNull(out, "out");
+        return new Logger() {
+            @Override
+            public boolean isEnabled(Level level) {
+                return level != Level.DEBUG || debug != null;
+            }
+
+            @Override
+            public void log(Level level, String message) {
+                if (level != Level.DEBUG)
+                    out.accept(message);
+                else if (debug != null)
+                    debug.accept(message);
+            }
+        };
+    }
+
+    /**
+     * The levels of messages, from the least to the most important.
+     */
+    enum Level {
+        /** Details only useful to debug the renamer, or a transformer. */
+        DEBUG,
+        /** Messages for every entry or class, such as each entry written to the output. */
+        VERBOSE,
+        /** The configuration, and the progress of each run. */
+        INFO,
+        /** Problems with the input or its mappings, the output may not be what was expected. */
+        WARN
+    }
+}
@@ -6,10 +6,16 @@ package net.minecraftforge.fart.api;
 
 import java.io.Closeable;
 import java.io.File;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Consumer;
 
+import org.jetbrains.annotations.Nullable;
+
 import net.minecraftforge.fart.internal.RenamerBuilder;
 
+import static java.util.Objects.requireNonNull;
+
 /**
  * A {@code Renamer} is used to run generic transformers on a JAR file.
  */
@@ -24,6 +30,35 @@ public interface Renamer extends Closeable {
      */
     void run(File input, File output);
 
+    /**
+     * Runs the renamer and all registered transformers on the input JAR file of the job,
+     * and then outputs it to its output JAR file, reporting to the job's listener
+     * as well as the one set on the builder.
+     *
+     * @param job the JAR file to process
+     */
+    default void run(Job job) {
+        run(job.getInput(), job.getOutput());
+    }
+
+    /**
+     * Runs the renamer and all registered transformers on many JAR files.
+     * <p>
+     * Unlike calling {@link #run(File, File)} for each of them, the jobs share one pool of threads,
+     * the libraries and the classes read from them, and several JAR files are processed at once.
+     * Each job gets its own transformers from the registered {@linkplain Transformer.Factory factories},
+     * so the output of each job is the same as if it had been run on its own. Transformers that were
+     * registered as instances are shared by all jobs, and must be safe to use from several jobs at once.
+     * <p>
+     * All jobs are run even if some of them fail, the first failure is then rethrown.
+     *
+     * @param jobs the JAR files to process
+     */
+    default void runAll(List<Job> jobs) {
+        for (Job job : jobs)
+            run(job.getInput(), job.getOutput());
+    }
+
     /**
      * Creates a default instance of a {@link Builder}.
      * <p>
@@ -36,6 +71,88 @@ public interface Renamer extends Closeable {
         return new RenamerBuilder();
     }
 
+    /**
+     * A single input and output JAR file to process with {@link Renamer#runAll(List)}.
+     */
+    public final class Job {
+        private final File input;
+        private final File output;
+        @Nullable
+        private final RunListener listener;
+        @Nullable
+        private final Logger logger;
+
+        private Job(File input, File output, @Nullable RunListener listener, @Nullable Logger logger) {
+            this.input = input;
+            this.output = output;
+            this.listener = listener;
+            this.logger = logger;
+        }
+
+        /**
+         * Creates a job.
+         *
+         * @param input the input JAR file to process
+         * @param output the output JAR file location
+         * @return the job
+         */
+        public static Job create(File input, File output) {
+            return create(input, output, null);
+        }
+
+        /**
+         * Creates a job with its own listener, which is told about this job only.
+         *
+         * @param input the input JAR file to process
+         * @param output the output JAR file location
+         * @param listener the listener for this job, or {@code null} for none
+         * @return the job
+         */
+        public static Job create(File input, File output, @Nullable RunListener listener) {
+            return create(input, output, listener, null);
+        }
+
+        /**
+         * Creates a job with its own listener and logger.
+         * <p>
+         * Everything logged while running the job, including by the transformers made for it, goes to its logger
+         * instead of the one set on the builder. This lets a renamer that is shared by several callers, such as
+         * the ones kept alive by a daemon, send each caller only its own messages.
+         *
+         * @param input the input JAR file to process
+         * @param output the output JAR file location
+         * @param listener the listener for this job, or {@code null} for none
+         * @param logger the logger for this job, or {@code null} to use the renamer's
+         * @return the job
+         */
+        public static Job create(File input, File output, @Nullable RunListener listener, @Nullable Logger logger) {
+            return new Job(requireNonNull(input, "input"), requireNonNull(output, "output"), listener, logger);
+        }
+
+        public File getInput() {
+            return this.input;
+        }
+
+        public File getOutput() {
+            return this.output;
+        }
+
+        @Nullable
+        public RunListener getListener() {
+            return this.listener;
+        }
+
+        @Nullable
+        public Logger getLogger() {
+            return this.logger;
+        }
+
+        @Override
+        public String toString() {
+            return this.input + " -> " + this.output;
+        }
+    }
+
     /**
      * A {@code Renamer.Builder} is used to configure and construct a {@link Renamer}.
      */
@@ -97,6 +214,39 @@ public interface Renamer extends Closeable {
          */
         Builder threads(int value);
 
+        /**
+         * Sets whether entries in the output JAR file are stored without compression. Defaults to {@code false}.
+         * <p>
+         * This makes writing the output much cheaper at the cost of a larger file,
+         * which is useful for intermediate files that are only read by other tools.
+         *
+         * @param value whether to store output entries without compression
+         * @return this builder
+         */
+        Builder stored(boolean value);
+
+        /**
+         * Sets whether entries that no transformer replaced are copied to the output JAR file
+         * using their original compressed data. Defaults to {@code false}.
+         * <p>
+         * This skips compressing most resources again, but means the output depends on how the input was compressed,
+         * so it is no longer guaranteed to be identical to the output of a run without this option.
+         *
+         * @param value whether to copy the compressed data of unchanged entries
+         * @return this builder
+         */
+        Builder passthrough(boolean value);
+
+        /**
+         * Sets a directory to keep inheritance indexes of the library files in, so that libraries which haven't changed
+         * since the last run don't have to be scanned and parsed again. Indexes are created and refreshed automatically.
+         *
+         * @param directory the directory to store indexes in, or {@code null} to not use indexes
+         * @return this builder
+         * @see ClassProvider.Builder#indexCache(java.nio.file.Path)
+         */
+        Builder libraryIndex(@Nullable File directory);
+
         /**
          * Sets the logging consumer to use for standard logging.
          *
@@ -113,6 +263,85 @@ public interface Renamer extends Closeable {
          */
         Builder debug(Consumer<String> debug);
 
+        /**
+         * Sets the logger to use for all output, instead of the consumers given to {@link #logger(Consumer)}
+         * and {@link #debug(Consumer)}.
+         *
+         * @param logger the logger
+         * @return this builder
+         */
+        Builder logger(Logger logger);
+
+        /**
+         * Sets the executor to run the work of every run on, instead of a pool of {@linkplain #threads(int) threads}
+         * the renamer makes for each run. This allows sharing a pool, such as a build tool's workers, between
+         * renamers. The number of threads is still used to decide how much work to queue up at once.
+         * <p>
+         * The executor must not be the one calling {@link Renamer#run(File, File)}, as that waits on the tasks it
+         * queues, and it is never shut down by the renamer.
+         *
+         * @param executor the executor to run tasks on
+         * @return this builder
+         */
+        Builder executor(ExecutorService executor);
+
+        /**
+         * Sets whether to run every task on a new virtual thread instead of a pool of platform threads. This lets
+         * tasks that wait on I/O, such as reading libraries, overlap without tying up a platform thread each.
+         * Virtual threads need Java 21 or newer, when they aren't available {@link #build()} throws an exception.
+         * Defaults to {@code false}, and is ignored if an {@linkplain #executor(ExecutorService) executor} is set.
+         *
+         * @param value whether to use virtual threads
+         * @return this builder
+         */
+        Builder virtualThreads(boolean value);
+
+        /**
+         * Sets how many bytes of output may be held in memory while a run waits to write it in order. Once the budget
+         * is used up, the encoded data of further entries is spilled to a temporary file, and read back when written.
+         * The output is the same either way, and how much was spilled is reported in {@link RunStats}.
+         * Each of the jobs run at once by {@link Renamer#runAll(List)} has a budget of its own.
+         * <p>
+         * Input entries are read as they are needed, so this covers most of what a run holds on the heap, but
+         * not the entries being transformed at the time. Defaults to no limit.
+         *
+         * @param bytes the most bytes of output to hold in memory
+         * @return this builder
+         */
+        Builder memoryBudget(long bytes);
+
+        /**
+         * Sets whether to hold resources and encoded output in pooled direct memory instead of on the heap.
+         * Large payloads that live for a whole run then don't have to be copied around by the garbage collector,
+         * and the memory is reused as soon as an entry is written. Classes are still read onto the heap, as that
+         * is where they are parsed. Defaults to {@code false}.
+         *
+         * @param value whether to keep payloads off the heap
+         * @return this builder
+         * @see Transformer.Entry#getDataBuffer()
+         */
+        Builder offHeap(boolean value);
+
+        /**
+         * Sets the listener that is told about the progress of every run, and what it spent its time on.
+         * Collecting the time spent in each transformer has a small cost, so it is only done when there is a listener.
+         *
+         * @param listener the listener
+         * @return this builder
+         * @see Job#create(File, File, RunListener)
+         */
+        Builder listener(RunListener listener);
+
+        /**
+         * Sets the file to write a timeline of what each thread did to, replaced at the end of every call to
+         * {@link Renamer#run(File, File)} or {@link Renamer#runAll(List)}. Jobs run together share the timeline.
+         *
+         * @param file the file to write the timeline to
+         * @return this builder
+         * @see TraceRecorder
+         */
+        Builder trace(File file);
+
         /**
          * Sets whether to collect parameter names of abstract methods for FernFlower. Defaults to {@code true}.
          * @param collectAbstractParams whether to collect parameter names of abstract methods for FernFlower
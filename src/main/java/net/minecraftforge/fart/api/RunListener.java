@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.fart.api;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Is told about the progress of runs of a {@link Renamer}, and what they spent their time on.
+ * <p>
+ * Methods may be called from any thread. When several JAR files are processed at once with
+ * {@link Renamer#runAll(java.util.List)}, the events of their runs are interleaved.
+ * <p>
+ * Times given to the methods are in nanoseconds, and timestamps are values of {@link System#nanoTime()}.
+ *
+ * @see Renamer.Builder#listener(RunListener)
+ * @see Renamer.Job#create(java.io.File, java.io.File, RunListener)
+ * @see TraceRecorder
+ */
+public interface RunListener {
+    /**
+     * Called when a phase of a run starts.
+     *
+     * @param phase the phase
+     */
+    default void onPhaseStart(RunStats.Phase phase) {}
+
+    /**
+     * Called when a phase of a run ends.
+     *
+     * @param phase the phase
+     * @param time the wall time the phase took, in nanoseconds
+     */
+    default void onPhaseEnd(RunStats.Phase phase, long time) {}
+
+    /**
+     * Called as entries are done during the {@link RunStats.Phase#INDEX INDEX} and
+     * {@link RunStats.Phase#TRANSFORM TRANSFORM} phases, at most around a hundred times per phase.
+     *
+     * @param phase the phase
+     * @param done the number of entries done so far
+     * @param total the number of entries to do in the phase
+     */
+    default void onProgress(RunStats.Phase phase, int done, int total) {}
+
+    /**
+     * Called on the worker thread that ran an entry through a transformer, once the transformer is done with it.
+     * Consecutive transformers that visit classes are run together, and are reported as a single transformer.
+     *
+     * @param transformer the transformer
+     * @param entry the name of the entry
+     * @param start when the transformer started
+     * @param end when the transformer finished
+     */
+    default void onTransform(Transformer transformer, String entry, long start, long end) {}
+
+    /**
+     * Called on the thread that looked up a class for the first time to resolve its hierarchy and mappings,
+     * which includes resolving its parents if they weren't resolved yet.
+     *
+     * @param name the internal name of the class
+     * @param start when the lookup started
+     * @param end when the lookup finished
+     */
+    default void onClassResolve(String name, long start, long end) {}
+
+    /**
+     * Called when a run finished successfully.
+     *
+     * @param stats the stats of the run
+     */
+    default void onRunEnd(RunStats stats) {}
+
+    /**
+     * Returns a listener that tells this listener about every event, and then the given listener.
+     *
+     * @param next the listener to tell after this one
+     * @return the combined listener
+     */
+    default RunListener andThen(RunListener next) {
+        requireNonNull(next, "next");
+        RunListener first = this;
+        return new RunListener() {
+            @Override
+            public void onPhaseStart(RunStats.Phase phase) {
+                first.onPhaseStart(phase);
+                next.onPhaseStart(phase);
+            }
+
+            @Override
+            public void onPhaseEnd(RunStats.Phase phase, long time) {
+                first.onPhaseEnd(phase, time);
+                next.onPhaseEnd(phase, time);
+            }
+
+            @Override
+            public void onProgress(RunStats.Phase phase, int done, int total) {
+                first.onProgress(phase, done, total);
+                next.onProgress(phase, done, total);
+            }
+
+            @Override
+            public void onTransform(Transformer transformer, String entry, long start, long end) {
+                first.onTransform(transformer, entry, start, end);
+                next.onTransform(transformer, entry, start, end);
+            }
+
+            @Override
+            public void onClassResolve(String name, long start, long end) {
+                first.onClassResolve(name, start, end);
+                next.onClassResolve(name, start, end);
+            }
+
+            @Override
+            public void onRunEnd(RunStats stats) {
+                first.onRunEnd(stats);
+                next.onRunEnd(stats);
+            }
+        };
+    }
+}
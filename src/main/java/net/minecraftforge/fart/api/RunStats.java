@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.fart.api;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What a single run of a {@link Renamer} spent its time on, as reported to {@link RunListener#onRunEnd(RunStats)}.
+ * All durations are in nanoseconds.
+ */
+public interface RunStats {
+    /**
+     * The input JAR file of the run.
+     */
+    File getInput();
+
+    /**
+     * The output JAR file of the run.
+     */
+    File getOutput();
+
+    /**
+     * The wall time of the whole run.
+     */
+    long getTotalTime();
+
+    /**
+     * The wall time of each phase of the run, in the order they ran.
+     * Phases a run didn't get to are missing.
+     */
+    Map<Phase, Long> getPhaseTimes();
+
+    /**
+     * The time spent in each transformer, in the order they run.
+     * <p>
+     * Consecutive {@link ClassVisitorTransformer}s share a single pass over each class,
+     * so they are reported together as one entry, with what each of them did in {@link TransformerStats#getPasses()}.
+     */
+    List<TransformerStats> getTransformers();
+
+    /**
+     * The number of entries in the input JAR file.
+     */
+    int getEntries();
+
+    /**
+     * The number of uncompressed bytes read from the input JAR file.
+     */
+    long getBytesRead();
+
+    /**
+     * The size of the output JAR file.
+     */
+    long getBytesWritten();
+
+    /**
+     * The number of class lookups answered from the class cache.
+     */
+    long getClassCacheHits();
+
+    /**
+     * The number of class lookups that had to search the class providers.
+     */
+    long getClassCacheMisses();
+
+    /**
+     * The number of classes that weren't found in any class provider.
+     */
+    long getMissingClasses();
+
+    /**
+     * The number of entries whose output was spilled to disk to stay within the memory budget.
+     *
+     * @see Renamer.Builder#memoryBudget(long)
+     */
+    int getSpilledEntries();
+
+    /**
+     * The number of bytes of output that were spilled to disk to stay within the memory budget.
+     *
+     * @see Renamer.Builder#memoryBudget(long)
+     */
+    long getSpilledBytes();
+
+    /**
+     * The phases of a run, in the order they happen.
+     */
+    enum Phase {
+        /** Reading the libraries, only done by the first run of a renamer. */
+        SETUP,
+        /** Opening the input and listing its entries. */
+        READ,
+        /** Adding the input's classes to the inheritance map. */
+        INDEX,
+        /** Resolving the class hierarchy of the input before renaming it. */
+        RESOLVE,
+        /** Running every entry through the transformers, and encoding the results for the output. */
+        TRANSFORM,
+        /** Adding the extra entries created by the transformers. */
+        EXTRAS,
+        /** Writing the sorted output. */
+        WRITE
+    }
+
+    /**
+     * The work done by a single transformer over a run.
+     */
+    interface TransformerStats {
+        /**
+         * A name for the transformer, for display only.
+         */
+        String getName();
+
+        /**
+         * The CPU time spent in the transformer, summed over all threads.
+         * Falls back to wall time if the JVM can't measure the CPU time of threads.
+         * <p>
+         * For a group of {@link ClassVisitorTransformer}s sharing a pass over each class, this is the time of the whole group.
+         */
+        long getTime();
+
+        /**
+         * The number of entries given to the transformer.
+         */
+        int getEntries();
+
+        /**
+         * The number of entries the transformer replaced or removed.
+         */
+        int getChanged();
+
+        /**
+         * What each transformer of a group of {@link ClassVisitorTransformer}s sharing a pass over each class did,
+         * in the order they run. Empty for a transformer that runs on its own.
+         */
+        List<PassStats> getPasses();
+    }
+
+    /**
+     * The work done by a single {@link ClassVisitorTransformer} of a group, which can't be timed on its own.
+     */
+    interface PassStats {
+        /**
+         * A name for the transformer, for display only.
+         */
+        String getName();
+
+        /**
+         * The number of entries the transformer ran on.
+         * Classes it turned down from their header and constant pool alone are not counted.
+         */
+        int getEntries();
+
+        /**
+         * The number of entries the transformer changed, replaced or removed.
+         */
+        int getChanged();
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.fart.api;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.minecraftforge.fart.internal.TraceRecorderImpl;
+
+/**
+ * Records a timeline of what each thread did during runs, which can be written in the
+ * <a href="https://docs.google.com/document/d/1CvAClvFfyA5R-PhYUmn5OOQtYMH4h6I0nSsKchNAySU">trace event format</a>
+ * read by {@code chrome://tracing} and <a href="https://ui.perfetto.dev">Perfetto</a>.
+ * <p>
+ * The timeline has a span for every phase and run on the thread driving it, and for every entry going through
+ * every transformer and every class lookup on the worker thread doing it. Gaps between the spans of a worker
+ * are time it spent idle.
+ *
+ * @see Renamer.Builder#trace(File)
+ */
+public interface TraceRecorder extends RunListener {
+    /**
+     * Creates a new, empty recorder.
+     *
+     * @return the recorder
+     */
+    static TraceRecorder create() {
+        return new TraceRecorderImpl();
+    }
+
+    /**
+     * Writes everything recorded so far to a file, replacing it if it exists.
+     * This must not be called while a run is still recording.
+     *
+     * @param file the file to write to
+     * @throws IOException if the file could not be written
+     */
+    void write(File file) throws IOException;
+
+    /**
+     * Forgets everything recorded so far, so that the recorder can be reused for the next runs.
+     * This must not be called while a run is still recording.
+     */
+    void clear();
+}
@@ -4,10 +4,19 @@
  */
 package net.minecraftforge.fart.api;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.zip.ZipEntry;
 
 import net.minecraftforge.fart.internal.FFLineFixer;
@@ -58,6 +67,17 @@ public interface Transformer {
         return entry;
     }
 
+    /**
+     * Returns which entries this transformer wants to process. Entries it isn't interested in are never handed to it,
+     * and entries nobody is interested in may be copied to the output without reading them at all.
+     * This is called often, and must always return the same interest. Defaults to every entry.
+     *
+     * @return the interest of this transformer
+     */
+    default Interest getInterest() {
+        return Interest.ALL;
+    }
+
     /**
      * Returns extra entries to add to the JAR file.
      */
@@ -73,7 +93,7 @@ public interface Transformer {
      * @return a factory for a renaming transformer
      */
     static Factory renamerFactory(IMappingFile map, boolean collectAbstractParams) {
-        return ctx -> new RenamingTransformer(ctx.getClassProvider(), map, ctx.getLog(), collectAbstractParams);
+        return ctx -> new RenamingTransformer(ctx.getClassProvider(), map, ctx.getLogger(), collectAbstractParams);
     }
 
     /**
@@ -115,7 +135,7 @@ public interface Transformer {
      * @return a factory for a transformer that applies line number information
      */
     public static Factory fernFlowerLineFixerFactory(File sourceJar) {
-        return ctx -> new FFLineFixer(ctx.getDebug(), sourceJar);
+        return ctx -> new FFLineFixer(ctx.getLogger(), sourceJar);
     }
 
     /**
@@ -146,7 +166,7 @@ public interface Transformer {
      * @return a factory for a transformer that strips signatures
      */
     public static Factory signatureStripperFactory(SignatureStripperConfig config) {
-        return ctx -> new SignatureStripperTransformer(ctx.getLog(), config);
+        return ctx -> new SignatureStripperTransformer(ctx.getLogger(), config);
     }
 
     /**
@@ -172,9 +192,43 @@ public interface Transformer {
 
         /**
          * Returns the bytes associated with this entry.
+         * Entries created from a buffer or a stream copy their data into a new array on every call.
          */
         byte[] getData();
 
+        /**
+         * Returns the number of bytes associated with this entry, without reading them.
+         *
+         * @return the size of the data
+         */
+        default long size() {
+            return getDataBuffer().remaining();
+        }
+
+        /**
+         * Opens a stream of the bytes associated with this entry. Unlike {@link #getData()}, this works for entries
+         * of any size, and the data of entries read from the input is decompressed as the stream is read.
+         *
+         * @return a new stream of the data, which the caller must close
+         * @throws IOException if the data could not be read
+         */
+        default InputStream openStream() throws IOException {
+            return new ByteArrayInputStream(getData());
+        }
+
+        /**
+         * Returns a read only view of the bytes associated with this entry, so that transformers which can read
+         * from a buffer don't need to copy the data. Each call returns a new view, positioned at the start of the data.
+         * <p>
+         * The data of entries read from the input may be held outside the heap, and is only valid until the entry has
+         * been processed. Transformers that need the data for longer must copy it.
+         *
+         * @return the data
+         */
+        default ByteBuffer getDataBuffer() {
+            return ByteBuffer.wrap(getData()).asReadOnlyBuffer();
+        }
+
         /**
          * Runs the provided transformer over this entry and returns the transformed entry.
          *
@@ -182,6 +236,22 @@ public interface Transformer {
          * @return the transformed entry
          */
         Entry process(Transformer transformer);
+
+        /**
+         * Supplies the data of an entry that is read lazily.
+         *
+         * @see ResourceEntry#create(String, long, long, StreamSupplier)
+         */
+        @FunctionalInterface
+        interface StreamSupplier {
+            /**
+             * Opens a new stream of the data, each call must return the same bytes.
+             *
+             * @return the stream
+             * @throws IOException if the data could not be read
+             */
+            InputStream open() throws IOException;
+        }
     }
 
     /**
@@ -253,6 +323,35 @@ public interface Transformer {
         static ResourceEntry create(String name, long time, byte[] data) {
             return new EntryImpl.ResourceEntry(name, time, data);
         }
+
+        /**
+         * Creates a resource entry backed by a buffer, which is not copied.
+         * The data is the remaining bytes of the buffer, the buffer itself is left untouched.
+         *
+         * @param name the name of the entry
+         * @param time the last modification time
+         * @param data the raw resource bytes
+         * @return the resource entry
+         * @see Entry#getDataBuffer()
+         */
+        static ResourceEntry create(String name, long time, ByteBuffer data) {
+            return new EntryImpl.ResourceEntry(name, time, data);
+        }
+
+        /**
+         * Creates a resource entry whose data is only read when it is asked for, so that it never has to be held in
+         * memory as a whole by anyone who can use {@link Entry#openStream()}. The supplier may be called more than
+         * once, and from any thread, until the run the entry is part of has finished.
+         *
+         * @param name the name of the entry
+         * @param time the last modification time
+         * @param size the number of bytes the supplier supplies
+         * @param data supplies the raw resource bytes
+         * @return the resource entry
+         */
+        static ResourceEntry create(String name, long time, long size, StreamSupplier data) {
+            return new EntryImpl.ResourceEntry(name, time, size, data);
+        }
     }
 
     /**
@@ -272,6 +371,137 @@ public interface Transformer {
         }
     }
 
+    /**
+     * Decides which entries a {@link Transformer} wants to process. Only the kind and name of an entry are looked at,
+     * so that nothing has to be read to decide.
+     *
+     * @see Transformer#getInterest()
+     */
+    @FunctionalInterface
+    public interface Interest {
+        /** Interested in every entry. */
+        Interest ALL = (kind, name) -> true;
+        /** Interested in nothing, for transformers that only add {@linkplain Transformer#getExtras() extras}. */
+        Interest NONE = (kind, name) -> false;
+
+        /**
+         * Returns {@code true} if the transformer wants to process the entry.
+         *
+         * @param kind the kind of entry
+         * @param name the full name of the entry
+         * @return whether the transformer wants the entry
+         */
+        boolean wants(Kind kind, String name);
+
+        /**
+         * Returns {@code true} if the transformer wants to process the entry.
+         *
+         * @param entry the entry
+         * @return whether the transformer wants the entry
+         */
+        default boolean wants(Entry entry) {
+            return wants(Kind.of(entry), entry.getName());
+        }
+
+        /**
+         * Returns an interest in every entry either this or the other interest wants.
+         *
+         * @param other the other interest
+         * @return the combined interest
+         */
+        default Interest or(Interest other) {
+            requireNonNull(other, "other");
+            if (this == ALL || other == NONE)
+                return this;
+            if (other == ALL || this == NONE)
+                return other;
+            return (kind, name) -> wants(kind, name) || other.wants(kind, name);
+        }
+
+        /**
+         * Creates an interest in every entry of the given kinds.
+         *
+         * @param kinds the kinds of entries
+         * @return the interest
+         */
+        static Interest kinds(Kind... kinds) {
+            Set<Kind> set = kinds.length == 0 ? EnumSet.noneOf(Kind.class) : EnumSet.copyOf(Arrays.asList(kinds));
+            return (kind, name) -> set.contains(kind);
+        }
+
+        /**
+         * Creates an interest in entries of the given kind whose names start with any of the prefixes.
+         *
+         * @param kind the kind of entries
+         * @param prefixes the prefixes of the entry names
+         * @return the interest
+         */
+        static Interest prefixes(Kind kind, String... prefixes) {
+            requireNonNull(kind, "kind");
+            String[] copy = prefixes.clone();
+            return (k, name) -> {
+                if (k != kind)
+                    return false;
+                for (String prefix : copy) {
+                    if (name.startsWith(prefix))
+                        return true;
+                }
+                return false;
+            };
+        }
+
+        /**
+         * Creates an interest in entries of the given kind with any of the names.
+         *
+         * @param kind the kind of entries
+         * @param names the full names of the entries
+         * @return the interest
+         */
+        static Interest names(Kind kind, String... names) {
+            requireNonNull(kind, "kind");
+            Set<String> set = new HashSet<>(Arrays.asList(names));
+            return (k, name) -> k == kind && set.contains(name);
+        }
+
+        /**
+         * Creates an interest in the classes whose internal names match the predicate, such as a set of classes.
+         * Multi-release classes are matched by the name of the class, without the version folder.
+         *
+         * @param classNames the predicate on internal class names
+         * @return the interest
+         */
+        static Interest classes(Predicate<String> classNames) {
+            requireNonNull(classNames, "classNames");
+            return (kind, name) -> kind == Kind.CLASS && classNames.test(EntryImpl.ClassEntry.getClassName(name));
+        }
+
+        /**
+         * The kinds of entries, one for each of the {@link Entry} types.
+         */
+        enum Kind {
+            /** A {@link ClassEntry}. */
+            CLASS,
+            /** The {@link ManifestEntry}. */
+            MANIFEST,
+            /** A {@link ResourceEntry}. */
+            RESOURCE;
+
+            /**
+             * Returns the kind of the entry.
+             *
+             * @param entry the entry
+             * @return the kind of the entry
+             */
+            public static Kind of(Entry entry) {
+                if (entry instanceof ClassEntry)
+                    return CLASS;
+                if (entry instanceof ManifestEntry)
+                    return MANIFEST;
+                return RESOURCE;
+            }
+        }
+    }
+
     /**
      * A factory to create transformers using {@link Renamer} instance-specific information.
      */
@@ -314,6 +544,16 @@ public interface Transformer {
          */
         Consumer<String> getDebug();
 
+        /**
+         * Get the logger that handles all logging output, messages that are logged often should be given to it
+         * as suppliers so that they are only built when their level is enabled.
+         *
+         * @return the logger
+         */
+        default Logger getLogger() {
+            return Logger.of(getLog(), getDebug());
+        }
+
         /**
          * Get a class provider instance that holds centralized information
          * about class files from the registered class providers.
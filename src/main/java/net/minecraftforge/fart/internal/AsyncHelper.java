@@ -12,12 +12,17 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import org.jetbrains.annotations.Nullable;
+
 class AsyncHelper {
     private final ExecutorService exec;
+    private final boolean owned;
     AsyncHelper(int threads) {
         if (threads <= 0)
             throw new IllegalArgumentException("Really.. no threads to process things? What do you want me to use a genie?");
@@ -25,6 +30,17 @@ class AsyncHelper {
             exec = Executors.newSingleThreadExecutor();
         else
             exec = Executors.newWorkStealingPool(threads);
+        this.owned = true;
+    }
+
+    /**
+     * Runs tasks on an executor that was made elsewhere.
+     *
+     * @param owned whether {@link #shutdown()} should shut the executor down, or leave it to whoever made it
+     */
+    AsyncHelper(ExecutorService exec, boolean owned) {
+        this.exec = exec;
+        this.owned = owned;
     }
 
     public <I> void consumeAll(Collection<? extends I> inputs, Function<I, String> namer, Consumer<I> consumer) {
@@ -35,30 +51,122 @@ class AsyncHelper {
         invokeAll(inputs.stream().map(toCallable).collect(Collectors.toList()));
     }
 
+    /**
+     * Like {@link #consumeAll(Collection, Function, Consumer)}, but only allows {@code maxInFlight} inputs to be
+     * submitted and not yet finished at any time. This keeps the amount of work (and data) queued up in the
+     * executor bounded when the consumer is what loads the data.
+     */
+    public <I> void consumeAll(Collection<? extends I> inputs, int maxInFlight, Function<I, String> namer, Consumer<I> consumer) {
+        Semaphore permits = new Semaphore(maxInFlight);
+        AtomicBoolean failed = new AtomicBoolean();
+        List<Pair<String, Future<Void>>> processed = new ArrayList<>(inputs.size());
+        RuntimeException error = null;
+        try {
+            for (I input : inputs) {
+                permits.acquire();
+                if (failed.get())
+                    break;
+                Callable<Void> task = guard(failed, () -> {
+                    consumer.accept(input);
+                    return null;
+                });
+                processed.add(new Pair<>(namer.apply(input), exec.submit(() -> {
+                    try {
+                        return task.call();
+                    } finally {
+                        permits.release();
+                    }
+                })));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = new RuntimeException("Interrupted while submitting tasks", e);
+        } catch (RuntimeException e) {
+            error = e;
+        }
+        awaitAll(processed, failed, error);
+    }
+
     public <I,O> List<O> invokeAll(Collection<? extends I> inputs, Function<I, String> namer, Function<I, O> converter) {
         Function<I, Pair<String, Callable<O>>> toCallable = i -> new Pair<>(namer.apply(i), () -> converter.apply(i));
         return invokeAll(inputs.stream().map(toCallable).collect(Collectors.toList()));
     }
 
     public <O> List<O> invokeAll(Collection<Pair<String, ? extends Callable<O>>> tasks) {
-            List<O> ret = new ArrayList<>(tasks.size());
-            List<Pair<String, Future<O>>> processed = new ArrayList<>(tasks.size());
+        AtomicBoolean failed = new AtomicBoolean();
+        List<Pair<String, Future<O>>> processed = new ArrayList<>(tasks.size());
+        RuntimeException error = null;
+        try {
             for (Pair<String, ? extends Callable<O>> task : tasks) {
-                processed.add(new Pair<>(task.getLeft(), exec.submit(task.getRight())));
+                if (failed.get())
+                    break;
+                processed.add(new Pair<>(task.getLeft(), exec.submit(guard(failed, task.getRight()))));
             }
-            for (Pair<String, Future<O>> future : processed) {
-                try {
-                    O done = future.getRight().get();
-                    if (done != null)
-                        ret.add(done);
-                } catch (InterruptedException | ExecutionException e) {
-                    throw new RuntimeException("Failed to execute task " + future.getLeft(), e);
-                }
+        } catch (RuntimeException e) {
+            error = e;
+        }
+        return awaitAll(processed, failed, error);
+    }
+
+    /**
+     * Skips the task once another task of the same batch has failed, as its result would be thrown away anyway.
+     */
+    private static <O> Callable<O> guard(AtomicBoolean failed, Callable<O> task) {
+        return () -> {
+            if (failed.get())
+                return null;
+            try {
+                return task.call();
+            } catch (Throwable t) {
+                failed.set(true);
+                throw t;
+            }
+        };
+    }
+
+    /**
+     * Waits for every submitted task to finish, even after one failed or the caller was interrupted.
+     * The caller is free to close whatever the tasks read from, such as mapped zip files, as soon as this returns,
+     * so returning early would leave the remaining tasks reading from unmapped memory.
+     * Tasks that had not started yet are skipped by {@link #guard}, so after a failure this only waits for the running ones.
+     */
+    private static <O> List<O> awaitAll(List<Pair<String, Future<O>>> processed, AtomicBoolean failed, @Nullable RuntimeException error) {
+        if (error != null)
+            failed.set(true);
+
+        List<O> ret = new ArrayList<>(processed.size());
+        boolean interrupted = false;
+        for (int x = 0; x < processed.size(); x++) {
+            Pair<String, Future<O>> future = processed.get(x);
+            try {
+                O done = future.getRight().get();
+                if (done != null)
+                    ret.add(done);
+            } catch (InterruptedException e) {
+                interrupted = true;
+                failed.set(true);
+                if (error == null)
+                    error = new RuntimeException("Interrupted while waiting for task " + future.getLeft(), e);
+                x--; // Wait for the same task again
+            } catch (ExecutionException e) {
+                failed.set(true);
+                RuntimeException ex = new RuntimeException("Failed to execute task " + future.getLeft(), e);
+                if (error == null)
+                    error = ex;
+                else
+                    error.addSuppressed(ex);
             }
-            return ret;
+        }
+
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        if (error != null)
+            throw error;
+        return ret;
     }
 
     public void shutdown() {
-        exec.shutdown();
+        if (this.owned)
+            exec.shutdown();
     }
 }
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.fart.internal;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Keeps data in direct memory, so that data which lives for a whole run doesn't have to be copied around by the
+ * garbage collector, or take up humongous regions of the heap.
+ * <p>
+ * Small buffers are handed out one after another from large slabs. A slab goes back to the pool, to be used again,
+ * once every buffer handed out from it was {@linkplain Slice#release() released}. Buffers too large to share a slab
+ * get memory of their own, which is freed as soon as they are released.
+ */
+class BufferPool implements Closeable {
+    static final int SLAB_SIZE = 4 * 1024 * 1024;
+    private static final int MAX_SHARED = SLAB_SIZE / 4;
+
+    private final int maxFree;
+    private final Deque<ByteBuffer> free = new ArrayDeque<>();
+    @Nullable
+    private Slab current;
+    private boolean closed = false;
+
+    /**
+     * @param maxFree the most unused slabs to keep around for later
+     */
+    BufferPool(int maxFree) {
+        this.maxFree = maxFree;
+    }
+
+    /**
+     * Copies the remaining data of the buffer into direct memory, without moving its position.
+     */
+    Slice copy(ByteBuffer data) {
+        Slice ret = allocate(data.remaining());
+        ret.getBuffer().put(data.duplicate());
+        return ret;
+    }
+
+    /**
+     * Hands out a buffer of the given size, to be filled through {@link Slice#getBuffer()}.
+     */
+    Slice allocate(int size) {
+        if (size > MAX_SHARED) {
+            Slab slab = new Slab(ByteBuffer.allocateDirect(size), false);
+            return new Slice(slab, slab.take(size));
+        }
+
+        synchronized (this) {
+            if (this.closed)
+                throw new IllegalStateException("Buffer pool is closed");
+
+            if (this.current == null || this.current.remaining() < size) {
+                if (this.current != null)
+                    this.current.release(); // The pool no longer hands out of it
+                ByteBuffer buffer = this.free.poll();
+                this.current = new Slab(buffer != null ? buffer : ByteBuffer.allocateDirect(SLAB_SIZE), true);
+            }
+
+            this.current.users.incrementAndGet();
+            return new Slice(this.current, this.current.take(size));
+        }
+    }
+
+    private void recycle(Slab slab) {
+        synchronized (this) {
+            if (slab.pooled && !this.closed && this.free.size() < this.maxFree) {
+                slab.buffer.clear();
+                this.free.push(slab.buffer);
+                return;
+            }
+        }
+        DirectBuffers.free(slab.buffer);
+    }
+
+    /**
+     * Frees the unused slabs, slabs still in use are freed once every buffer handed out from them is released.
+     */
+    @Override
+    public void close() {
+        Slab current;
+        synchronized (this) {
+            if (this.closed)
+                return;
+            this.closed = true;
+            current = this.current;
+            this.current = null;
+            for (ByteBuffer buffer : this.free)
+                DirectBuffers.free(buffer);
+            this.free.clear();
+        }
+        if (current != null)
+            current.release();
+    }
+
+    private class Slab {
+        private final ByteBuffer buffer;
+        private final boolean pooled;
+        /** The buffers handed out and not yet released, plus one for the pool while it still hands out more. */
+        private final AtomicInteger users = new AtomicInteger(1);
+        private int used = 0;
+
+        private Slab(ByteBuffer buffer, boolean pooled) {
+            this.buffer = buffer;
+            this.pooled = pooled;
+        }
+
+        private int remaining() {
+            return this.buffer.capacity() - this.used;
+        }
+
+        private ByteBuffer take(int size) {
+            ByteBuffer ret = this.buffer.duplicate();
+            ret.limit(this.used + size).position(this.used);
+            this.used += size;
+            return ret.slice();
+        }
+
+        private void release() {
+            if (this.users.decrementAndGet() == 0)
+                recycle(this);
+        }
+    }
+
+    /**
+     * A buffer handed out by the pool.
+     */
+    class Slice {
+        private final Slab slab;
+        private final ByteBuffer buffer;
+        private boolean released = false;
+
+        private Slice(Slab slab, ByteBuffer buffer) {
+            this.slab = slab;
+            this.buffer = buffer;
+        }
+
+        /**
+         * Returns a new view of the buffer, to fill it.
+         */
+        ByteBuffer getBuffer() {
+            return this.buffer.duplicate();
+        }
+
+        /**
+         * Returns a read only view of the data.
+         */
+        ByteBuffer getData() {
+            return this.buffer.asReadOnlyBuffer();
+        }
+
+        /**
+         * Gives the memory back to the pool, the data must not be used afterwards.
+         */
+        void release() {
+            if (this.released)
+                return;
+            this.released = true;
+            this.slab.release();
+        }
+    }
+}
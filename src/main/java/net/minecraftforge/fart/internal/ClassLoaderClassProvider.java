@@ -6,24 +6,66 @@ package net.minecraftforge.fart.internal;
 
 import net.minecraftforge.fart.api.ClassProvider;
 import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.Opcodes;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.WeakHashMap;
 
+/**
+ * Reads class files through a class loader's resources and parses them like any other library class,
+ * so classes are never loaded or linked just to find out what they look like.
+ * JDK classes resolve to {@code jrt:/} resources on Java 9+, and to {@code rt.jar} before that.
+ */
 public class ClassLoaderClassProvider implements ClassProvider {
+    // Classes on a class path don't change while we're running, so all providers for the same loader share their results
+    private static final Map<ClassLoader, MemoizingCache<String, Optional<? extends IClassInfo>>> CACHES = new WeakHashMap<>();
+    private static final List<String> ARRAY_INTERFACES = Collections.unmodifiableList(Arrays.asList("java/lang/Cloneable", "java/io/Serializable"));
+
     private final ClassLoader classLoader;
+    private final MemoizingCache<String, Optional<? extends IClassInfo>> cache;
 
     public ClassLoaderClassProvider(@Nullable ClassLoader classLoader) {
         this.classLoader = classLoader == null ? this.getClass().getClassLoader() : classLoader;
+        this.cache = getCache(this.classLoader);
+    }
+
+    private static MemoizingCache<String, Optional<? extends IClassInfo>> getCache(ClassLoader classLoader) {
+        synchronized (CACHES) {
+            return CACHES.computeIfAbsent(classLoader, k -> {
+                // The cache is the value of a weak map, so it must not keep its own loader alive
+                WeakReference<ClassLoader> loader = new WeakReference<>(k);
+                return new MemoizingCache<>(name -> computeClassInfo(loader.get(), name));
+            });
+        }
     }
 
     @Override
     public Optional<? extends IClassInfo> getClass(String name) {
-        try {
-            Class<?> cls = Class.forName(name.replace('/', '.'), false, this.classLoader);
-            return Optional.of(new ClassProviderImpl.ClassInfo(cls));
-        } catch (ClassNotFoundException | NoClassDefFoundError ex) {
-            return Optional.empty();
+        return this.cache.get(name);
+    }
+
+    private static Optional<? extends IClassInfo> computeClassInfo(@Nullable ClassLoader classLoader, String name) {
+        // Arrays have no class file, but code can still call methods on them, such as clone
+        if (name.startsWith("["))
+            return Optional.of(new ClassProviderImpl.ClassInfo(name, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_ABSTRACT, "java/lang/Object", ARRAY_INTERFACES));
+
+        // Only reachable through a provider, which holds on to the loader
+        if (classLoader == null)
+            throw new IllegalStateException("Class loader was collected while reading " + name);
+
+        try (InputStream stream = classLoader.getResourceAsStream(name + ".class")) {
+            if (stream == null)
+                return Optional.empty();
+            return Optional.of(new ClassProviderImpl.ClassInfo(Util.toByteArray(stream)));
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read class " + name + " from " + classLoader, e);
         }
     }
 
@@ -4,56 +4,33 @@
  */
 package net.minecraftforge.fart.internal;
 
+import java.io.Closeable;
 import java.io.IOException;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 
+import org.jetbrains.annotations.Nullable;
+
 import net.minecraftforge.fart.api.ClassProvider;
 
 public class ClassProviderBuilderImpl implements ClassProvider.Builder {
-    private final List<FileSystem> fileSystems = new ArrayList<>();
-    private final Map<String, Path> sources = new HashMap<>();
+    private final List<Path> libraries = new ArrayList<>();
     private final Map<String, Optional<? extends ClassProvider.IClassInfo>> classInfos = new ConcurrentHashMap<>();
     private boolean cacheAll = false;
+    @Nullable
+    private Path indexCache = null;
 
     public ClassProviderBuilderImpl() {}
 
     @Override
     public ClassProvider.Builder addLibrary(Path path) {
-        try {
-            Path libraryDir;
-            if (Files.isDirectory(path)) {
-                libraryDir = path;
-            } else if (Files.isRegularFile(path)) {
-                FileSystem zipFs = FileSystems.newFileSystem(path, (ClassLoader) null);
-                this.fileSystems.add(zipFs);
-                libraryDir = zipFs.getPath("/");
-            } else {
-                // We can't load it (it doesn't exist)
-                return this;
-            }
-
-            try (Stream<Path> walker = Files.walk(libraryDir)) {
-                walker.forEach(fullPath -> {
-                    Path relativePath = libraryDir.relativize(fullPath);
-                    String pathName = relativePath.toString().replace('\\', '/');
-                    if (!pathName.endsWith(".class") || pathName.startsWith("META-INF"))
-                        return;
-                    this.sources.putIfAbsent(pathName.substring(0, pathName.length() - 6), fullPath);
-                });
-            }
-        } catch (IOException e) {
-            throw new RuntimeException("Could not add library: " + path.toAbsolutePath(), e);
-        }
+        this.libraries.add(path);
 
         return this;
     }
@@ -72,8 +49,71 @@ public class ClassProviderBuilderImpl implements ClassProvider.Builder {
         return this;
     }
 
+    @Override
+    public ClassProvider.Builder indexCache(@Nullable Path directory) {
+        this.indexCache = directory;
+
+        return this;
+    }
+
     @Override
     public ClassProvider build() {
-        return new ClassProviderImpl(this.fileSystems, this.sources, this.classInfos, this.cacheAll);
+        List<Closeable> archives = new ArrayList<>();
+        List<ClassProviderImpl.Library> libraries = new ArrayList<>();
+        try {
+            for (Path path : this.libraries) {
+                Object event = Jfr.INSTANCE.beginLibrary();
+                ClassProviderImpl.Library library = openLibrary(path, archives);
+                if (library != null) {
+                    libraries.add(library);
+                    Jfr.INSTANCE.endLibrary(event, path, "open", library.size());
+                }
+            }
+        } catch (RuntimeException e) {
+            for (Closeable archive : archives) {
+                try {
+                    archive.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
+        return new ClassProviderImpl(archives, libraries, this.classInfos, this.cacheAll);
+    }
+
+    @Nullable
+    private ClassProviderImpl.Library openLibrary(Path path, List<Closeable> archives) {
+        try {
+            if (Files.isDirectory(path)) {
+                ClassProviderImpl.SourceLibrary library = new ClassProviderImpl.SourceLibrary();
+                try (Stream<Path> walker = Files.walk(path)) {
+                    walker.forEach(fullPath -> {
+                        Path relativePath = path.relativize(fullPath);
+                        String pathName = relativePath.toString().replace('\\', '/');
+                        library.add(pathName, new ClassProviderImpl.FileSource(fullPath));
+                    });
+                }
+                return library;
+            } else if (Files.isRegularFile(path)) {
+                // An up to date index means we don't have to touch the jar at all
+                if (this.indexCache != null)
+                    return LibraryIndex.load(path, this.indexCache);
+
+                // Only the central directory is read here, class data is read from the mapping when it's first asked for
+                ZipReader zip = ZipReader.open(path);
+                archives.add(zip);
+                ClassProviderImpl.SourceLibrary library = new ClassProviderImpl.SourceLibrary();
+                for (ZipReader.Record record : zip.getRecords()) {
+                    if (!record.isDirectory())
+                        library.add(record.getName(), new ClassProviderImpl.ZipSource(zip, record));
+                }
+                return library;
+            }
+            // We can't load it (it doesn't exist)
+            return null;
+        } catch (IOException e) {
+            throw new RuntimeException("Could not add library: " + path.toAbsolutePath(), e);
+        }
     }
 }
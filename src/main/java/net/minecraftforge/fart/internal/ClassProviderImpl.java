@@ -7,42 +7,34 @@ package net.minecraftforge.fart.internal;
 import net.minecraftforge.fart.api.ClassProvider;
 import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.Type;
-import org.objectweb.asm.tree.ClassNode;
-import org.objectweb.asm.tree.FieldNode;
-import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
 
+import java.io.Closeable;
 import java.io.IOException;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
-import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.Function;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import static org.objectweb.asm.Opcodes.*;
 
 class ClassProviderImpl implements ClassProvider {
     /**
-     * A list of the open (ZIP) filesystems.
+     * A list of the open (ZIP) archives.
      */
-    private final List<FileSystem> fileSystems;
+    private final List<Closeable> archives;
     /**
-     * Holds a map of ZIP entry name / full classname -> path to the class file.
-     * Always uses {@code /} for path delimiters.
+     * The libraries to look classes up in, in order of precedence.
      */
-    private final Map<String, Path> sources;
+    private final List<Library> libraries;
     /**
      * Only holds classes explicitly added through the builder with their raw class bytes.
      */
@@ -51,98 +43,173 @@ class ClassProviderImpl implements ClassProvider {
      * Optionally caches all class infos returned by this implementation, if not null.
      */
     @Nullable
-    private final Map<String, Optional<? extends IClassInfo>> classCache;
+    private final MemoizingCache<String, Optional<? extends IClassInfo>> classCache;
 
-    ClassProviderImpl(List<FileSystem> fileSystems, Map<String, Path> sources, Map<String, Optional<? extends IClassInfo>> classInfos, boolean cacheAll) {
-        this.fileSystems = Collections.unmodifiableList(fileSystems);
-        this.sources = Collections.unmodifiableMap(sources);
+    ClassProviderImpl(List<Closeable> archives, List<Library> libraries, Map<String, Optional<? extends IClassInfo>> classInfos, boolean cacheAll) {
+        this.archives = Collections.unmodifiableList(archives);
+        this.libraries = Collections.unmodifiableList(libraries);
         this.classInfos = Collections.unmodifiableMap(classInfos);
-        this.classCache = cacheAll ? new ConcurrentHashMap<>() : null;
+        this.classCache = cacheAll ? new MemoizingCache<>(this::computeClassInfo) : null;
     }
 
     @Override
     public Optional<? extends IClassInfo> getClass(String name) {
-        return this.classCache != null ? this.classCache.computeIfAbsent(name, this::computeClassInfo) : computeClassInfo(name);
+        return this.classCache != null ? this.classCache.get(name) : computeClassInfo(name);
     }
 
     private Optional<? extends IClassInfo> computeClassInfo(String name) {
         if (this.classInfos.containsKey(name))
             return this.classInfos.get(name);
 
-        Path source = this.sources.get(name);
-
-        if (source == null)
-            return Optional.empty();
-
-        try {
-            byte[] data = Util.toByteArray(Files.newInputStream(source));
-            return Optional.of(new ClassInfo(data));
-        } catch (IOException e) {
-            throw new RuntimeException("Could not get data to compute class info in file: " + source.toAbsolutePath(), e);
+        for (Library library : this.libraries) {
+            IClassInfo info = library.getClass(name);
+            if (info != null)
+                return Optional.of(info);
         }
+
+        return Optional.empty();
     }
 
     @Override
     public void close() throws IOException {
-        for (FileSystem fs : this.fileSystems) {
-            fs.close();
+        for (Closeable archive : this.archives) {
+            archive.close();
+        }
+    }
+
+    /**
+     * A single library added through the builder.
+     */
+    interface Library {
+        /**
+         * Returns the class info for a class in this library, or {@code null} if the library doesn't have it.
+         */
+        @Nullable
+        IClassInfo getClass(String name);
+
+        /**
+         * Returns the number of classes in this library.
+         */
+        int size();
+    }
+
+    /**
+     * A library whose classes are parsed from their class files when they are first asked for.
+     */
+    static class SourceLibrary implements Library {
+        /**
+         * Holds a map of ZIP entry name / full classname -> where to read the class file from.
+         * Always uses {@code /} for path delimiters.
+         */
+        private final Map<String, Source> sources = new HashMap<>();
+
+        void add(String pathName, Source source) {
+            if (!pathName.endsWith(".class") || pathName.startsWith("META-INF"))
+                return;
+            this.sources.putIfAbsent(pathName.substring(0, pathName.length() - 6), source);
+        }
+
+        @Override
+        public int size() {
+            return this.sources.size();
+        }
+
+        @Override
+        @Nullable
+        public IClassInfo getClass(String name) {
+            Source source = this.sources.get(name);
+
+            if (source == null)
+                return null;
+
+            try {
+                byte[] data = source.read();
+                return new ClassInfo(data);
+            } catch (IOException e) {
+                throw new RuntimeException("Could not get data to compute class info in file: " + source, e);
+            }
+        }
+    }
+
+    /**
+     * Somewhere the data for a single class file can be read from.
+     */
+    interface Source {
+        byte[] read() throws IOException;
+    }
+
+    static class FileSource implements Source {
+        private final Path path;
+
+        FileSource(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        public byte[] read() throws IOException {
+            return Util.toByteArray(Files.newInputStream(this.path));
+        }
+
+        @Override
+        public String toString() {
+            return this.path.toAbsolutePath().toString();
+        }
+    }
+
+    static class ZipSource implements Source {
+        private final ZipReader zip;
+        private final ZipReader.Record record;
+
+        ZipSource(ZipReader zip, ZipReader.Record record) {
+            this.zip = zip;
+            this.record = record;
+        }
+
+        @Override
+        public byte[] read() throws IOException {
+            return this.zip.read(this.record);
+        }
+
+        @Override
+        public String toString() {
+            return this.zip.getPath().toAbsolutePath() + "!/" + this.record.getName();
         }
     }
 
+    /**
+     * Class info parsed straight from the class file. Only the header and the name, descriptor and access of each member
+     * are read, everything else, including code, annotations and signatures, is skipped without being decoded.
+     */
     static class ClassInfo implements IClassInfo {
         private final String name;
-        private final Access access;
+        private final int access;
         private final String superName;
         private final List<String> interfaces;
-        private final Map<String, FieldInfo> fields;
-        private Collection<FieldInfo> fieldsView;
-        private final Map<String, MethodInfo> methods;
-        private Collection<MethodInfo> methodsView;
+        private final MemberTable fields;
+        private final MemberTable methods;
 
         ClassInfo(byte[] data) {
-            ClassReader reader = new ClassReader(data);
-            ClassNode node = new ClassNode();
-            reader.accept(node, ClassReader.SKIP_CODE);
-
-            this.name = node.name;
-            this.access = new Access(node.access);
-            this.superName = node.superName;
-            this.interfaces = node.interfaces.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(node.interfaces);
-
-            if (!node.methods.isEmpty())
-                this.methods = Collections.unmodifiableMap(node.methods.stream().map(MethodInfo::new)
-                    .collect(Collectors.toMap(m -> m.getName() + m.getDescriptor(), Function.identity())));
-            else
-                this.methods = null;
-
-
-            if (!node.fields.isEmpty())
-                this.fields = Collections.unmodifiableMap(node.fields.stream().map(FieldInfo::new)
-                    .collect(Collectors.toMap(FieldInfo::getName, Function.identity())));
-            else
-                this.fields = null;
+            Parser parser = new Parser();
+            new ClassReader(data).accept(parser, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+            this.name = parser.name;
+            this.access = parser.access;
+            this.superName = parser.superName;
+            this.interfaces = parser.interfaces;
+            this.fields = parser.fields.trim();
+            this.methods = parser.methods.trim();
         }
 
-        ClassInfo(Class<?> node) {
-            this.name = Util.nameToBytecode(node);
-            this.access = new Access(node.getModifiers());
-            this.superName = Util.nameToBytecode(node.getSuperclass());
-            this.interfaces = Collections.unmodifiableList(Arrays.stream(node.getInterfaces())
-                .map(c -> Util.nameToBytecode(c)).collect(Collectors.toList()));
-
-            Map<String, MethodInfo> mtds = Stream.concat(
-                Arrays.stream(node.getConstructors()).map(MethodInfo::new),
-                Arrays.stream(node.getDeclaredMethods()).map(MethodInfo::new)
-            ).collect(Collectors.toMap(m -> m.getName() + m.getDescriptor(), Function.identity()));
-
-            this.methods = mtds.isEmpty() ? null : Collections.unmodifiableMap(mtds);
-
-            Field[] flds = node.getDeclaredFields();
-            if (flds != null && flds.length > 0) {
-                this.fields = Collections.unmodifiableMap(Arrays.stream(flds).map(FieldInfo::new)
-                    .collect(Collectors.toMap(FieldInfo::getName, Function.identity())));
-            } else
-                this.fields = null;
+        /**
+         * Creates a class info without any members, for classes that don't have a class file.
+         */
+        ClassInfo(String name, int access, @Nullable String superName, List<String> interfaces) {
+            this.name = name;
+            this.access = access;
+            this.superName = superName;
+            this.interfaces = interfaces;
+            this.fields = new MemberTable(name, false);
+            this.methods = new MemberTable(name, true);
         }
 
         @Override
@@ -156,11 +223,11 @@ class ClassProviderImpl implements ClassProvider {
         }
         @Override
         public int getAccess() {
-            return access.getValue();
+            return access;
         }
 
         public Access getAccessLevel() {
-            return this.access;
+            return new Access(this.access);
         }
 
         @Override
@@ -170,26 +237,22 @@ class ClassProviderImpl implements ClassProvider {
 
         @Override
         public Collection<? extends IFieldInfo> getFields() {
-            if (fieldsView == null)
-                fieldsView = fields == null ? Collections.emptyList() : Collections.unmodifiableCollection(fields.values());
-            return fieldsView;
+            return fields.getAll();
         }
 
         @Override
         public Optional<? extends IFieldInfo> getField(String name) {
-            return fields == null ? Optional.empty() : Optional.ofNullable(this.fields.get(name));
+            return Optional.ofNullable(fields.find(name));
         }
 
         @Override
         public Collection<? extends IMethodInfo> getMethods() {
-            if (methodsView == null)
-                methodsView = methods == null ? Collections.emptyList() : Collections.unmodifiableCollection(methods.values());
-            return methodsView;
+            return methods.getAll();
         }
 
         @Override
         public Optional<? extends IMethodInfo> getMethod(String name, String desc) {
-            return methods == null ? Optional.empty() : Optional.ofNullable(methods.get(name + " " + desc));
+            return Optional.ofNullable(methods.find(name, desc));
         }
 
         @Override
@@ -197,97 +260,44 @@ class ClassProviderImpl implements ClassProvider {
             return getAccessLevel().toString() + ' ' + getName();
         }
 
-        private class FieldInfo implements IFieldInfo {
-            private final String name;
-            private final String desc;
-            private final Access access;
-
-            public FieldInfo(FieldNode node) {
-                this.name = node.name;
-                this.desc = node.desc;
-                this.access = new Access(node.access);
-            }
-
-            public FieldInfo(Field node) {
-                this.name = node.getName();
-                this.desc = Type.getType(node.getType()).getDescriptor();
-                this.access = new Access(node.getModifiers());
-            }
-
-            @Override
-            public int getAccess() {
-                return access.getValue();
-            }
-
-            public Access getAccessLevel() {
-                return this.access;
-            }
-
-            @Override
-            public String getName() {
-                return name;
-            }
-
-            @Override
-            public String getDescriptor() {
-                return desc;
-            }
-
-            @Override
-            public String toString() {
-                return getAccessLevel().toString() + ' ' + ClassInfo.this.getName() + '/' + getName() + ' ' + getDescriptor();
-            }
-        }
-
-        private class MethodInfo implements IMethodInfo {
-            private final String name;
-            private final String desc;
-            private final Access access;
-
-            MethodInfo(MethodNode node) {
-                this.name = node.name;
-                this.desc = node.desc;
-                this.access = new Access(node.access);
-            }
-
-            MethodInfo(Method node) {
-                this.name = node.getName();
-                this.desc = Type.getMethodDescriptor(node);
-                this.access = new Access(node.getModifiers());
-            }
+        private static class Parser extends ClassVisitor {
+            private String name;
+            private int access;
+            private String superName;
+            private List<String> interfaces;
+            private MemberTable fields;
+            private MemberTable methods;
 
-            MethodInfo(Constructor<?> node) {
-                this.name = "<init>";
-                this.desc = Type.getConstructorDescriptor(node);
-                this.access = new Access(node.getModifiers());
+            private Parser() {
+                super(RenamerImpl.MAX_ASM_VERSION);
             }
 
             @Override
-            public int getAccess() {
-                return access.getValue();
-            }
-
-            public Access getAccessLevel() {
-                return this.access;
+            public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+                // This access includes the same pseudo flags as ClassNode.access, such as ACC_DEPRECATED and ACC_RECORD
+                this.name = name;
+                this.access = access;
+                this.superName = superName;
+                this.interfaces = interfaces == null || interfaces.length == 0 ? Collections.emptyList() : Collections.unmodifiableList(Arrays.asList(interfaces));
+                this.fields = new MemberTable(name, false);
+                this.methods = new MemberTable(name, true);
             }
 
             @Override
-            public String getName() {
-                return name;
+            public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+                this.fields.add(access, name, descriptor);
+                return null;
             }
 
             @Override
-            public String getDescriptor() {
-                return desc;
-            }
-
-            public String toString() {
-                return getAccessLevel().toString() + ' ' + ClassInfo.this.getName() + '/' + getName() + getDescriptor();
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                this.methods.add(access, name, descriptor);
+                return null;
             }
         }
     }
 
-    private static class Access {
+    static class Access {
         private static int[] ACC = new int[23];
         private static String[] NAME = new String[23];
         static {
@@ -7,6 +7,7 @@ package net.minecraftforge.fart.internal;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.Handle;
 import org.objectweb.asm.Label;
@@ -32,18 +33,21 @@ class EnhancedClassRemapper extends ClassRemapper {
     @Override
     public MethodVisitor visitMethod(final int access, final String mname, final String mdescriptor, final String msignature, final String[] exceptions) {
         //System.out.println("Method: " + className + '/' + mname + mdescriptor);
+        // Resolved once here, rather than for the name, every parameter, and every local variable.
+        final EnhancedRemapper.MClass.MMethod method = remapper.getMethod(className, mname, mdescriptor);
+        String remappedName = method == null ? mname : method.getMapped();
         String remappedDescriptor = remapper.mapMethodDesc(mdescriptor);
-        MethodVisitor methodVisitor = cv.visitMethod(access, remapper.mapMethodName(className, mname, mdescriptor), remappedDescriptor, remapper.mapSignature(msignature, false), exceptions == null ? null : remapper.mapTypes(exceptions));
+        MethodVisitor methodVisitor = cv.visitMethod(access, remappedName, remappedDescriptor, remapper.mapSignature(msignature, false), exceptions == null ? null : remapper.mapTypes(exceptions));
         if (methodVisitor == null)
             return null;
 
         if ((access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) != 0)
-            renameAbstract(access, mname, mdescriptor);
+            renameAbstract(access, method, remappedName, mdescriptor);
 
         return new MethodRemapper(methodVisitor, remapper) {
             @Override
             public void visitLocalVariable(final String pname, final String pdescriptor, final String psignature, final Label start, final Label end, final int index) {
-                super.visitLocalVariable(EnhancedClassRemapper.this.remapper.mapParameterName(className, mname, mdescriptor, index, pname), pdescriptor, psignature, start, end, index);
+                super.visitLocalVariable(method == null ? pname : method.mapParameter(index, pname), pdescriptor, psignature, start, end, index);
             }
 
             @Override
@@ -73,7 +77,7 @@ class EnhancedClassRemapper extends ClassRemapper {
         };
     }
 
-    private void renameAbstract(int access, String name, String descriptor) {
+    private void renameAbstract(int access, @Nullable EnhancedRemapper.MClass.MMethod method, String mappedName, String descriptor) {
         Type[] types = Type.getArgumentTypes(descriptor);
         if (types.length == 0)
             return;
@@ -81,13 +85,13 @@ class EnhancedClassRemapper extends ClassRemapper {
         List<String> names = new ArrayList<>();
         int i = (access & Opcodes.ACC_STATIC) == 0 ? 1 : 0;
         for (Type type : types) {
-            names.add(remapper.mapParameterName(className, name, descriptor, i, "var" + i));
+            names.add(method == null ? "var" + i : method.mapParameter(i, "var" + i));
             i += type.getSize();
         }
 
         transformer.storeNames(
             remapper.mapType(className),
-            remapper.mapMethodName(className, name, descriptor),
+            mappedName,
             remapper.mapMethodDesc(descriptor),
             names
         );
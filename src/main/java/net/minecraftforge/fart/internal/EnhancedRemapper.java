@@ -5,13 +5,23 @@
 package net.minecraftforge.fart.internal;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.Type;
@@ -21,6 +31,7 @@ import net.minecraftforge.fart.api.ClassProvider;
 import net.minecraftforge.fart.api.ClassProvider.IClassInfo;
 import net.minecraftforge.fart.api.ClassProvider.IFieldInfo;
 import net.minecraftforge.fart.api.ClassProvider.IMethodInfo;
+import net.minecraftforge.fart.api.Logger;
 import net.minecraftforge.srgutils.IMappingFile;
 
 import static org.objectweb.asm.Opcodes.*;
@@ -28,10 +39,17 @@ import static org.objectweb.asm.Opcodes.*;
 class EnhancedRemapper extends Remapper {
     private final ClassProvider classProvider;
     private final IMappingFile map;
-    private final Map<String, Optional<MClass>> resolved = new ConcurrentHashMap<>();
-    private final Consumer<String> log;
-
-    public EnhancedRemapper(ClassProvider classProvider, IMappingFile map, Consumer<String> log) {
+    private final MemoizingCache<String, Optional<MClass>> resolved = new MemoizingCache<>(this::computeClass);
+    private final Map<String, Optional<MClass>> annotations = new ConcurrentHashMap<>();
+    private final Logger log;
+    /** Collects classes constructed while {@link #resolveHierarchy} runs, so that it can link them in a fixed order. */
+    @Nullable
+    private volatile Queue<MClass> unlinked;
+    /** Told about class lookups while a run is using this remapper, when anyone is listening. */
+    @Nullable
+    volatile RunRecorder recorder;
+
+    public EnhancedRemapper(ClassProvider classProvider, IMappingFile map, Logger log) {
         this.classProvider = classProvider;
         this.map = map;
         this.log = log;
@@ -40,38 +58,44 @@ class EnhancedRemapper extends Remapper {
     @Override public String mapModuleName(final String name) { return name; } // TODO? None of the mapping formats support this.
     @Override
     public String mapAnnotationAttributeName(final String descriptor, final String name) {
-        Type type = Type.getType(descriptor);
-        if (type.getSort() != Type.OBJECT)
+        // Only object types can be annotations, don't bother parsing anything else
+        if (descriptor.length() < 3 || descriptor.charAt(0) != 'L')
             return name;
 
-        MClass cls = getClass(type.getInternalName()).orElse(null);
+        Optional<MClass> clsOpt = this.annotations.get(descriptor);
+        if (clsOpt == null) {
+            clsOpt = Optional.ofNullable(getClass(Type.getType(descriptor).getInternalName()));
+            this.annotations.put(descriptor, clsOpt);
+        }
+
+        MClass cls = clsOpt.orElse(null);
         if (cls == null)
             return name;
 
-        List<MClass.MMethod> lst = cls.getMethods(name).orElse(null);
+        MClass.MMethod[] lst = cls.getMethods(name);
         if (lst == null)
             return name;
 
         // You should not be able to specify conflicting annotation value names
         // As annotation attributes can't have parameters, and the bytecode doesn't store the descriptor
         // But renamers can be weird so log instead of doing weird things.
-        if (lst.size() != 1) {
+        if (lst.length != 1) {
             for (MClass.MMethod mtd : lst)
-                log.accept("Duplicate Annotation name: " + cls.getName() + " " + mtd.getName() + mtd.getDescriptor() + " -> " + cls.getMapped() + " " + mtd.getName());
+                log.warn("Duplicate Annotation name: " + cls.getName() + " " + mtd.getName() + mtd.getDescriptor() + " -> " + cls.getMapped() + " " + mtd.getName());
             return name;
         }
 
-        return lst.get(0).getMapped();
+        return lst[0].getMapped();
     }
 
     @Override public String mapInvokeDynamicMethodName(final String name, final String descriptor) { return name; } // TODO: Lookup how the JVM resolves this and attempt to resolve it to get the owner?
 
+    // These are called for every member reference in every class, so they avoid Optional chains and building keys.
+
     @Override
     public String mapMethodName(final String owner, final String name, final String descriptor) {
-        return getClass(owner)
-            .flatMap(c -> c.getMethod(name, descriptor))
-            .map(MClass.MMethod::getMapped)
-            .orElse(name);
+        MClass.MMethod mtd = getMethod(owner, name, descriptor);
+        return mtd == null ? name : mtd.getMapped();
     }
 
     @Override // We'll treat this like fields for now, tho at the bytecode level I have no idea what this references
@@ -81,10 +105,11 @@ class EnhancedRemapper extends Remapper {
 
     @Override
     public String mapFieldName(final String owner, final String name, final String descriptor) {
-        return getClass(owner)
-            .flatMap(c -> c.getField(name, descriptor))
-            .map(MClass.MField::getMapped)
-            .orElse(name);
+        MClass cls = getClass(owner);
+        if (cls == null)
+            return name;
+        MClass.MField fld = cls.getField(name, descriptor);
+        return fld == null ? name : fld.getMapped();
     }
 
     @Override
@@ -94,32 +119,116 @@ class EnhancedRemapper extends Remapper {
 
     @Override
     public String map(final String name) {
-        return getClass(name).map(MClass::getMapped).orElse(map.remapClass(name));
+        MClass cls = getClass(name);
+        return cls != null ? cls.getMapped() : map.remapClass(name);
     }
 
     public String mapParameterName(final String owner, final String methodName, final String methodDescriptor, final int index, final String paramName) {
-        return getClass(owner)
-            .flatMap(c -> c.getMethod(methodName, methodDescriptor))
-            .map(m -> m.mapParameter(index, paramName))
-            .orElse(paramName);
+        MClass.MMethod mtd = getMethod(owner, methodName, methodDescriptor);
+        return mtd == null ? paramName : mtd.mapParameter(index, paramName);
+    }
+
+    /**
+     * Resolves a method, so that callers which need it more than once, such as for every local variable of a method, only look it up once.
+     */
+    @Nullable
+    MClass.MMethod getMethod(final String owner, final String name, final String descriptor) {
+        MClass cls = getClass(owner);
+        return cls == null ? null : cls.getMethod(name, descriptor);
     }
 
-    private Optional<MClass> getClass(String cls) {
+    @Nullable
+    private MClass getClass(String cls) {
         if (cls == null || cls.charAt(0) == '[') // Enums values() function invokes 'clone' on the array type.
-            return Optional.empty();             // I'm pretty sure that i'd require stupid hacky JVM to allow native array methods to be remapped.
-        Optional<MClass> ret = resolved.get(cls);
-        if (ret == null) {
-            synchronized(cls.intern()) {
-                ret = resolved.get(cls);
-                if (ret == null) {
-                    ret = computeClass(cls);
-                    resolved.put(cls, ret);
+            return null;                         // I'm pretty sure that i'd require stupid hacky JVM to allow native array methods to be remapped.
+        return this.resolved.get(cls).orElse(null);
+    }
+
+    /**
+     * Resolves the given classes and all of their parents before any of them are transformed.
+     * <p>
+     * Resolving a class propagates method mappings into the methods of its parents, so when classes are resolved
+     * lazily the result depends on which thread gets to which class first. Instead the whole hierarchy is resolved
+     * level by level, parents before children. The classes in a level are read in parallel, as they can't depend on
+     * each other, and then linked in name order. Once done the resolved classes are frozen, so the classes that are
+     * still resolved lazily while transforming can no longer change their mappings.
+     */
+    void resolveHierarchy(Collection<String> classes, AsyncHelper async) {
+        // Build the type graph one generation at a time, reading each generation in parallel.
+        Map<String, Integer> depths = new HashMap<>();
+        Map<String, List<String>> graph = new HashMap<>();
+        List<String> frontier = classes.stream().distinct().sorted().collect(Collectors.toList());
+        while (!frontier.isEmpty()) {
+            List<List<String>> parents = async.invokeAll(frontier, Function.identity(), this::getParents);
+            Set<String> next = new TreeSet<>();
+            for (int x = 0; x < frontier.size(); x++)
+                graph.put(frontier.get(x), parents.get(x));
+            for (List<String> lst : parents) {
+                for (String parent : lst) {
+                    if (!graph.containsKey(parent))
+                        next.add(parent);
                 }
             }
+            frontier = new ArrayList<>(next);
+        }
+
+        Map<Integer, List<String>> levels = new TreeMap<>();
+        for (String cls : new TreeSet<>(graph.keySet()))
+            levels.computeIfAbsent(getDepth(cls, graph, depths), k -> new ArrayList<>()).add(cls);
+
+        List<MClass> linked = new ArrayList<>();
+        this.unlinked = new ConcurrentLinkedQueue<>();
+        try {
+            for (List<String> level : levels.values()) {
+                async.invokeAll(level, Function.identity(), this::getClass);
+                linkPending(linked);
+            }
+        } finally {
+            // Anything left over from a failure still has to be usable later
+            linkPending(linked);
+            this.unlinked = null;
         }
+
+        for (MClass cls : linked)
+            cls.frozen = true;
+    }
+
+    private List<String> getParents(String cls) {
+        IClassInfo info = this.getClassProvider().getClass(cls).orElse(null);
+        if (info == null)
+            return Collections.emptyList();
+        List<String> ret = new ArrayList<>();
+        if (info.getSuper() != null)
+            ret.add(info.getSuper());
+        ret.addAll(info.getInterfaces());
         return ret;
     }
 
+    private static int getDepth(String cls, Map<String, List<String>> graph, Map<String, Integer> depths) {
+        Integer ret = depths.get(cls);
+        if (ret != null)
+            return ret;
+
+        depths.put(cls, 0); // Guard against cyclic hierarchies
+        int depth = 0;
+        for (String parent : graph.getOrDefault(cls, Collections.emptyList()))
+            depth = Math.max(depth, getDepth(parent, graph, depths) + 1);
+        depths.put(cls, depth);
+        return depth;
+    }
+
+    private void linkPending(List<MClass> linked) {
+        List<MClass> pending = new ArrayList<>();
+        MClass cls;
+        while ((cls = this.unlinked.poll()) != null)
+            pending.add(cls);
+
+        pending.sort(Comparator.<MClass>comparingInt(c -> c.depth).thenComparing(MClass::getName));
+        for (MClass mcls : pending)
+            mcls.link();
+        linked.addAll(pending);
+    }
+
     private ClassProvider getClassProvider() {
         return this.classProvider;
     }
@@ -129,6 +238,17 @@ class EnhancedRemapper extends Remapper {
     }
 
     private Optional<MClass> computeClass(String cls) {
+        RunRecorder recorder = this.recorder;
+        if (recorder == null)
+            return lookupClass(cls);
+
+        long start = System.nanoTime();
+        Optional<MClass> ret = lookupClass(cls);
+        recorder.classResolved(cls, start);
+        return ret;
+    }
+
+    private Optional<MClass> lookupClass(String cls) {
         Optional<? extends IClassInfo> icls = this.getClassProvider().getClass(cls);
         IMappingFile.IClass mcls = this.map.getClass(cls);
         if (!icls.isPresent() && mcls == null)
@@ -136,16 +256,22 @@ class EnhancedRemapper extends Remapper {
         return Optional.of(new MClass(icls.orElse(null), mcls));
     }
 
-    private class MClass {
+    class MClass {
         private final IClassInfo icls;
         private final IMappingFile.IClass mcls;
         private final String mappedName;
         private final List<MClass> parents;
-        private final Map<String, Optional<MField>> fields = new ConcurrentHashMap<>();
-        private final Collection<Optional<MField>> fieldsView = Collections.unmodifiableCollection(fields.values());
-        private final Map<String, Optional<MMethod>> methods = new ConcurrentHashMap<>();
-        private final Collection<Optional<MMethod>> methodsView = Collections.unmodifiableCollection(methods.values());
-        private final Map<String, Optional<List<MMethod>>> methodsByName = new ConcurrentHashMap<>();
+        /** The length of the longest path to a root of the hierarchy, parents always have a lower depth than their children. */
+        private final int depth;
+        /** Set once the class was resolved by {@link #resolveHierarchy}, after which its method mappings no longer change. */
+        private boolean frozen = false;
+        /*
+         * Members are looked up by name, and then by descriptor among the few that share that name,
+         * so that lookups never have to build a name + descriptor key.
+         * Both maps are filled in by the constructor, and never modified once this class is published.
+         */
+        private final Map<String, MField[]> fields = new HashMap<>();
+        private final Map<String, MMethod[]> methods = new HashMap<>();
 
         MClass(IClassInfo icls, IMappingFile.IClass mcls) {
             if (icls == null && mcls == null)
@@ -157,139 +283,222 @@ class EnhancedRemapper extends Remapper {
 
             if (icls != null) {
                 List<MClass> parents = new ArrayList<>();
-                EnhancedRemapper.this.getClass(icls.getSuper()).ifPresent(parents::add);
-                icls.getInterfaces().stream().map(EnhancedRemapper.this::getClass).forEach(o -> o.ifPresent(parents::add));
+                MClass parent = EnhancedRemapper.this.getClass(icls.getSuper());
+                if (parent != null)
+                    parents.add(parent);
+                for (String intf : icls.getInterfaces()) {
+                    parent = EnhancedRemapper.this.getClass(intf);
+                    if (parent != null)
+                        parents.add(parent);
+                }
                 this.parents = Collections.unmodifiableList(parents);
 
-                icls.getFields().stream().map(f -> new MField(f, mcls == null ? null : mcls.getField(f.getName())))
-                    .forEach(f -> fields.put(f.getKey(), Optional.of(f)));
+                for (IFieldInfo f : icls.getFields())
+                    putField(new MField(f, mcls == null ? null : mcls.getField(f.getName())));
 
-                icls.getMethods().stream().map(m -> new MMethod(m, mcls == null ? null : mcls.getMethod(m.getName(), m.getDescriptor())))
-                    .forEach(m -> methods.put(m.getKey(), Optional.of(m)));
+                for (IMethodInfo m : icls.getMethods())
+                    putMethod(new MMethod(m, mcls == null ? null : mcls.getMethod(m.getName(), m.getDescriptor())));
             } else {
                 this.parents = Collections.emptyList();
-                mcls.getFields().stream().map(f -> new MField(null, f)).forEach(f -> fields.put(f.getKey(), Optional.of(f)));
-                mcls.getMethods().stream().map(m -> new MMethod(null, m)).forEach(m -> methods.put(m.getKey(), Optional.of(m)));
+                for (IMappingFile.IField f : mcls.getFields())
+                    putField(new MField(null, f));
+                for (IMappingFile.IMethod m : mcls.getMethods())
+                    putMethod(new MMethod(null, m));
             }
 
-            for (MClass parentCls : parents) {
-                for (Optional<MField> fldOpt : parentCls.getFields()) {
-                    if (!fldOpt.isPresent())
-                        continue;
-
-                    MField fld = fldOpt.get();
-                    Optional<MField> existing = this.fields.get(fld.getKey());
-                    if (existing == null || !existing.isPresent()) {
-                        /* There are some weird cases where a field will be referenced as if it were owned by the current class,
-                         * but it needs a field from the parent. So lets follow the linking spec and pull
-                         * down fields from parents.
-                         *
-                         * https://docs.oracle.com/javase/specs/jvms/se16/html/jvms-5.html#jvms-5.4.3.2
-                         */
-                        this.fields.put(fld.getKey(), fldOpt);
-                    } else {
-                        /* Is there any case where we would ever override an existing field?
-                         * We don't inherit renames like we do with methods.
-                         * This loop is just to populate the parent field lists so we can
-                         * have a cache. Trading memory for faster lookups.
-                         *
-                         * We could nuke this all, and move this code to the getter
-                         */
+            int depth = 0;
+            for (MClass parentCls : this.parents)
+                depth = Math.max(depth, parentCls.depth + 1);
+            this.depth = depth;
+
+            Queue<MClass> unlinked = EnhancedRemapper.this.unlinked;
+            if (unlinked != null)
+                unlinked.add(this);
+            else
+                link();
+        }
+
+        /**
+         * Pulls in the members of the parents, and propagates method mappings between them.
+         * This must only be called once every parent has been linked.
+         */
+        private void link() {
+            for (MClass parentCls : this.parents) {
+                for (MField[] flds : parentCls.fields.values()) {
+                    for (MField fld : flds) {
+                        MField existing = findField(fld.getName(), fld.getDescriptor());
+                        if (existing == null) {
+                            /* There are some weird cases where a field will be referenced as if it were owned by the current class,
+                             * but it needs a field from the parent. So lets follow the linking spec and pull
+                             * down fields from parents.
+                             *
+                             * https://docs.oracle.com/javase/specs/jvms/se16/html/jvms-5.html#jvms-5.4.3.2
+                             */
+                            putField(fld);
+                        } else {
+                            /* Is there any case where we would ever override an existing field?
+                             * We don't inherit renames like we do with methods.
+                             * This loop is just to populate the parent field lists so we can
+                             * have a cache. Trading memory for faster lookups.
+                             *
+                             * We could nuke this all, and move this code to the getter
+                             */
+                        }
                     }
                 }
 
-                for (Optional<MMethod> mtdOpt : parentCls.getMethods()) {
-                    if (!mtdOpt.isPresent())
-                        continue;
-
-                    MMethod mtd = mtdOpt.get();
-                    /* https://docs.oracle.com/javase/specs/jvms/se16/html/jvms-5.html#jvms-5.4.3.3
-                     * According to the spec, it does not check access on super classes, but it checks
-                     * on interfaces if it is not ACC_PRIVATE or ACC_STATIC.
-                     *
-                     * Here are some examples:
-                     *   class A {
-                     *     static void foo(){}
-                     *   }
-                     *   class B extends A {
-                     *     static void test(){
-                     *       foo();   // Compiles to invokestatic B.foo()Z resolved at runtime to A.foo()Z
-                     *       A.foo(); // Compiles to invokestatic A.foo()Z
-                     *   }
-                     *----------------------------------------------------
-                     *   interface A {
-                     *     static void foo(){}
-                     *   }
-                     *   class B extends A {
-                     *     static void test(){
-                     *       foo();   // Compiles error
-                     *       A.foo(); // Compiles to invokestatic A.foo()Z
-                     *   }
-                     *----------------------------------------------------
-                     */
-                    if (parentCls.isInterface() && !mtd.isInterfaceInheritable())
-                        continue;
-
-
-                    Optional<MMethod> existingOpt = this.methods.get(mtd.getKey());
-                    if (existingOpt == null || !existingOpt.isPresent()) {
-                        /* If there is none existing, then we pull in what we have found from the parents.
-                         * This intentionally uses the same object as the parents so that if we have weird edge
-                         * cases, we can migrate the mapping transitively.
-                         */
-                        this.methods.put(mtd.getKey(), mtdOpt);
-                    } else {
-                        /* If the method exists, lets check if there is a mapping entry in the parent.
-                         * If there is, and our current one doesn't have a map entry directly, then
-                         * propagate the mapping.
-                         *
-                         * This should allow weird interactions, such as a parent method satisfying a
-                         * interface's method. And that interface's method having a mapping.
-                         * ---------------------------------------------------
-                         *   This SHOULD work, because we would get A.foo() without mapping
-                         *   Then get B.foo() WITH mapping, and set the forced name to the mapping.
+                for (MMethod[] mtds : parentCls.methods.values()) {
+                    for (MMethod mtd : mtds) {
+                        /* https://docs.oracle.com/javase/specs/jvms/se16/html/jvms-5.html#jvms-5.4.3.3
+                         * According to the spec, it does not check access on super classes, but it checks
+                         * on interfaces if it is not ACC_PRIVATE or ACC_STATIC.
                          *
+                         * Here are some examples:
                          *   class A {
-                         *     void foo(){}
+                         *     static void foo(){}
                          *   }
-                         *   interface B {
-                         *     void foo(){}
+                         *   class B extends A {
+                         *     static void test(){
+                         *       foo();   // Compiles to invokestatic B.foo()Z resolved at runtime to A.foo()Z
+                         *       A.foo(); // Compiles to invokestatic A.foo()Z
                          *   }
-                         *   class C extends A implements B {}
-                         *   MD: B/foo()V B/bar()V
-                         */
-                        MMethod existing = existingOpt.get();
-                        if (!existing.hasMapping() && !existing.getName().equals(mtd.getMapped())) {
-                            if (!existing.getMapped().equals(mtd.getMapped()))
-                                log.accept("Conflicting propagated mapping for " + existing + " from " + mtd + ": " + existing.getMapped() + " -> " + mtd.getMapped());
-                            existing.setMapped(mtd.getMapped());
-                        }
-                        /*
-                         * Tho, there is one case I can think of that would be weird.
-                         * I need to test.
-                         * But something like this might break:
-                         *   class A {
-                         *     void foo(){}
+                         *----------------------------------------------------
+                         *   interface A {
+                         *     static void foo(){}
                          *   }
-                         *   interface B {
-                         *     void foo(){}
+                         *   class B extends A {
+                         *     static void test(){
+                         *       foo();   // Compiles error
+                         *       A.foo(); // Compiles to invokestatic A.foo()Z
                          *   }
-                         *   class C extends A implements B {}
-                         *   MD: A/foo()V A/bar()V
-                         *
-                         *   I think this may break because we would most likely want to propagate
-                         *   the mapping to the interface.
+                         *----------------------------------------------------
                          */
-                        else if (!mtd.hasMapping() && !mtd.getName().equals(existing.getMapped())) {
-                            if (!mtd.getMapped().equals(existing.getMapped()))
-                                log.accept("Conflicting propagated mapping for " + mtd + " from " + existing + ": " + mtd.getMapped() + " -> " + existing.getMapped());
-                            mtd.setMapped(existing.getMapped());
+                        if (parentCls.isInterface() && !mtd.isInterfaceInheritable())
+                            continue;
+
+                        MMethod existing = findMethod(mtd.getName(), mtd.getDescriptor());
+                        if (existing == null) {
+                            /* If there is none existing, then we pull in what we have found from the parents.
+                             * This intentionally uses the same object as the parents so that if we have weird edge
+                             * cases, we can migrate the mapping transitively.
+                             */
+                            putMethod(mtd);
+                        } else {
+                            /* If the method exists, lets check if there is a mapping entry in the parent.
+                             * If there is, and our current one doesn't have a map entry directly, then
+                             * propagate the mapping.
+                             *
+                             * This should allow weird interactions, such as a parent method satisfying a
+                             * interface's method. And that interface's method having a mapping.
+                             * ---------------------------------------------------
+                             *   This SHOULD work, because we would get A.foo() without mapping
+                             *   Then get B.foo() WITH mapping, and set the forced name to the mapping.
+                             *
+                             *   class A {
+                             *     void foo(){}
+                             *   }
+                             *   interface B {
+                             *     void foo(){}
+                             *   }
+                             *   class C extends A implements B {}
+                             *   MD: B/foo()V B/bar()V
+                             */
+                            if (!existing.hasMapping() && !existing.isFrozen() && !existing.getName().equals(mtd.getMapped())) {
+                                if (!existing.getMapped().equals(mtd.getMapped()))
+                                    log.log(Logger.Level.WARN, () -> "Conflicting propagated mapping for " + existing + " from " + mtd + ": " + existing.getMapped() + " -> " + mtd.getMapped());
+                                existing.setMapped(mtd.getMapped());
+                            }
+                            /*
+                             * Tho, there is one case I can think of that would be weird.
+                             * I need to test.
+                             * But something like this might break:
+                             *   class A {
+                             *     void foo(){}
+                             *   }
+                             *   interface B {
+                             *     void foo(){}
+                             *   }
+                             *   class C extends A implements B {}
+                             *   MD: A/foo()V A/bar()V
+                             *
+                             *   I think this may break because we would most likely want to propagate
+                             *   the mapping to the interface.
+                             */
+                            else if (!mtd.hasMapping() && !mtd.isFrozen() && !mtd.getName().equals(existing.getMapped())) {
+                                if (!mtd.getMapped().equals(existing.getMapped()))
+                                    log.log(Logger.Level.WARN, () -> "Conflicting propagated mapping for " + mtd + " from " + existing + ": " + mtd.getMapped() + " -> " + existing.getMapped());
+                                mtd.setMapped(existing.getMapped());
+                            }
                         }
                     }
                 }
             }
         }
 
+        /**
+         * Adds a member, replacing any existing one with the same name and descriptor.
+         */
+        private void putField(MField fld) {
+            MField[] flds = this.fields.get(fld.getName());
+            if (flds == null) {
+                this.fields.put(fld.getName(), new MField[] { fld });
+                return;
+            }
+            for (int x = 0; x < flds.length; x++) {
+                if (Objects.equals(flds[x].getDescriptor(), fld.getDescriptor())) {
+                    flds[x] = fld;
+                    return;
+                }
+            }
+            flds = Arrays.copyOf(flds, flds.length + 1);
+            flds[flds.length - 1] = fld;
+            this.fields.put(fld.getName(), flds);
+        }
+
+        private void putMethod(MMethod mtd) {
+            MMethod[] mtds = this.methods.get(mtd.getName());
+            if (mtds == null) {
+                this.methods.put(mtd.getName(), new MMethod[] { mtd });
+                return;
+            }
+            for (int x = 0; x < mtds.length; x++) {
+                if (mtds[x].getDescriptor().equals(mtd.getDescriptor())) {
+                    mtds[x] = mtd;
+                    return;
+                }
+            }
+            mtds = Arrays.copyOf(mtds, mtds.length + 1);
+            mtds[mtds.length - 1] = mtd;
+            this.methods.put(mtd.getName(), mtds);
+        }
+
+        /**
+         * Finds the field with exactly this descriptor, which may be null for fields that only exist in the mappings.
+         */
+        @Nullable
+        private MField findField(String name, @Nullable String desc) {
+            MField[] flds = this.fields.get(name);
+            if (flds != null) {
+                for (MField fld : flds) {
+                    if (Objects.equals(fld.getDescriptor(), desc))
+                        return fld;
+                }
+            }
+            return null;
+        }
+
+        @Nullable
+        private MMethod findMethod(String name, String desc) {
+            MMethod[] mtds = this.methods.get(name);
+            if (mtds != null) {
+                for (MMethod mtd : mtds) {
+                    if (mtd.getDescriptor().equals(desc))
+                        return mtd;
+                }
+            }
+            return null;
+        }
+
         public String getName() {
             return this.icls != null ? this.icls.getName() : this.mcls.getOriginal();
         }
@@ -308,42 +517,26 @@ class EnhancedRemapper extends Remapper {
             return (getAccess() & ACC_INTERFACE) != 0;
         }
 
-        public Collection<Optional<MField>> getFields() {
-            return this.fieldsView;
+        /**
+         * Finds a field, falling back to the field of that name without a descriptor if there is no exact match.
+         */
+        @Nullable
+        public MField getField(String name, @Nullable String desc) {
+            MField ret = desc == null ? null : findField(name, desc);
+            return ret != null ? ret : findField(name, null);
         }
 
-        public Optional<MField> getField(String name, @Nullable String desc) {
-            if (desc == null) {
-                return this.fields.computeIfAbsent(name, k -> Optional.empty());
-            } else {
-                Optional<MField> ret = this.fields.get(name + desc);
-                if (ret == null) {
-                    ret = getField(name, null);
-                    this.fields.put(name + desc, ret);
-                }
-                return ret;
-            }
-        }
-
-        public Collection<Optional<MMethod>> getMethods() {
-            return this.methodsView;
-        }
-
-        public Optional<MMethod> getMethod(String name, String desc) {
-            return this.methods.computeIfAbsent(name + desc, k -> Optional.empty());
+        @Nullable
+        public MMethod getMethod(String name, String desc) {
+            return findMethod(name, desc);
         }
 
-        Optional<List<MMethod>> getMethods(String name) {
-            return this.methodsByName.computeIfAbsent(name, k -> {
-                List<MMethod> mtds = new ArrayList<>();
-                for (Optional<MMethod> opt : this.getMethods()) {
-                    MMethod mtd = opt.orElse(null);
-                    if (mtd == null || !k.equals(mtd.getName()))
-                        continue;
-                    mtds.add(mtd);
-                }
-                return mtds.isEmpty() ? Optional.<List<MMethod>>empty() : Optional.of(mtds);
-            });
+        /**
+         * Returns every method with this name, or {@code null} if there are none. The returned array must not be modified.
+         */
+        @Nullable
+        MMethod[] getMethods(String name) {
+            return this.methods.get(name);
         }
 
         @Override
@@ -355,13 +548,11 @@ class EnhancedRemapper extends Remapper {
             private final IFieldInfo ifld;
             private final IMappingFile.IField mfld;
             private final String mappedName;
-            private final String key;
 
             MField(IFieldInfo ifld, IMappingFile.IField mfld) {
                 this.ifld = ifld;
                 this.mfld = mfld;
                 this.mappedName = mfld == null ? ifld.getName() : mfld.getMapped();
-                this.key = getDescriptor() == null ? getName() : getName() + getDescriptor();
             }
 
             public String getName() {
@@ -376,10 +567,6 @@ class EnhancedRemapper extends Remapper {
                 return this.mappedName;
             }
 
-            public String getKey() {
-                return this.key;
-            }
-
             @Override
             public String toString() {
                 return MClass.this.getName() + '/' + getName() + ' ' + getDescriptor();
@@ -391,7 +578,6 @@ class EnhancedRemapper extends Remapper {
             private final IMappingFile.IMethod mmtd;
             private String mappedName;
             private final String[] params;
-            private final String key;
 
             MMethod(IMethodInfo imtd, IMappingFile.IMethod mmtd) {
                 this.imtd = imtd;
@@ -413,7 +599,6 @@ class EnhancedRemapper extends Remapper {
                 } else {
                     this.params = null;
                 }
-                this.key = getName() + getDescriptor();
             }
 
             public String getName() {
@@ -428,8 +613,11 @@ class EnhancedRemapper extends Remapper {
                 return mappedName == null ? mmtd == null ? getName() : mmtd.getMapped() : mappedName;
             }
 
-            public String getKey() {
-                return this.key;
+            /**
+             * Returns {@code true} if the owner was resolved ahead of time, so later classes may not propagate into this method anymore.
+             */
+            public boolean isFrozen() {
+                return MClass.this.frozen;
             }
 
             public void setMapped(String name) {
@@ -451,7 +639,10 @@ class EnhancedRemapper extends Remapper {
             }
 
             public String mapParameter(int index, String name) {
-                return this.params != null && index >= 0 && index < this.params.length ? this.params[index] : name;
+                if (this.params == null || index < 0 || index >= this.params.length)
+                    return name;
+                String mapped = this.params[index];
+                return mapped == null ? name : mapped;
             }
 
             @Override
@@ -4,17 +4,56 @@
  */
 package net.minecraftforge.fart.internal;
 
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+import org.jetbrains.annotations.Nullable;
+
 import net.minecraftforge.fart.api.Transformer;
+import net.minecraftforge.fart.api.Transformer.Entry.StreamSupplier;
 
 public abstract class EntryImpl implements Transformer.Entry {
     private final String name;
     private final long time;
+    @Nullable
     private final byte[] data;
+    @Nullable
+    private final ByteBuffer buffer;
+    @Nullable
+    private final StreamSupplier source;
+    private final long size;
 
     protected EntryImpl(String name, long time, byte[] data) {
         this.name = name;
         this.time = time;
         this.data = data;
+        this.buffer = null;
+        this.source = null;
+        this.size = data.length;
+    }
+
+    protected EntryImpl(String name, long time, ByteBuffer data) {
+        this.name = name;
+        this.time = time;
+        this.data = null;
+        this.buffer = data.slice().asReadOnlyBuffer();
+        this.source = null;
+        this.size = this.buffer.remaining();
+    }
+
+    protected EntryImpl(String name, long time, long size, StreamSupplier source) {
+        if (size < 0)
+            throw new IllegalArgumentException("Invalid size for " + name + ": " + size);
+        this.name = name;
+        this.time = time;
+        this.data = null;
+        this.buffer = null;
+        this.source = source;
+        this.size = size;
     }
 
     @Override
@@ -29,7 +68,56 @@ public abstract class EntryImpl implements Transformer.Entry {
 
     @Override
     public byte[] getData() {
-        return this.data;
+        if (this.data != null)
+            return this.data;
+
+        // Not kept, the whole point of buffer and stream backed entries is to keep their data off the heap
+        if (this.buffer != null) {
+            byte[] ret = new byte[this.buffer.remaining()];
+            this.buffer.duplicate().get(ret);
+            return ret;
+        }
+
+        if (this.size > Integer.MAX_VALUE - 8)
+            throw new IllegalStateException("Entry too large to hold in memory, use openStream instead: " + this.name);
+        try (InputStream in = this.source.open()) {
+            return readFully(in, (int)this.size);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read entry: " + this.name, e);
+        }
+    }
+
+    private byte[] readFully(InputStream in, int size) throws IOException {
+        byte[] ret = new byte[size];
+        int len = 0;
+        while (len < size) {
+            int read = in.read(ret, len, size - len);
+            if (read < 0)
+                throw new EOFException("Expected " + size + " bytes but got " + len + " for " + this.name);
+            len += read;
+        }
+        return ret;
+    }
+
+    @Override
+    public ByteBuffer getDataBuffer() {
+        if (this.buffer != null)
+            return this.buffer.duplicate();
+        return ByteBuffer.wrap(getData()).asReadOnlyBuffer();
+    }
+
+    @Override
+    public long size() {
+        return this.size;
+    }
+
+    @Override
+    public InputStream openStream() throws IOException {
+        if (this.source != null)
+            return this.source.open();
+        if (this.buffer != null)
+            return new BufferInputStream(this.buffer.duplicate());
+        return new ByteArrayInputStream(this.data);
     }
 
     public static class ClassEntry extends EntryImpl implements Transformer.ClassEntry {
@@ -45,11 +133,23 @@ public abstract class EntryImpl implements Transformer.Entry {
                 if (idx == -1)
                     throw new IllegalArgumentException("Invalid versioned class entry: " + name);
                 release = Integer.parseInt(name.substring(start, idx));
-                name = name.substring(idx + 1);
             } else {
                 release = -1;
             }
-            className = name.substring(0, name.length() - 6);
+            className = getClassName(name);
+        }
+
+        /**
+         * Returns the internal name of the class stored in the entry with the given name,
+         * without the version folder of multi-release classes.
+         */
+        public static String getClassName(String name) {
+            if (name.startsWith(VERSION_PREFIX)) {
+                int idx = name.indexOf('/', VERSION_PREFIX.length());
+                if (idx != -1)
+                    name = name.substring(idx + 1);
+            }
+            return name.substring(0, name.length() - 6);
         }
 
         @Override
@@ -78,6 +178,14 @@ public abstract class EntryImpl implements Transformer.Entry {
             super(name, time, data);
         }
 
+        public ResourceEntry(String name, long time, ByteBuffer data) {
+            super(name, time, data);
+        }
+
+        public ResourceEntry(String name, long time, long size, StreamSupplier source) {
+            super(name, time, size, source);
+        }
+
         @Override
         public Transformer.ResourceEntry process(Transformer transformer) {
             return transformer.process(this);
@@ -94,4 +202,33 @@ public abstract class EntryImpl implements Transformer.Entry {
             return transformer.process(this);
         }
     }
+
+    private static class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return this.buffer.hasRemaining() ? this.buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+            if (!this.buffer.hasRemaining())
+                return -1;
+            len = Math.min(len, this.buffer.remaining());
+            this.buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return this.buffer.remaining();
+        }
+    }
 }
@@ -16,17 +16,21 @@ import java.util.function.Consumer;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
-import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
-import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
-import net.minecraftforge.fart.api.Transformer;
+import net.minecraftforge.fart.api.ClassVisitorTransformer;
+import net.minecraftforge.fart.api.Logger;
 
-public final class FFLineFixer implements Transformer {
+public final class FFLineFixer implements ClassVisitorTransformer {
     private final Map<String, NavigableMap<Integer, Integer>> classes = new HashMap<>();
+    private final Interest interest = Interest.classes(name -> this.classes.containsKey(getOwner(name)));
 
     public FFLineFixer(Consumer<String> debug, File data) {
+        this(Logger.of(line -> {}, debug), data);
+    }
+
+    public FFLineFixer(Logger log, File data) {
         try (FileInputStream fis = new FileInputStream(data);
             ZipInputStream zip = new ZipInputStream(fis)) {
             ZipEntry entry = null;
@@ -43,7 +47,7 @@ public final class FFLineFixer implements Transformer {
                     short len = buf.getShort();
                     if (id == 0x4646) { //FF
                         String cls = entry.getName().substring(0, entry.getName().length() - 5);
-                        debug.accept("Lines: " + cls);
+                        log.debug(() -> "Lines: " + cls);
                         int ver = buf.get();
                         if (ver != 1)
                             throw new IllegalStateException("Invalid FF code line version for " + entry.getName());
@@ -52,7 +56,7 @@ public final class FFLineFixer implements Transformer {
                         for (int x = 0; x < count; x++) {
                             int oline = buf.getShort();
                             int nline = buf.getShort();
-                            debug.accept("  " + oline + ' ' + nline);
+                            log.debug(() -> "  " + oline + ' ' + nline);
                             lines.put(oline, nline);
                         }
                         classes.put(cls, lines);
@@ -67,26 +71,34 @@ public final class FFLineFixer implements Transformer {
     }
 
     @Override
-    public ClassEntry process(ClassEntry entry) {
-        String owner = entry.getClassName();
-        int idx = owner.indexOf('$');
-        if (idx != -1)
-            owner = owner.substring(0, idx);
+    public Interest getInterest() {
+        return this.interest;
+    }
 
-        NavigableMap<Integer, Integer> lines = classes.get(owner);
-        if (lines == null)
-            return entry;
+    private static String getOwner(String className) {
+        int idx = className.indexOf('$');
+        return idx == -1 ? className : className.substring(0, idx);
+    }
 
-        ClassReader reader = new ClassReader(entry.getData());
-        ClassWriter writer = new ClassWriter(reader, 0);
-        Fixer fixer = new Fixer(writer, lines);
+    @Override
+    public Pass begin(ClassEntry entry, String className) {
+        NavigableMap<Integer, Integer> lines = classes.get(getOwner(className));
+        if (lines == null)
+            return null;
 
-        reader.accept(fixer, 0);
+        return new Pass() {
+            private Fixer fixer;
 
-        if (!fixer.madeChange())
-            return entry;
+            @Override
+            public ClassVisitor visitor(ClassVisitor parent) {
+                return this.fixer = new Fixer(parent, lines);
+            }
 
-        return ClassEntry.create(entry.getName(), entry.getTime(), writer.toByteArray());
+            @Override
+            public boolean madeChange() {
+                return this.fixer.madeChange();
+            }
+        };
     }
 
     private static class Fixer extends ClassVisitor {
@@ -14,7 +14,8 @@ import org.objectweb.asm.MethodVisitor;
 
 public final class IdentifierFixer extends OptionalChangeTransformer {
     public IdentifierFixer(IdentifierFixerConfig config) {
-        super(parent -> new Fixer(config, parent));
+        // Only local variable names are fixed, and those only exist in the LocalVariableTable
+        super(parent -> new Fixer(config, parent), reader -> hasConstant(reader, "LocalVariableTable"));
     }
 
     private static class Fixer extends ClassFixer {
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.fart.internal;
+
+import java.nio.file.Path;
+
+import org.jetbrains.annotations.Nullable;
+
+import net.minecraftforge.fart.api.RunStats.Phase;
+import net.minecraftforge.fart.api.Transformer;
+import net.minecraftforge.fart.api.Transformer.Entry;
+
+/**
+ * Java Flight Recorder events, so that a recording shows what the renamer is doing next to GC and I/O.
+ * <p>
+ * The events themselves need Java 11, so they live in their own source set, and are only loaded when the JVM has
+ * JFR. Otherwise this does nothing. Each begin method returns the event to pass to the matching end method, or
+ * {@code null} if the event isn't enabled in the current recording, so disabled events cost next to nothing.
+ */
+class Jfr {
+    static final Jfr INSTANCE = load();
+
+    private static Jfr load() {
+        try {
+            Class.forName("jdk.jfr.Event", false, Jfr.class.getClassLoader());
+            return (Jfr)Class.forName("net.minecraftforge.fart.internal.JfrEvents").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // No JFR, or we're running from a build without the events
+            return new Jfr();
+        }
+    }
+
+    @Nullable
+    Object beginPhase() {
+        return null;
+    }
+
+    void endPhase(@Nullable Object event, Path input, Phase phase) {}
+
+    /**
+     * Only recorded when the transformer takes longer than the threshold set in the recording's settings.
+     */
+    @Nullable
+    Object beginTransform() {
+        return null;
+    }
+
+    void endTransform(@Nullable Object event, Transformer transformer, Entry input, @Nullable Entry output) {}
+
+    /**
+     * Class lookups that weren't in the cache, and had to search the class providers.
+     */
+    @Nullable
+    Object beginClassLookup() {
+        return null;
+    }
+
+    void endClassLookup(@Nullable Object event, String name, boolean found) {}
+
+    /**
+     * Opening a library, or creating its index.
+     */
+    @Nullable
+    Object beginLibrary() {
+        return null;
+    }
+
+    void endLibrary(@Nullable Object event, Path path, String operation, int classes) {}
+}
@@ -0,0 +1,412 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.fart.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+
+import net.minecraftforge.fart.api.ClassProvider.IClassInfo;
+import net.minecraftforge.fart.api.ClassProvider.IFieldInfo;
+import net.minecraftforge.fart.api.ClassProvider.IMethodInfo;
+
+/**
+ * An on disk index of the classes in a library jar, holding everything an {@link IClassInfo} needs so that
+ * libraries don't have to be scanned and parsed again every time they are used.
+ * <p>
+ * Each library gets its own index file, named after a hash of its absolute path, and the index is rebuilt
+ * whenever the size or modification time of the library changes. The index is memory mapped and searched in place,
+ * only the classes that are actually asked for are ever decoded.
+ * <p>
+ * The layout is, with all numbers big endian:
+ * <pre>
+ * int      magic, version
+ * long     length of the index file
+ * long     size of the library
+ * long     modification time of the library
+ * string   absolute path of the library
+ * int      class count
+ * int[]    position of each class, sorted by the UTF-8 bytes of the entry name
+ * classes:
+ *   string   entry name, without .class
+ *   string   class name, empty if the same as the entry name
+ *   int      access
+ *   string   super name, empty if there is none
+ *   ushort   interface count, string[] interfaces
+ *   ushort   field count, (string name, string descriptor, int access)[]
+ *   ushort   method count, (string name, string descriptor, int access)[]
+ * </pre>
+ * Strings are an unsigned short byte length followed by UTF-8 bytes. Anything that fits in a class file fits in that.
+ */
+class LibraryIndex implements ClassProviderImpl.Library {
+    private static final int MAGIC = 0x46415254; // FART
+    private static final int VERSION = 1;
+
+    private final Path library;
+    private final ByteBuffer buf;
+    private final int count;
+    private final int table;
+
+    private LibraryIndex(Path library, ByteBuffer buf, int count, int table) {
+        this.library = library;
+        this.buf = buf;
+        this.count = count;
+        this.table = table;
+    }
+
+    /**
+     * Loads the index of a library jar from the cache directory, creating or refreshing it if needed.
+     */
+    static LibraryIndex load(Path library, Path cache) throws IOException {
+        Path path = library.toAbsolutePath().normalize();
+        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        long size = attrs.size();
+        long time = attrs.lastModifiedTime().toMillis();
+        Path file = cache.resolve(HashFunction.SHA1.hash(path.toString()) + ".idx");
+
+        if (Files.isRegularFile(file)) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                LibraryIndex ret = open(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), size, time);
+                if (ret != null)
+                    return ret;
+            } catch (IOException | RuntimeException e) {
+                // Unreadable or half written by something else, just rebuild it
+            }
+        }
+
+        Object event = Jfr.INSTANCE.beginLibrary();
+        byte[] data = create(path, size, time);
+        write(file, data);
+        LibraryIndex ret = open(path, ByteBuffer.wrap(data), size, time);
+        Jfr.INSTANCE.endLibrary(event, path, "index", ret.count);
+        return ret;
+    }
+
+    @Nullable
+    private static LibraryIndex open(Path path, ByteBuffer buf, long size, long time) {
+        if (buf.capacity() < 32 || buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION || buf.getLong(8) != buf.capacity() ||
+            buf.getLong(16) != size || buf.getLong(24) != time)
+            return null;
+
+        ByteBuffer in = buf.duplicate();
+        in.position(32);
+        if (!path.toString().equals(readString(in)))
+            return null;
+
+        int count = in.getInt();
+        return new LibraryIndex(path, buf, count, in.position());
+    }
+
+    private static byte[] create(Path path, long size, long time) throws IOException {
+        // Sorted the same way lookups compare, the first class of a given name wins just like it would on a class path
+        TreeMap<byte[], ZipReader.Record> classes = new TreeMap<>(LibraryIndex::compare);
+        try (ZipReader zip = ZipReader.open(path)) {
+            for (ZipReader.Record record : zip.getRecords()) {
+                String name = record.getName();
+                if (!record.isDirectory() && name.endsWith(".class") && !name.startsWith("META-INF"))
+                    classes.putIfAbsent(name.substring(0, name.length() - 6).getBytes(StandardCharsets.UTF_8), record);
+            }
+
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(body);
+            int[] positions = new int[classes.size()];
+            int idx = 0;
+            for (Map.Entry<byte[], ZipReader.Record> entry : classes.entrySet()) {
+                positions[idx++] = out.size();
+                writeClass(out, new String(entry.getKey(), StandardCharsets.UTF_8), zip.read(entry.getValue()));
+            }
+            out.flush();
+
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            DataOutputStream hdr = new DataOutputStream(header);
+            hdr.writeInt(MAGIC);
+            hdr.writeInt(VERSION);
+            hdr.writeLong(0); // Filled in once we know it
+            hdr.writeLong(size);
+            hdr.writeLong(time);
+            writeString(hdr, path.toString());
+            hdr.writeInt(positions.length);
+            int start = hdr.size() + positions.length * 4;
+            for (int pos : positions)
+                hdr.writeInt(start + pos);
+            body.writeTo(hdr);
+            hdr.flush();
+
+            ByteBuffer ret = ByteBuffer.wrap(header.toByteArray());
+            ret.putLong(8, ret.capacity());
+            return ret.array();
+        }
+    }
+
+    private static void writeClass(DataOutputStream out, String key, byte[] data) throws IOException {
+        ClassReader reader = new ClassReader(data);
+        MemberWriter members = new MemberWriter();
+        reader.accept(members, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+        String name = reader.getClassName();
+        String superName = reader.getSuperName();
+        String[] interfaces = reader.getInterfaces();
+
+        writeString(out, key);
+        writeString(out, key.equals(name) ? "" : name);
+        out.writeInt(members.access);
+        writeString(out, superName == null ? "" : superName);
+        out.writeShort(interfaces.length);
+        for (String intf : interfaces)
+            writeString(out, intf);
+        out.writeShort(members.fieldCount);
+        members.fields.writeTo(out);
+        out.writeShort(members.methodCount);
+        members.methods.writeTo(out);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] data = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(data.length);
+        out.write(data);
+    }
+
+    private static void write(Path file, byte[] data) {
+        try {
+            Files.createDirectories(file.getParent());
+            // Write somewhere else first so that nobody ever maps a half written index
+            Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try {
+                Files.write(tmp, data);
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException e) {
+            // The index is only a cache, what we just built is still perfectly usable for this run
+        }
+    }
+
+    private static class MemberWriter extends ClassVisitor {
+        private final ByteArrayOutputStream fields = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream methods = new ByteArrayOutputStream();
+        private int fieldCount = 0;
+        private int methodCount = 0;
+        private int access;
+
+        private MemberWriter() {
+            super(RenamerImpl.MAX_ASM_VERSION);
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            // Not ClassReader.getAccess, this includes the same pseudo flags as ClassNode.access
+            this.access = access;
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+            write(this.fields, access, name, descriptor);
+            this.fieldCount++;
+            return null;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+            write(this.methods, access, name, descriptor);
+            this.methodCount++;
+            return null;
+        }
+
+        private static void write(ByteArrayOutputStream buf, int access, String name, String descriptor) {
+            try {
+                DataOutputStream out = new DataOutputStream(buf);
+                writeString(out, name);
+                writeString(out, descriptor);
+                out.writeInt(access);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); // Never happens, it's all in memory
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return this.count;
+    }
+
+    @Override
+    @Nullable
+    public IClassInfo getClass(String name) {
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = this.count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int pos = this.buf.getInt(this.table + mid * 4);
+            int cmp = compare(pos, key);
+            if (cmp < 0)
+                low = mid + 1;
+            else if (cmp > 0)
+                high = mid - 1;
+            else
+                return new IndexedClassInfo(pos);
+        }
+        return null;
+    }
+
+    // Compares the string stored at pos against the key without decoding it
+    private int compare(int pos, byte[] key) {
+        int len = this.buf.getShort(pos) & 0xFFFF;
+        pos += 2;
+        for (int x = 0; x < len && x < key.length; x++) {
+            int cmp = (this.buf.get(pos + x) & 0xFF) - (key[x] & 0xFF);
+            if (cmp != 0)
+                return cmp;
+        }
+        return len - key.length;
+    }
+
+    private static int compare(byte[] a, byte[] b) {
+        for (int x = 0; x < a.length && x < b.length; x++) {
+            int cmp = (a[x] & 0xFF) - (b[x] & 0xFF);
+            if (cmp != 0)
+                return cmp;
+        }
+        return a.length - b.length;
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] data = new byte[in.getShort() & 0xFFFF];
+        in.get(data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return "LibraryIndex[" + this.library + ']';
+    }
+
+    private class IndexedClassInfo implements IClassInfo {
+        private final String name;
+        private final int access;
+        @Nullable
+        private final String superName;
+        private final List<String> interfaces;
+        private final int members;
+        private MemberTable fields;
+        private MemberTable methods;
+
+        private IndexedClassInfo(int pos) {
+            ByteBuffer in = LibraryIndex.this.buf.duplicate();
+            in.position(pos);
+            String key = readString(in);
+            String name = readString(in);
+            this.name = name.isEmpty() ? key : name;
+            this.access = in.getInt();
+            String superName = readString(in);
+            this.superName = superName.isEmpty() ? null : superName;
+
+            int count = in.getShort() & 0xFFFF;
+            if (count == 0) {
+                this.interfaces = Collections.emptyList();
+            } else {
+                List<String> interfaces = new ArrayList<>(count);
+                for (int x = 0; x < count; x++)
+                    interfaces.add(readString(in));
+                this.interfaces = Collections.unmodifiableList(interfaces);
+            }
+            this.members = in.position();
+        }
+
+        // Members are only decoded when someone asks for them, most library classes are only ever needed for their hierarchy
+        private synchronized void readMembers() {
+            if (this.methods != null)
+                return;
+
+            ByteBuffer in = LibraryIndex.this.buf.duplicate();
+            in.position(this.members);
+            this.fields = readMembers(in, false);
+            this.methods = readMembers(in, true);
+        }
+
+        private MemberTable readMembers(ByteBuffer in, boolean methods) {
+            MemberTable ret = new MemberTable(this.name, methods);
+            for (int x = in.getShort() & 0xFFFF; x > 0; x--) {
+                String name = readString(in);
+                String desc = readString(in);
+                ret.add(in.getInt(), name, desc);
+            }
+            return ret.trim();
+        }
+
+        @Override
+        public String getName() {
+            return this.name;
+        }
+
+        @Override
+        public int getAccess() {
+            return this.access;
+        }
+
+        @Nullable
+        @Override
+        public String getSuper() {
+            return this.superName;
+        }
+
+        @Override
+        public Collection<String> getInterfaces() {
+            return this.interfaces;
+        }
+
+        @Override
+        public Collection<? extends IFieldInfo> getFields() {
+            readMembers();
+            return this.fields.getAll();
+        }
+
+        @Override
+        public Optional<? extends IFieldInfo> getField(String name) {
+            readMembers();
+            return Optional.ofNullable(this.fields.find(name));
+        }
+
+        @Override
+        public Collection<? extends IMethodInfo> getMethods() {
+            readMembers();
+            return this.methods.getAll();
+        }
+
+        @Override
+        public Optional<? extends IMethodInfo> getMethod(String name, String desc) {
+            readMembers();
+            return Optional.ofNullable(this.methods.find(name, desc));
+        }
+
+        @Override
+        public String toString() {
+            return new ClassProviderImpl.Access(this.access).toString() + ' ' + this.name;
+        }
+    }
+}
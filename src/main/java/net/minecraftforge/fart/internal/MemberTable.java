@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.fart.internal;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.jetbrains.annotations.Nullable;
+
+import net.minecraftforge.fart.api.ClassProvider.IFieldInfo;
+import net.minecraftforge.fart.api.ClassProvider.IMethodInfo;
+
+/**
+ * The fields or methods of a class, kept as flat arrays in declaration order rather than as an object and
+ * a map entry per member. Most classes on the class path are only ever needed for their hierarchy, so the
+ * member objects are only created once somebody actually asks for them.
+ */
+class MemberTable {
+    private static final String[] NO_STRINGS = new String[0];
+    private static final int[] NO_INTS = new int[0];
+
+    private final String owner;
+    private final boolean methods;
+    private String[] names = NO_STRINGS;
+    private String[] descs = NO_STRINGS;
+    private int[] access = NO_INTS;
+    private int size = 0;
+    private volatile List<Member> view;
+
+    /**
+     * @param owner the internal name of the class these members belong to
+     * @param methods {@code true} if this holds methods, only used to format {@link Member#toString()}
+     */
+    MemberTable(String owner, boolean methods) {
+        this.owner = owner;
+        this.methods = methods;
+    }
+
+    /**
+     * Adds a member, this must not be called once the table has been handed out.
+     */
+    void add(int access, String name, String desc) {
+        if (this.size == this.names.length) {
+            int len = Math.max(8, this.size * 2);
+            this.names = Arrays.copyOf(this.names, len);
+            this.descs = Arrays.copyOf(this.descs, len);
+            this.access = Arrays.copyOf(this.access, len);
+        }
+        this.names[this.size] = name;
+        this.descs[this.size] = desc;
+        this.access[this.size] = access;
+        this.size++;
+    }
+
+    /**
+     * Drops the spare capacity left over from adding members.
+     */
+    MemberTable trim() {
+        if (this.size != this.names.length) {
+            this.names = this.size == 0 ? NO_STRINGS : Arrays.copyOf(this.names, this.size);
+            this.descs = this.size == 0 ? NO_STRINGS : Arrays.copyOf(this.descs, this.size);
+            this.access = this.size == 0 ? NO_INTS : Arrays.copyOf(this.access, this.size);
+        }
+        return this;
+    }
+
+    Collection<Member> getAll() {
+        return members();
+    }
+
+    private List<Member> members() {
+        List<Member> ret = this.view;
+        if (ret == null) {
+            if (this.size == 0) {
+                ret = Collections.emptyList();
+            } else {
+                Member[] members = new Member[this.size];
+                for (int x = 0; x < members.length; x++)
+                    members[x] = new Member(x);
+                ret = Collections.unmodifiableList(Arrays.asList(members));
+            }
+            this.view = ret;
+        }
+        return ret;
+    }
+
+    /**
+     * Finds the first member with the given name. Classes have few enough members that a scan is cheaper than a map.
+     */
+    @Nullable
+    Member find(String name) {
+        for (int x = 0; x < this.size; x++) {
+            if (this.names[x].equals(name))
+                return members().get(x);
+        }
+        return null;
+    }
+
+    @Nullable
+    Member find(String name, String desc) {
+        for (int x = 0; x < this.size; x++) {
+            if (this.names[x].equals(name) && this.descs[x].equals(desc))
+                return members().get(x);
+        }
+        return null;
+    }
+
+    class Member implements IFieldInfo, IMethodInfo {
+        private final int index;
+
+        private Member(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public int getAccess() {
+            return MemberTable.this.access[this.index];
+        }
+
+        @Override
+        public String getName() {
+            return MemberTable.this.names[this.index];
+        }
+
+        @Override
+        public String getDescriptor() {
+            return MemberTable.this.descs[this.index];
+        }
+
+        @Override
+        public String toString() {
+            String access = new ClassProviderImpl.Access(getAccess()).toString();
+            if (MemberTable.this.methods)
+                return access + ' ' + MemberTable.this.owner + '/' + getName() + getDescriptor();
+            return access + ' ' + MemberTable.this.owner + '/' + getName() + ' ' + getDescriptor();
+        }
+    }
+}
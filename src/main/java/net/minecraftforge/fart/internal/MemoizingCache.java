@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.fart.internal;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Computes each value at most once, without holding any lock while it is computed.
+ * <p>
+ * {@link ConcurrentHashMap#computeIfAbsent} locks the bin for as long as the function runs, which blocks unrelated
+ * keys while classes are read from disk, and fails when resolving a class resolves its parents in the same map.
+ * Instead the first thread to ask for a key publishes a placeholder, computes the value outside the map, and then
+ * replaces it. Other threads asking for the same key wait on that placeholder alone.
+ * <p>
+ * Values must not be null. A value that fails to compute is not cached, so the next caller tries again.
+ */
+class MemoizingCache<K, V> {
+    private final ConcurrentHashMap<K, Object> values = new ConcurrentHashMap<>();
+    private final Function<K, V> compute;
+
+    MemoizingCache(Function<K, V> compute) {
+        this.compute = compute;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(K key) {
+        Object value = this.values.get(key);
+        if (value == null) {
+            InFlight<V> pending = new InFlight<>();
+            value = this.values.putIfAbsent(key, pending);
+            if (value == null)
+                return compute(key, pending);
+        }
+
+        if (value instanceof InFlight)
+            return ((InFlight<V>)value).await(key);
+        return (V)value;
+    }
+
+    private V compute(K key, InFlight<V> pending) {
+        V value;
+        try {
+            value = this.compute.apply(key);
+            if (value == null)
+                throw new NullPointerException("Computed null value for " + key);
+        } catch (RuntimeException | Error e) {
+            this.values.remove(key, pending);
+            pending.future.completeExceptionally(e);
+            throw e;
+        }
+        this.values.replace(key, pending, value);
+        pending.future.complete(value);
+        return value;
+    }
+
+    void clear() {
+        this.values.clear();
+    }
+
+    private static class InFlight<V> {
+        private final Thread owner = Thread.currentThread();
+        private final CompletableFuture<V> future = new CompletableFuture<>();
+
+        V await(Object key) {
+            // The owner waiting on itself would never finish, this only happens for cyclic inputs such as a class extending itself.
+            if (this.owner == Thread.currentThread())
+                throw new IllegalStateException("Recursive resolution of " + key);
+
+            try {
+                return this.future.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException)cause;
+                if (cause instanceof Error)
+                    throw (Error)cause;
+                throw e;
+            }
+        }
+    }
+}
@@ -4,32 +4,82 @@
  */
 package net.minecraftforge.fart.internal;
 
-import net.minecraftforge.fart.api.Transformer;
+import net.minecraftforge.fart.api.ClassVisitorTransformer;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
-import org.objectweb.asm.ClassWriter;
 
+import java.nio.charset.StandardCharsets;
 import java.util.function.Function;
+import java.util.function.Predicate;
 
-abstract class OptionalChangeTransformer implements Transformer {
+/**
+ * A transformer that only changes some classes, and keeps the original class when it didn't change anything.
+ * <p>
+ * Most classes need no fixing, so fixers can give a probe which looks at the header or constant pool of a class,
+ * and only classes that pass it are parsed. A probe must never reject a class the fixer would have changed.
+ */
+abstract class OptionalChangeTransformer implements ClassVisitorTransformer {
+    private static final Interest CLASSES = Interest.kinds(Interest.Kind.CLASS);
     protected final Function<ClassVisitor, ClassFixer> fixerFactory;
+    private final Predicate<ClassReader> probe;
 
     protected OptionalChangeTransformer(Function<ClassVisitor, ClassFixer> fixerFactory) {
+        this(fixerFactory, reader -> true);
+    }
+
+    protected OptionalChangeTransformer(Function<ClassVisitor, ClassFixer> fixerFactory, Predicate<ClassReader> probe) {
         this.fixerFactory = fixerFactory;
+        this.probe = probe;
+    }
+
+    /**
+     * Returns {@code true} if the constant pool of the class holds the given UTF-8 constant, such as the name of an
+     * attribute. Any attribute the class or its members have is named in the pool, so if the name is missing, so is the
+     * attribute. The constants are compared without decoding them, so this only works for ASCII values.
+     */
+    protected static boolean hasConstant(ClassReader reader, String value) {
+        byte[] expected = value.getBytes(StandardCharsets.US_ASCII);
+        for (int x = 1; x < reader.getItemCount(); x++) {
+            int offset = reader.getItem(x);
+            // Long and double constants take up two slots, the second of which has no offset
+            if (offset == 0 || reader.readByte(offset - 1) != 1) // CONSTANT_Utf8
+                continue;
+            if (reader.readUnsignedShort(offset) != expected.length)
+                continue;
+            boolean match = true;
+            for (int y = 0; y < expected.length && match; y++)
+                match = reader.readByte(offset + 2 + y) == expected[y];
+            if (match)
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public Interest getInterest() {
+        return CLASSES;
     }
 
     @Override
-    public ClassEntry process(ClassEntry entry) {
-        ClassReader reader = new ClassReader(entry.getData());
-        ClassWriter writer = new ClassWriter(reader, 0);
-        ClassFixer fixer = fixerFactory.apply(writer);
+    public Pass begin(ClassEntry entry, String className) {
+        return new Pass() {
+            private ClassFixer fixer;
 
-        reader.accept(fixer, 0);
+            @Override
+            public ClassVisitor visitor(ClassVisitor parent) {
+                return this.fixer = fixerFactory.apply(parent);
+            }
 
-        if (!fixer.madeChange())
-            return entry;
+            @Override
+            public boolean accepts(ClassReader reader) {
+                return probe.test(reader);
+            }
 
-        return ClassEntry.create(entry.getName(), entry.getTime(), writer.toByteArray());
+            @Override
+            public boolean madeChange() {
+                return this.fixer.madeChange();
+            }
+        };
     }
 
     protected abstract static class ClassFixer extends ClassVisitor {
@@ -16,7 +16,9 @@ public final class ParameterAnnotationFixer extends OptionalChangeTransformer {
     public static final ParameterAnnotationFixer INSTANCE = new ParameterAnnotationFixer();
 
     private ParameterAnnotationFixer() {
-        super(Fixer::new);
+        // Only the constructors of enums and inner classes have synthetic parameters, and only annotated ones can be misaligned
+        super(Fixer::new, reader -> ((reader.getAccess() & ACC_ENUM) != 0 || hasConstant(reader, "InnerClasses")) &&
+            (hasConstant(reader, "RuntimeVisibleParameterAnnotations") || hasConstant(reader, "RuntimeInvisibleParameterAnnotations")));
     }
 
     private static class Fixer extends OptionalChangeTransformer.ClassFixer {
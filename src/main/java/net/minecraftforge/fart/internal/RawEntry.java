@@ -0,0 +1,307 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.fart.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+import org.jetbrains.annotations.Nullable;
+
+import net.minecraftforge.fart.api.Transformer.Entry;
+import net.minecraftforge.fart.api.Transformer.Entry.StreamSupplier;
+
+/**
+ * A zip entry whose payload has already been encoded for the output file, along with
+ * everything needed to write its headers without touching the data again.
+ * <p>
+ * The data is held as a buffer so that entries copied from the input can point straight into its mapping.
+ * Entries can also be {@linkplain #spill(SpillFile) spilled} to disk, in which case only their headers stay in memory,
+ * and the data is read back each time it is asked for, or {@linkplain #toPool(BufferPool) moved} to direct memory,
+ * which must be {@linkplain #release() released} once the entry is written.
+ * <p>
+ * {@linkplain #streamed(String, long, int, long, long, StreamSupplier) Streamed} entries hold no data at all, it is only
+ * read, and encoded, by the {@link ZipWriter} as it writes them. Their compressed size is unknown until then.
+ */
+class RawEntry {
+    private static final byte[] EMPTY = new byte[0];
+    private static final byte[] EMPTY_DEFLATED = deflate(EMPTY);
+    private static final ThreadLocal<byte[]> DEFLATE_BUFFER = ThreadLocal.withInitial(() -> new byte[0x8000]);
+
+    private final String name;
+    private final long time;
+    private final int method;
+    private final long crc;
+    private final long size;
+    @Nullable
+    private final ByteBuffer data;
+    @Nullable
+    private final SpillFile spill;
+    private final long offset;
+    private final long compressedSize;
+    @Nullable
+    private final BufferPool.Slice slice;
+    @Nullable
+    private final StreamSupplier source;
+
+    private RawEntry(String name, long time, int method, long crc, long size, byte[] data) {
+        this(name, time, method, crc, size, ByteBuffer.wrap(data));
+    }
+
+    private RawEntry(String name, long time, int method, long crc, long size, ByteBuffer data) {
+        this.name = name;
+        this.time = time;
+        this.method = method;
+        this.crc = crc;
+        this.size = size;
+        this.data = data;
+        this.spill = null;
+        this.offset = 0;
+        this.compressedSize = data.remaining();
+        this.slice = null;
+        this.source = null;
+    }
+
+    private RawEntry(String name, long time, int method, long crc, long size, StreamSupplier source) {
+        this.name = name;
+        this.time = time;
+        this.method = method;
+        this.crc = crc;
+        this.size = size;
+        this.data = null;
+        this.spill = null;
+        this.offset = 0;
+        this.compressedSize = method == ZipEntry.STORED ? size : -1;
+        this.slice = null;
+        this.source = source;
+    }
+
+    private RawEntry(RawEntry entry, BufferPool.Slice slice) {
+        this.name = entry.name;
+        this.time = entry.time;
+        this.method = entry.method;
+        this.crc = entry.crc;
+        this.size = entry.size;
+        this.data = slice.getData();
+        this.spill = null;
+        this.offset = 0;
+        this.compressedSize = entry.compressedSize;
+        this.slice = slice;
+        this.source = null;
+    }
+
+    private RawEntry(RawEntry entry, SpillFile spill, long offset) {
+        this.name = entry.name;
+        this.time = entry.time;
+        this.method = entry.method;
+        this.crc = entry.crc;
+        this.size = entry.size;
+        this.data = null;
+        this.spill = spill;
+        this.offset = offset;
+        this.compressedSize = entry.compressedSize;
+        this.slice = null;
+        this.source = null;
+    }
+
+    /**
+     * Compresses the data the same way {@link java.util.zip.ZipOutputStream} does at level 6,
+     * so the resulting bytes are identical to what it would have written.
+     */
+    static RawEntry deflated(String name, long time, byte[] data) {
+        return new RawEntry(name, time, ZipEntry.DEFLATED, crc(data), data.length, deflate(data));
+    }
+
+    /**
+     * Compresses the remaining data of the buffer, without moving its position.
+     *
+     * @see #deflated(String, long, byte[])
+     */
+    static RawEntry deflated(String name, long time, ByteBuffer data) {
+        if (data.hasArray() && data.arrayOffset() == 0 && data.position() == 0 && data.remaining() == data.array().length)
+            return deflated(name, time, data.array());
+        return new RawEntry(name, time, ZipEntry.DEFLATED, crc(data), data.remaining(), deflate(data));
+    }
+
+    /**
+     * Wraps data that is already encoded, for example read straight out of another zip file.
+     */
+    static RawEntry raw(String name, long time, int method, long crc, long size, ByteBuffer data) {
+        return new RawEntry(name, time, method, crc, size, data);
+    }
+
+    /**
+     * Keeps the data as is, only computing the CRC.
+     */
+    static RawEntry stored(String name, long time, byte[] data) {
+        return new RawEntry(name, time, ZipEntry.STORED, crc(data), data.length, data);
+    }
+
+    /**
+     * Keeps the remaining data of the buffer as is, only computing the CRC. The buffer is not copied.
+     */
+    static RawEntry stored(String name, long time, ByteBuffer data) {
+        data = data.slice();
+        return new RawEntry(name, time, ZipEntry.STORED, crc(data), data.remaining(), data);
+    }
+
+    /**
+     * Creates an entry whose data is read from the source, and encoded with the given method, while it is written.
+     * The CRC and size must match the data for stored entries, which need them up front. Deflated entries work them
+     * out as they go, like {@link java.util.zip.ZipOutputStream} does.
+     */
+    static RawEntry streamed(String name, long time, int method, long crc, long size, StreamSupplier source) {
+        return new RawEntry(name, time, method, crc, size, source);
+    }
+
+    static RawEntry directory(String name, boolean stored) {
+        if (stored)
+            return new RawEntry(name, Entry.STABLE_TIMESTAMP, ZipEntry.STORED, 0, 0, EMPTY);
+        return new RawEntry(name, Entry.STABLE_TIMESTAMP, ZipEntry.DEFLATED, 0, 0, EMPTY_DEFLATED);
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return crc.getValue();
+    }
+
+    private static long crc(ByteBuffer data) {
+        CRC32 crc = new CRC32();
+        crc.update(data.duplicate());
+        return crc.getValue();
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater def = new Deflater(6, true);
+        try {
+            def.setInput(data, 0, data.length);
+            def.finish();
+            byte[] buf = new byte[Math.max(64, data.length / 2)];
+            int len = 0;
+            while (!def.finished()) {
+                if (len == buf.length)
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                len += def.deflate(buf, len, buf.length - len);
+            }
+            return len == buf.length ? buf : Arrays.copyOf(buf, len);
+        } finally {
+            def.end();
+        }
+    }
+
+    /**
+     * Java 8's Deflater can only read from arrays, so buffers without one are copied in chunks.
+     * The compressed bytes are the same no matter how the input is split up.
+     */
+    private static byte[] deflate(ByteBuffer data) {
+        data = data.duplicate();
+        byte[] chunk = DEFLATE_BUFFER.get();
+        Deflater def = new Deflater(6, true);
+        try {
+            byte[] buf = new byte[Math.max(64, data.remaining() / 2)];
+            int len = 0;
+            while (!def.finished()) {
+                if (def.needsInput()) {
+                    int cnt = Math.min(chunk.length, data.remaining());
+                    data.get(chunk, 0, cnt);
+                    def.setInput(chunk, 0, cnt);
+                    if (!data.hasRemaining())
+                        def.finish();
+                }
+                if (len == buf.length)
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                len += def.deflate(buf, len, buf.length - len);
+            }
+            return len == buf.length ? buf : Arrays.copyOf(buf, len);
+        } finally {
+            def.end();
+        }
+    }
+
+    String getName() {
+        return this.name;
+    }
+
+    long getTime() {
+        return this.time;
+    }
+
+    int getMethod() {
+        return this.method;
+    }
+
+    long getCrc() {
+        return this.crc;
+    }
+
+    long getSize() {
+        return this.size;
+    }
+
+    long getCompressedSize() {
+        return this.compressedSize;
+    }
+
+    /**
+     * Returns {@code true} if the data is held in memory, on the heap or in a pool, rather than in a file mapping or on disk.
+     */
+    boolean isHeld() {
+        return this.data != null && (this.slice != null || !this.data.isDirect());
+    }
+
+    boolean isStreamed() {
+        return this.source != null;
+    }
+
+    /**
+     * Opens the unencoded data of a streamed entry.
+     */
+    InputStream openStream() throws IOException {
+        return this.source.open();
+    }
+
+    /**
+     * Returns a new view of the encoded data, so callers are free to move its position.
+     * Spilled data is read back from disk on every call.
+     */
+    ByteBuffer getData() {
+        if (this.data != null)
+            return this.data.duplicate();
+
+        try {
+            return this.spill.read(this.offset, (int)this.compressedSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read spilled entry: " + this.name, e);
+        }
+    }
+
+    /**
+     * Writes the data to the spill file, and returns an entry that reads it back from there.
+     */
+    RawEntry spill(SpillFile spill) throws IOException {
+        return new RawEntry(this, spill, spill.write(this.data));
+    }
+
+    /**
+     * Copies the data to direct memory from the pool, and returns an entry that holds it there.
+     */
+    RawEntry toPool(BufferPool pool) {
+        return new RawEntry(this, pool.copy(this.data));
+    }
+
+    /**
+     * Gives pooled data back to the pool, the entry must not be used afterwards. Does nothing for other entries.
+     */
+    void release() {
+        if (this.slice != null)
+            this.slice.release();
+    }
+}
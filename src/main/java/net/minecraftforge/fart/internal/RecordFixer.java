@@ -16,7 +16,7 @@ public class RecordFixer extends OptionalChangeTransformer {
     public static final RecordFixer INSTANCE = new RecordFixer();
 
     private RecordFixer() {
-        super(Fixer::new);
+        super(Fixer::new, reader -> "java/lang/Record".equals(reader.getSuperName()));
     }
 
     private static class Fixer extends ClassFixer {
@@ -72,6 +72,7 @@ public class RecordFixer extends OptionalChangeTransformer {
                     this.madeChange = true;
                 }
             }
+            super.visitEnd();
         }
 
         private static class Entry {
@@ -8,11 +8,16 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Consumer;
 
+import org.jetbrains.annotations.Nullable;
+
 import net.minecraftforge.fart.api.ClassProvider;
+import net.minecraftforge.fart.api.Logger;
 import net.minecraftforge.fart.api.Renamer;
 import net.minecraftforge.fart.api.Renamer.Builder;
+import net.minecraftforge.fart.api.RunListener;
 import net.minecraftforge.fart.api.Transformer;
 import net.minecraftforge.srgutils.IMappingFile;
 
@@ -23,9 +28,25 @@ public class RenamerBuilder implements Builder {
     private final List<ClassProvider> classProviders = new ArrayList<>();
     private final List<Transformer.Factory> transformerFactories = new ArrayList<>();
     private int threads = Runtime.getRuntime().availableProcessors();
+    @Nullable
+    private ExecutorService executor = null;
+    private boolean virtualThreads = false;
+    private long memoryBudget = Long.MAX_VALUE;
+    private boolean offHeap = false;
     private boolean withJvmClasspath = false;
+    private boolean stored = false;
+    private boolean passthrough = false;
+    @Nullable
+    private File libraryIndex = null;
     private Consumer<String> logger = System.out::println;
-    private Consumer<String> debug = s -> {};
+    @Nullable
+    private Consumer<String> debug = null;
+    @Nullable
+    private Logger log = null;
+    @Nullable
+    private RunListener listener = null;
+    @Nullable
+    private File trace = null;
     private boolean collectAbstractParams = true;
 
     @Override
@@ -75,15 +96,79 @@ public class RenamerBuilder implements Builder {
         return this;
     }
 
+    @Override
+    public Builder stored(boolean value) {
+        this.stored = value;
+        return this;
+    }
+
+    @Override
+    public Builder passthrough(boolean value) {
+        this.passthrough = value;
+        return this;
+    }
+
+    @Override
+    public Builder libraryIndex(@Nullable File directory) {
+        this.libraryIndex = directory;
+        return this;
+    }
+
     @Override
     public Builder logger(Consumer<String> out) {
         this.logger = requireNonNull(out, "out");
+        this.log = null;
         return this;
     }
 
     @Override
     public Builder debug(Consumer<String> debug) {
         this.debug = requireNonNull(debug, "debug");
+        this.log = null;
+        return this;
+    }
+
+    @Override
+    public Builder logger(Logger logger) {
+        this.log = requireNonNull(logger, "logger");
+        return this;
+    }
+
+    @Override
+    public Builder executor(ExecutorService executor) {
+        this.executor = requireNonNull(executor, "executor");
+        return this;
+    }
+
+    @Override
+    public Builder virtualThreads(boolean value) {
+        this.virtualThreads = value;
+        return this;
+    }
+
+    @Override
+    public Builder memoryBudget(long bytes) {
+        if (bytes < 0)
+            throw new IllegalArgumentException("Memory budget can not be negative: " + bytes);
+        this.memoryBudget = bytes;
+        return this;
+    }
+
+    @Override
+    public Builder offHeap(boolean value) {
+        this.offHeap = value;
+        return this;
+    }
+
+    @Override
+    public Builder listener(RunListener listener) {
+        this.listener = requireNonNull(listener, "listener");
+        return this;
+    }
+
+    @Override
+    public Builder trace(File file) {
+        this.trace = requireNonNull(file, "file");
         return this;
     }
 
@@ -95,32 +180,14 @@ public class RenamerBuilder implements Builder {
 
     @Override
     public Renamer build() {
+        if (this.virtualThreads && this.executor == null && !VirtualThreads.isSupported())
+            throw new IllegalStateException("Virtual threads need Java 21 or newer, and FART to be run from its jar");
+
         List<ClassProvider> classProviders = new ArrayList<>(this.classProviders);
         if (this.withJvmClasspath)
             classProviders.add(ClassProvider.fromJvmClasspath());
 
-        SortedClassProvider sortedClassProvider = new SortedClassProvider(classProviders, this.logger);
-        final Transformer.Context ctx = new Transformer.Context() {
-            @Override
-            public Consumer<String> getLog() {
-                return logger;
-            }
-
-            @Override
-            public Consumer<String> getDebug() {
-                return debug;
-            }
-
-            @Override
-            public ClassProvider getClassProvider() {
-                return sortedClassProvider;
-            }
-        };
-
-        final List<Transformer> transformers = new ArrayList<>(transformerFactories.size());
-        for (Transformer.Factory factory : transformerFactories) {
-            transformers.add(requireNonNull(factory.create(ctx), "output of " + factory));
-        }
-        return new RenamerImpl(libraries, transformers, sortedClassProvider, classProviders, threads, logger, debug);
+        return new RenamerImpl(libraries, libraryIndex, new ArrayList<>(transformerFactories), classProviders, threads, executor, virtualThreads, memoryBudget, offHeap, stored, passthrough,
+            this.log != null ? this.log : Logger.of(this.logger, this.debug), listener, trace);
     }
 }
@@ -4,62 +4,135 @@
  */
 package net.minecraftforge.fart.internal;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
-import java.util.zip.ZipOutputStream;
+
+import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.Opcodes;
 
+import static java.util.Objects.requireNonNull;
+
 import net.minecraftforge.fart.api.ClassProvider;
+import net.minecraftforge.fart.api.Logger;
 import net.minecraftforge.fart.api.Renamer;
+import net.minecraftforge.fart.api.RunListener;
+import net.minecraftforge.fart.api.RunStats.Phase;
+import net.minecraftforge.fart.api.TraceRecorder;
 import net.minecraftforge.fart.api.Transformer;
 import net.minecraftforge.fart.api.Transformer.ClassEntry;
 import net.minecraftforge.fart.api.Transformer.Entry;
 import net.minecraftforge.fart.api.Transformer.ManifestEntry;
-import net.minecraftforge.fart.api.Transformer.ResourceEntry;
 
 class RenamerImpl implements Renamer {
     static final int MAX_ASM_VERSION = Opcodes.ASM9;
-    private static final String MANIFEST_NAME = "META-INF/MANIFEST.MF";
+    private static final String MANIFEST_NAME = SortedZipOutput.MANIFEST_NAME;
+    // Untouched resources this large are streamed to the output by the writer, instead of being compressed by the workers
+    // and held until then. Smaller ones aren't worth giving up compressing in parallel for.
+    private static final long STREAM_THRESHOLD = 4 * 1024 * 1024;
     private final List<File> libraries;
-    private final List<Transformer> transformers;
-    private final SortedClassProvider sortedClassProvider;
+    @Nullable
+    private final File libraryIndex;
+    private final List<Transformer.Factory> transformerFactories;
     private final List<ClassProvider> classProviders;
     private final int threads;
-    private final Consumer<String> logger;
-    @SuppressWarnings("unused")
-    private final Consumer<String> debug;
+    @Nullable
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+    private final long memoryBudget;
+    @Nullable
+    private final BufferPool pool;
+    private final boolean stored;
+    private final boolean passthrough;
+    private final Logger logger;
+    @Nullable
+    private final RunListener listener;
+    @Nullable
+    private final File trace;
     private boolean setup = false;
     private ClassProvider libraryClasses;
 
-    RenamerImpl(List<File> libraries, List<Transformer> transformers, SortedClassProvider sortedClassProvider, List<ClassProvider> classProviders,
-            int threads, Consumer<String> logger, Consumer<String> debug) {
+    RenamerImpl(List<File> libraries, @Nullable File libraryIndex, List<Transformer.Factory> transformerFactories, List<ClassProvider> classProviders,
+            int threads, @Nullable ExecutorService executor, boolean virtualThreads, long memoryBudget, boolean offHeap, boolean stored, boolean passthrough, Logger logger, @Nullable RunListener listener,
+            @Nullable File trace) {
         this.libraries = libraries;
-        this.transformers = transformers;
-        this.sortedClassProvider = sortedClassProvider;
+        this.libraryIndex = libraryIndex;
+        this.transformerFactories = Collections.unmodifiableList(transformerFactories);
         this.classProviders = Collections.unmodifiableList(classProviders);
         this.threads = threads;
+        this.executor = executor;
+        this.virtualThreads = virtualThreads;
+        this.memoryBudget = memoryBudget;
+        // Shared by every run, so that the slabs of one run are reused by the next
+        this.pool = offHeap ? new BufferPool(16) : null;
+        this.stored = stored;
+        this.passthrough = passthrough;
         this.logger = logger;
-        this.debug = debug;
+        this.listener = listener;
+        this.trace = trace;
+    }
+
+    /**
+     * Creates the transformers, and the class provider they see, for one input.
+     * Transformers remember what they resolved from the input they ran on, so every run needs new ones.
+     *
+     * @param logger the logger of the run the pipeline is for, which is given to the transformers
+     */
+    private Pipeline createPipeline(Logger logger) {
+        SortedClassProvider sortedClassProvider = new SortedClassProvider(this.classProviders, logger);
+        final Transformer.Context ctx = new Transformer.Context() {
+            @Override
+            public Consumer<String> getLog() {
+                return logger::info;
+            }
+
+            @Override
+            public Consumer<String> getDebug() {
+                return line -> logger.debug(() -> line);
+            }
+
+            @Override
+            public Logger getLogger() {
+                return logger;
+            }
+
+            @Override
+            public ClassProvider getClassProvider() {
+                return sortedClassProvider;
+            }
+        };
+
+        final List<Transformer> transformers = new ArrayList<>(this.transformerFactories.size());
+        for (Transformer.Factory factory : this.transformerFactories) {
+            transformers.add(requireNonNull(factory.create(ctx), "output of " + factory));
+        }
+        return new Pipeline(sortedClassProvider, transformers, logger);
     }
 
-    private void setup() {
+    private synchronized void setup(Logger logger) {
         if (this.setup)
             return;
 
         this.setup = true;
 
-        ClassProvider.Builder libraryClassesBuilder = ClassProvider.builder().shouldCacheAll(true);
-        this.logger.accept("Adding Libraries to Inheritance");
+        ClassProvider.Builder libraryClassesBuilder = ClassProvider.builder().shouldCacheAll(true)
+            .indexCache(this.libraryIndex == null ? null : this.libraryIndex.toPath());
+        logger.info("Adding Libraries to Inheritance");
         this.libraries.forEach(f -> libraryClassesBuilder.addLibrary(f.toPath()));
 
         this.libraryClasses = libraryClassesBuilder.build();
@@ -67,9 +140,107 @@ class RenamerImpl implements Renamer {
 
     @Override
     public void run(File input, File output) {
-        if (!this.setup)
-            this.setup();
+        run(input, output, null);
+    }
+
+    @Override
+    public void run(Job job) {
+        run(createPipeline(job.getLogger() == null ? this.logger : job.getLogger()), job.getInput(), job.getOutput(), job.getListener());
+    }
+
+    private void run(File input, File output, @Nullable RunListener listener) {
+        run(createPipeline(this.logger), input, output, listener);
+    }
+
+    private void run(Pipeline pipeline, File input, File output, @Nullable RunListener listener) {
+        TraceRecorder trace = this.trace == null ? null : TraceRecorder.create();
+        AsyncHelper async = createAsync();
+        try {
+            run(pipeline, input, output, RunRecorder.combine(trace, listener), async);
+        } finally {
+            async.shutdown();
+        }
+        writeTrace(trace);
+    }
+
+    @Override
+    public void runAll(List<Job> jobs) {
+        // Every job in flight holds its output in memory until it is written, so only run as many at once
+        // as it takes to keep the threads busy between the parts of a job that can't be split up.
+        int parallel = Math.max(1, Math.min(jobs.size(), this.threads / 2));
+        TraceRecorder trace = this.trace == null ? null : TraceRecorder.create();
+        AsyncHelper async = createAsync();
+        ExecutorService jobExec = Executors.newFixedThreadPool(parallel);
+        try {
+            List<Pair<Job, Future<?>>> futures = new ArrayList<>(jobs.size());
+            for (Job job : jobs)
+                futures.add(new Pair<>(job, jobExec.submit(() -> run(createPipeline(job.getLogger() == null ? this.logger : job.getLogger()), job.getInput(), job.getOutput(), RunRecorder.combine(trace, job.getListener()), async))));
+
+            RuntimeException failure = null;
+            for (Pair<Job, Future<?>> future : futures) {
+                try {
+                    future.getRight().get();
+                } catch (InterruptedException e) {
+                    // Jobs that already started have their inputs open, so only drop the others and let the finally below wait for the rest.
+                    for (Pair<Job, Future<?>> pending : futures)
+                        pending.getRight().cancel(false);
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while running jobs", e);
+                } catch (ExecutionException e) {
+                    RuntimeException ex = new RuntimeException("Could not run job: " + future.getLeft(), e.getCause());
+                    if (failure == null)
+                        failure = ex;
+                    else
+                        failure.addSuppressed(ex);
+                }
+            }
+            if (failure != null)
+                throw failure;
+        } finally {
+            jobExec.shutdown();
+            awaitTermination(jobExec);
+            async.shutdown();
+        }
+        writeTrace(trace);
+    }
+
+    private static void awaitTermination(ExecutorService exec) {
+        boolean interrupted = Thread.interrupted();
+        try {
+            while (true) {
+                try {
+                    if (exec.awaitTermination(1, TimeUnit.MINUTES))
+                        break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
 
+    private AsyncHelper createAsync() {
+        if (this.executor != null)
+            return new AsyncHelper(this.executor, false);
+        if (this.virtualThreads)
+            return new AsyncHelper(VirtualThreads.create(), true);
+        return new AsyncHelper(this.threads);
+    }
+
+    private void writeTrace(@Nullable TraceRecorder trace) {
+        if (trace == null)
+            return;
+        try {
+            trace.write(this.trace);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write trace to file: " + this.trace.getAbsolutePath(), e);
+        }
+        this.logger.info("Trace written to: " + this.trace.getAbsolutePath());
+    }
+
+    private void run(Pipeline pipeline, File input, File output, @Nullable RunListener listener, AsyncHelper async) {
         if (input == null)
             throw new IllegalArgumentException("input argument can't be null");
         if (output == null)
@@ -80,152 +251,335 @@ class RenamerImpl implements Renamer {
         input = input.getAbsoluteFile();
         output = output.getAbsoluteFile();
 
-        logger.accept("Reading Input: " + input.getAbsolutePath());
-        // Read everything from the input jar!
-        List<Entry> oldEntries = new ArrayList<>();
-        try (ZipFile in = new ZipFile(input)) {
-            Util.forZip(in, e -> {
-                if (e.isDirectory())
-                    return;
-                String name = e.getName();
-                byte[] data = Util.toByteArray(in.getInputStream(e));
-
-                if (name.endsWith(".class"))
-                    oldEntries.add(ClassEntry.create(name, e.getTime(), data));
-                else if (name.equals(MANIFEST_NAME))
-                    oldEntries.add(ManifestEntry.create(e.getTime(), data));
-                else
-                    oldEntries.add(ResourceEntry.create(name, e.getTime(), data));
-            });
+        RunRecorder recorder = new RunRecorder(input, output, pipeline.stages, this.listener, listener);
+        // Always synchronized, as jobs run by runAll may all get here at once, and must wait for the first to finish
+        recorder.phase(Phase.SETUP);
+        setup(pipeline.logger);
+
+        recorder.phase(Phase.READ);
+        pipeline.logger.info("Reading Input: " + input.getAbsolutePath());
+        // Never map a file we're about to overwrite, the mapping would keep it locked, or worse, get truncated under us.
+        boolean overwrite = input.equals(output);
+        try (ZipReader in = ZipReader.open(input.toPath(), !overwrite);
+             SortedZipOutput out = new SortedZipOutput(this.stored, this.memoryBudget, this.pool)) {
+            // Only collect the zip entries here, the data is read on demand so that we never hold the whole jar in memory.
+            List<ZipReader.Record> entries = in.getRecords().stream()
+                .filter(e -> !e.isDirectory())
+                .collect(Collectors.toList());
+            recorder.entries(entries.size());
+
+            setRecorder(pipeline, recorder.forLookups());
+            run(pipeline, in, out, entries, output, overwrite, async, recorder);
         } catch (IOException e) {
             throw new RuntimeException("Could not parse input: " + input.getAbsolutePath(), e);
+        } finally {
+            setRecorder(pipeline, null);
+        }
+    }
+
+    private static void setRecorder(Pipeline pipeline, @Nullable RunRecorder recorder) {
+        for (Transformer transformer : pipeline.transformers) {
+            if (transformer instanceof RenamingTransformer)
+                ((RenamingTransformer)transformer).setRecorder(recorder);
         }
+        for (int x = 0; x < pipeline.stages.size(); x++) {
+            Transformer stage = pipeline.stages.get(x);
+            if (stage instanceof VisitorPipeline)
+                ((VisitorPipeline)stage).setRecorder(recorder == null ? null : recorder.forPasses(x));
+        }
+    }
 
-        this.sortedClassProvider.clearCache();
+    private void run(Pipeline pipeline, ZipReader in, SortedZipOutput out, List<ZipReader.Record> entries, File output, boolean overwrite, AsyncHelper async, RunRecorder recorder) throws IOException {
+        pipeline.classProvider.clearCache();
         ArrayList<ClassProvider> classProviders = new ArrayList<>(this.classProviders);
         classProviders.add(0, this.libraryClasses);
-        this.sortedClassProvider.classProviders = classProviders;
+        pipeline.classProvider.classProviders = classProviders;
+
+        /* Disabled until we do something with it
+        // Gather original file Hashes, so that we can detect changes and update the manifest if necessary
+        log("Gathering original hashes");
+        Map<String, String> oldHashes = async.invokeAll(oldEntries,
+            e -> new Pair<>(e.getName(), HashFunction.SHA256.hash(e.getData()))
+        ).stream().collect(Collectors.toMap(Pair::getLeft, Pair::getRight));
+        */
+
+        List<ZipReader.Record> ourClasses = entries.stream()
+            .filter(e -> e.getName().endsWith(".class") && !e.getName().startsWith("META-INF/"))
+            .collect(Collectors.toList());
+
+        // Add the original classes to the inheritance map, TODO: Multi-Release somehow?
+        recorder.phase(Phase.INDEX);
+        pipeline.logger.info("Adding input to inheritance map");
+        ClassProvider.Builder inputClassesBuilder = ClassProvider.builder();
+        recorder.progress(ourClasses.size());
+        async.consumeAll(ourClasses, threads * 4, ZipReader.Record::getName, e -> {
+            inputClassesBuilder.addClass(e.getName().substring(0, e.getName().length() - 6), readData(in, e, recorder));
+            recorder.step();
+        });
+        classProviders.add(0, inputClassesBuilder.build());
+
+        // Resolve the whole hierarchy up front, so that the mappings propagated through it don't depend on thread scheduling
+        List<String> classNames = ourClasses.stream()
+            .map(e -> e.getName().substring(0, e.getName().length() - 6))
+            .collect(Collectors.toList());
+        recorder.phase(Phase.RESOLVE);
+        for (Transformer transformer : pipeline.transformers) {
+            if (transformer instanceof RenamingTransformer) {
+                pipeline.logger.info("Resolving class hierarchy");
+                ((RenamingTransformer)transformer).resolveHierarchy(classNames, async);
+            }
+        }
 
-        AsyncHelper async = new AsyncHelper(threads);
-        try {
+        // Process everything, encoding the results for the output on the same worker as soon as they finish.
+        // The number of entries in flight is bounded so that reading can't run away from the transformers.
+        recorder.phase(Phase.TRANSFORM);
+        pipeline.logger.info("Processing entries");
+        recorder.progress(entries.size());
+        async.consumeAll(entries, threads * 4, ZipReader.Record::getName, e -> {
+            // Nothing wants to look at it, so there is no need to even read it
+            if (this.passthrough && out.canCopy(e.getMethod()) && !pipeline.interest.wants(getKind(e.getName()), e.getName())) {
+                recorder.step();
+                out.accept(readRaw(in, e));
+                return;
+            }
 
-            /* Disabled until we do something with it
-            // Gather original file Hashes, so that we can detect changes and update the manifest if necessary
-            log("Gathering original hashes");
-            Map<String, String> oldHashes = async.invokeAll(oldEntries,
-                e -> new Pair<>(e.getName(), HashFunction.SHA256.hash(e.getData()))
-            ).stream().collect(Collectors.toMap(Pair::getLeft, Pair::getRight));
-            */
-
-            List<ClassEntry> ourClasses = oldEntries.stream()
-                .filter(e -> e instanceof ClassEntry && !e.getName().startsWith("META-INF/"))
-                .map(ClassEntry.class::cast)
-                .collect(Collectors.toList());
+            Entry start = readEntry(in, e, recorder);
+            try {
+                Entry entry = processEntry(pipeline, start, recorder);
+                recorder.step();
+                if (entry == null)
+                    return;
 
-            // Add the original classes to the inheritance map, TODO: Multi-Release somehow?
-            logger.accept("Adding input to inheritance map");
-            ClassProvider.Builder inputClassesBuilder = ClassProvider.builder();
-            async.consumeAll(ourClasses, ClassEntry::getClassName, c ->
-                inputClassesBuilder.addClass(c.getName().substring(0, c.getName().length() - 6), c.getData())
-            );
-            classProviders.add(0, inputClassesBuilder.build());
-
-            // Process everything
-            logger.accept("Processing entries");
-            List<Entry> newEntries = async.invokeAll(oldEntries, Entry::getName, this::processEntry);
-
-            logger.accept("Adding extras");
-            transformers.forEach(t -> newEntries.addAll(t.getExtras()));
-
-            Set<String> seen = new HashSet<>();
-            String dupes = newEntries.stream().map(Entry::getName)
-                .filter(n -> !seen.add(n))
-                .sorted()
-                .collect(Collectors.joining(", "));
-            if (!dupes.isEmpty())
-                throw new IllegalStateException("Duplicate entries detected: " + dupes);
-
-            /*
-            log("Collecting new hashes");
-            Map<String, String> newHashes = async.invokeAll(newEntries,
-                e -> new Pair<>(e.getName(), HashFunction.SHA256.hash(e.getData()))
-            ).stream().collect(Collectors.toMap(Pair::getLeft, Pair::getRight));
-            */
-
-            // We care about stable output, so sort, and single thread write.
-            logger.accept("Sorting");
-            newEntries.sort(this::compare);
-
-            if (!output.getParentFile().exists())
-                output.getParentFile().mkdirs();
-
-            seen.clear();
-            logger.accept("Writing Output: " + output.getAbsolutePath());
-            try (FileOutputStream fos = new FileOutputStream(output);
-                ZipOutputStream zos = new ZipOutputStream(fos)) {
-                // Explicitly set compression level because of potential differences based on environment.
-                // See https://github.com/MinecraftForge/JarSplitter/pull/2
-                zos.setLevel(6);
-
-                for (Entry e : newEntries) {
-                    String name = e.getName();
-                    int idx = name.lastIndexOf('/');
-                    if (idx != -1)
-                        addDirectory(zos, seen, name.substring(0, idx));
-
-                    logger.accept("  " + name);
-                    ZipEntry entry = new ZipEntry(name);
-                    entry.setTime(e.getTime());
-                    zos.putNextEntry(entry);
-                    zos.write(e.getData());
-                    zos.closeEntry();
+                // Nobody replaced the entry, so its original compressed data is still valid and we can skip compressing it again
+                if (entry == start && this.passthrough && out.canCopy(e.getMethod())) {
+                    out.accept(readRaw(in, e));
+                } else if (entry == start && start instanceof InputResource && e.getSize() >= STREAM_THRESHOLD && !overwrite) {
+                    // The input is still open while writing, so read it again from there rather than holding on to it
+                    recorder.read(e.getSize());
+                    out.accept(entry, e.getCrc());
+                } else {
+                    out.accept(entry);
                 }
-            } catch (IOException e) {
-                throw new RuntimeException("Could not write output to file: " + output.getAbsolutePath(), e);
+            } finally {
+                // The output holds a copy of whatever it needs by now
+                if (start instanceof InputResource)
+                    ((InputResource)start).release();
             }
-        } finally {
-            async.shutdown();
+        });
+
+        recorder.phase(Phase.EXTRAS);
+        pipeline.logger.info("Adding extras");
+        List<Entry> extras = new ArrayList<>();
+        pipeline.transformers.forEach(t -> extras.addAll(t.getExtras()));
+        async.consumeAll(extras, Entry::getName, out::accept);
+
+        /*
+        log("Collecting new hashes");
+        Map<String, String> newHashes = async.invokeAll(newEntries,
+            e -> new Pair<>(e.getName(), HashFunction.SHA256.hash(e.getData()))
+        ).stream().collect(Collectors.toMap(Pair::getLeft, Pair::getRight));
+        */
+
+        // We care about stable output, so the output sorts everything before writing.
+        // Copied entries point into the input's mapping, so it can only be closed early when it wasn't mapped.
+        recorder.phase(Phase.WRITE);
+        if (overwrite)
+            in.close();
+        try {
+            out.write(output, pipeline.logger);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write output to file: " + output.getAbsolutePath(), e);
         }
+
+        logMissing(pipeline.classProvider.getMissing(), pipeline.logger);
+        if (out.getSpilledEntries() > 0)
+            pipeline.logger.info("Spilled " + out.getSpilledEntries() + " entries (" + out.getSpilledBytes() + " bytes) to disk to stay within the memory budget");
+        recorder.spilled(out.getSpilledEntries(), out.getSpilledBytes());
+        recorder.finish(pipeline.classProvider.getCacheHits(), pipeline.classProvider.getCacheMisses(), pipeline.classProvider.getMissing().size());
     }
 
-    // Tho Directory entries are not strictly necessary, we add them because some bad implementations of Zip extractors
-    // attempt to extract files without making sure the parents exist.
-    private void addDirectory(ZipOutputStream zos, Set<String> seen, String path) throws IOException {
-        if (!seen.add(path))
+    private static void logMissing(Set<String> missing, Logger logger) {
+        if (missing.isEmpty())
             return;
 
-        int idx = path.lastIndexOf('/');
-        if (idx != -1)
-            addDirectory(zos, seen, path.substring(0, idx));
+        logger.warn("Can't Find " + missing.size() + " Classes, members they declare or inherit may not be renamed");
+        if (logger.isEnabled(Logger.Level.VERBOSE))
+            missing.stream().sorted().forEach(name -> logger.log(Logger.Level.VERBOSE, "  " + name));
+    }
+
+    private static Transformer.Interest.Kind getKind(String name) {
+        if (name.endsWith(".class"))
+            return Transformer.Interest.Kind.CLASS;
+        else if (name.equals(MANIFEST_NAME))
+            return Transformer.Interest.Kind.MANIFEST;
+        else
+            return Transformer.Interest.Kind.RESOURCE;
+    }
+
+    private Entry readEntry(ZipReader in, ZipReader.Record e, RunRecorder recorder) {
+        String name = e.getName();
+        if (name.endsWith(".class"))
+            return ClassEntry.create(name, e.getTime(), readData(in, e, recorder));
+        else if (name.equals(MANIFEST_NAME))
+            return ManifestEntry.create(e.getTime(), readData(in, e, recorder));
+        else
+            return new InputResource(in, e, this.pool, recorder);
+    }
 
-        logger.accept("  " + path + '/');
-        ZipEntry dir = new ZipEntry(path + '/');
-        dir.setTime(Entry.STABLE_TIMESTAMP);
-        zos.putNextEntry(dir);
-        zos.closeEntry();
+    private static byte[] readData(ZipReader in, ZipReader.Record e, RunRecorder recorder) {
+        try {
+            byte[] data = in.read(e);
+            recorder.read(data.length);
+            return data;
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not read entry: " + e.getName(), ex);
+        }
+    }
+
+    private static RawEntry readRaw(ZipReader in, ZipReader.Record e) {
+        try {
+            return in.readRaw(e);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not read entry: " + e.getName(), ex);
+        }
     }
 
-    private Entry processEntry(final Entry start) {
+    private static Entry processEntry(Pipeline pipeline, final Entry start, RunRecorder recorder) {
         Entry entry = start;
-        for (Transformer transformer : RenamerImpl.this.transformers) {
-            entry = entry.process(transformer);
+        // Consecutive visitor transformers are fused, so each class is only parsed and written once per group
+        for (int x = 0; x < pipeline.stages.size(); x++) {
+            if (!pipeline.interests.get(x).wants(entry))
+                continue;
+            entry = recorder.process(x, entry);
             if (entry == null)
                 return null;
         }
         return entry;
     }
 
-    private int compare(Entry o1, Entry o2) {
-        // In order for JarInputStream to work, MANIFEST has to be the first entry, so make it first!
-        if (MANIFEST_NAME.equals(o1.getName()))
-            return MANIFEST_NAME.equals(o2.getName()) ? 0 : -1;
-        if (MANIFEST_NAME.equals(o2.getName()))
-            return MANIFEST_NAME.equals(o1.getName()) ? 0 :  1;
-        return o1.getName().compareTo(o2.getName());
-    }
-
     @Override
     public void close() throws IOException {
-        this.sortedClassProvider.close();
+        if (this.pool != null)
+            this.pool.close();
+        // The class providers of each run only ever hold these, and the input classes which need no closing
+        if (this.libraryClasses != null)
+            this.libraryClasses.close();
+        for (ClassProvider classProvider : this.classProviders)
+            classProvider.close();
+    }
+
+    /**
+     * A resource from the input, which is only read once a transformer asks for its data. The data is then kept until
+     * the entry has been processed, in the pool if there is one. Only ever used by the worker processing it.
+     */
+    private static class InputResource extends EntryImpl.ResourceEntry {
+        private final ZipReader in;
+        private final ZipReader.Record record;
+        @Nullable
+        private final BufferPool pool;
+        private final RunRecorder recorder;
+        @Nullable
+        private byte[] data;
+        @Nullable
+        private ByteBuffer buffer;
+        @Nullable
+        private BufferPool.Slice slice;
+
+        private InputResource(ZipReader in, ZipReader.Record record, @Nullable BufferPool pool, RunRecorder recorder) {
+            super(record.getName(), record.getTime(), record.getSize(), () -> in.openStream(record));
+            this.in = in;
+            this.record = record;
+            this.pool = pool;
+            this.recorder = recorder;
+        }
+
+        @Override
+        public byte[] getData() {
+            if (this.pool != null) {
+                ByteBuffer buf = getDataBuffer();
+                byte[] ret = new byte[buf.remaining()];
+                buf.get(ret);
+                return ret;
+            }
+
+            if (this.data == null)
+                this.data = readData(this.in, this.record, this.recorder);
+            return this.data;
+        }
+
+        @Override
+        public ByteBuffer getDataBuffer() {
+            if (this.pool == null)
+                return ByteBuffer.wrap(getData()).asReadOnlyBuffer();
+
+            if (this.buffer == null)
+                this.buffer = readOffHeap();
+            return this.buffer.duplicate();
+        }
+
+        @Override
+        public InputStream openStream() throws IOException {
+            return this.data != null ? new ByteArrayInputStream(this.data) : super.openStream();
+        }
+
+        /**
+         * Stored data is used straight from the input, anything else is inflated into the pool.
+         */
+        private ByteBuffer readOffHeap() {
+            try {
+                if (this.record.getMethod() == ZipEntry.STORED) {
+                    ByteBuffer ret = this.in.getRawData(this.record);
+                    this.recorder.read(ret.remaining());
+                    return ret.asReadOnlyBuffer();
+                }
+
+                if (this.record.getSize() > Integer.MAX_VALUE)
+                    throw new IOException("Entry too large to read into memory: " + getName());
+                BufferPool.Slice slice = this.pool.allocate((int)this.record.getSize());
+                try {
+                    this.in.read(this.record, slice.getBuffer());
+                } catch (IOException | RuntimeException e) {
+                    slice.release();
+                    throw e;
+                }
+                this.slice = slice;
+                this.recorder.read(this.record.getSize());
+                return slice.getData();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read entry: " + getName(), e);
+            }
+        }
+
+        private void release() {
+            if (this.slice != null)
+                this.slice.release();
+            this.slice = null;
+            this.buffer = null;
+            this.data = null;
+        }
+    }
+
+    private static class Pipeline {
+        private final SortedClassProvider classProvider;
+        private final List<Transformer> transformers;
+        private final List<Transformer> stages;
+        private final List<Transformer.Interest> interests;
+        private final Transformer.Interest interest;
+        private final Logger logger;
+
+        private Pipeline(SortedClassProvider classProvider, List<Transformer> transformers, Logger logger) {
+            this.classProvider = classProvider;
+            this.logger = logger;
+            this.transformers = transformers;
+            this.stages = VisitorPipeline.fuse(transformers);
+            this.interests = new ArrayList<>(this.stages.size());
+            Transformer.Interest interest = Transformer.Interest.NONE;
+            for (Transformer stage : this.stages) {
+                Transformer.Interest stageInterest = requireNonNull(stage.getInterest(), "interest of " + stage);
+                this.interests.add(stageInterest);
+                interest = interest.or(stageInterest);
+            }
+            this.interest = interest;
+        }
     }
 }
@@ -12,16 +12,17 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
-import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.ClassWriter;
-import org.objectweb.asm.commons.ClassRemapper;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassVisitor;
 
 import net.minecraftforge.fart.api.ClassProvider;
-import net.minecraftforge.fart.api.Transformer;
+import net.minecraftforge.fart.api.ClassVisitorTransformer;
+import net.minecraftforge.fart.api.Logger;
 import net.minecraftforge.srgutils.IMappingFile;
 
-public class RenamingTransformer implements Transformer {
+public class RenamingTransformer implements ClassVisitorTransformer {
     private static final String ABSTRACT_FILE = "fernflower_abstract_parameter_names.txt";
+    private static final Interest INTEREST = Interest.kinds(Interest.Kind.CLASS).or(Interest.names(Interest.Kind.RESOURCE, ABSTRACT_FILE));
     private final EnhancedRemapper remapper;
     private final Set<String> abstractParams = ConcurrentHashMap.newKeySet();
     private final boolean collectAbstractParams;
@@ -31,24 +32,46 @@ public class RenamingTransformer implements Transformer {
     }
 
     public RenamingTransformer(ClassProvider classProvider, IMappingFile map, Consumer<String> log, boolean collectAbstractParams) {
+        this(classProvider, map, Logger.of(log, null), collectAbstractParams);
+    }
+
+    public RenamingTransformer(ClassProvider classProvider, IMappingFile map, Logger log) {
+        this(classProvider, map, log, true);
+    }
+
+    public RenamingTransformer(ClassProvider classProvider, IMappingFile map, Logger log, boolean collectAbstractParams) {
         this.collectAbstractParams = collectAbstractParams;
         this.remapper = new EnhancedRemapper(classProvider, map, log);
     }
 
     @Override
-    public ClassEntry process(ClassEntry entry) {
-        ClassReader reader = new ClassReader(entry.getData());
-        ClassWriter writer = new ClassWriter(0);
-        ClassRemapper remapper = new EnhancedClassRemapper(writer, this.remapper, this);
+    public Interest getInterest() {
+        return INTEREST;
+    }
+
+    @Override
+    public Pass begin(ClassEntry entry, String className) {
+        return new Pass() {
+            @Override
+            public ClassVisitor visitor(ClassVisitor parent) {
+                return new EnhancedClassRemapper(parent, RenamingTransformer.this.remapper, RenamingTransformer.this);
+            }
 
-        reader.accept(remapper, 0);
+            @Override
+            public boolean madeChange() {
+                return true;
+            }
 
-        byte[] data = writer.toByteArray();
-        String newName = this.remapper.map(entry.getClassName());
+            @Override
+            public String mapClassName(String name) {
+                return RenamingTransformer.this.remapper.map(name);
+            }
 
-        if (entry.isMultiRelease())
-            return ClassEntry.create(newName, entry.getTime(), data, entry.getVersion());
-        return ClassEntry.create(newName + ".class", entry.getTime(), data);
+            @Override
+            public boolean copyConstantPool() {
+                return false;
+            }
+        };
     }
 
     @Override
@@ -67,6 +90,20 @@ public class RenamingTransformer implements Transformer {
         return Collections.singletonList(ResourceEntry.create(ABSTRACT_FILE, Entry.STABLE_TIMESTAMP, data));
     }
 
+    /**
+     * Resolves the hierarchy of the input classes ahead of time, see {@link EnhancedRemapper#resolveHierarchy}.
+     */
+    void resolveHierarchy(Collection<String> classes, AsyncHelper async) {
+        this.remapper.resolveHierarchy(classes, async);
+    }
+
+    /**
+     * Sets the recorder of the run that is using this transformer, to time class lookups for it.
+     */
+    void setRecorder(@Nullable RunRecorder recorder) {
+        this.remapper.recorder = recorder;
+    }
+
     void storeNames(String className, String methodName, String methodDescriptor, Collection<String> paramNames) {
         abstractParams.add(className + ' ' + methodName + ' ' + methodDescriptor + ' ' + String.join(" ", paramNames));
     }
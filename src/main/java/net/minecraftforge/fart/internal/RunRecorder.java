@@ -0,0 +1,426 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.fart.internal;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jetbrains.annotations.Nullable;
+
+import net.minecraftforge.fart.api.ClassVisitorTransformer;
+import net.minecraftforge.fart.api.RunListener;
+import net.minecraftforge.fart.api.RunStats;
+import net.minecraftforge.fart.api.RunStats.Phase;
+import net.minecraftforge.fart.api.Transformer;
+import net.minecraftforge.fart.api.Transformer.Entry;
+
+/**
+ * Collects the stats of a single run, and tells the listeners about it.
+ * <p>
+ * Phases are only ever started by the thread driving the run, everything else may be called from any worker.
+ * Without a listener nothing but the phase times is collected, so runs nobody listens to pay next to nothing.
+ */
+class RunRecorder {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled();
+
+    private final File input;
+    private final File output;
+    @Nullable
+    private final RunListener listener;
+    private final long start = System.nanoTime();
+    private final Map<Phase, Long> phases = new EnumMap<>(Phase.class);
+    @Nullable
+    private Phase phase;
+    private long phaseStart;
+    @Nullable
+    private Object phaseEvent;
+
+    private final List<Transformer> stages;
+    private final LongAdder[] times;
+    private final AtomicInteger[] entries;
+    private final AtomicInteger[] changed;
+    private final Passes[] passes;
+    private final LongAdder bytesRead = new LongAdder();
+    private int entryCount = 0;
+    private int spilledEntries = 0;
+    private long spilledBytes = 0;
+
+    private final AtomicInteger done = new AtomicInteger();
+    private volatile int total = 0;
+    private volatile int step = 1;
+
+    RunRecorder(File input, File output, List<Transformer> stages, @Nullable RunListener first, @Nullable RunListener second) {
+        this.input = input;
+        this.output = output;
+        this.listener = combine(first, second);
+        this.stages = stages;
+        this.times = new LongAdder[stages.size()];
+        this.entries = new AtomicInteger[stages.size()];
+        this.changed = new AtomicInteger[stages.size()];
+        this.passes = new Passes[stages.size()];
+        for (int x = 0; x < stages.size(); x++) {
+            this.times[x] = new LongAdder();
+            this.entries[x] = new AtomicInteger();
+            this.changed[x] = new AtomicInteger();
+            if (stages.get(x) instanceof VisitorPipeline)
+                this.passes[x] = new Passes(((VisitorPipeline)stages.get(x)).getTransformers().size());
+        }
+    }
+
+    @Nullable
+    static RunListener combine(@Nullable RunListener first, @Nullable RunListener second) {
+        if (first == null)
+            return second;
+        if (second == null)
+            return first;
+        return first.andThen(second);
+    }
+
+    /**
+     * The recorder to tell about class lookups, or {@code null} if nobody is listening to them.
+     */
+    @Nullable
+    RunRecorder forLookups() {
+        return this.listener == null ? null : this;
+    }
+
+    /**
+     * Where the pipeline at the given stage counts the work of each of its transformers,
+     * or {@code null} if the stage isn't a pipeline or nobody is listening.
+     */
+    @Nullable
+    Passes forPasses(int stage) {
+        return this.listener == null ? null : this.passes[stage];
+    }
+
+    /**
+     * Ends the current phase, if any, and starts the next one.
+     */
+    void phase(@Nullable Phase next) {
+        long now = System.nanoTime();
+        if (this.phase != null) {
+            long time = now - this.phaseStart;
+            this.phases.put(this.phase, time);
+            Jfr.INSTANCE.endPhase(this.phaseEvent, this.input.toPath(), this.phase);
+            if (this.listener != null)
+                this.listener.onPhaseEnd(this.phase, time);
+        }
+
+        this.phase = next;
+        this.phaseStart = now;
+        this.phaseEvent = next == null ? null : Jfr.INSTANCE.beginPhase();
+        if (next != null && this.listener != null)
+            this.listener.onPhaseStart(next);
+    }
+
+    /**
+     * Starts counting progress in the current phase.
+     */
+    void progress(int total) {
+        this.done.set(0);
+        this.total = total;
+        this.step = Math.max(1, total / 100);
+    }
+
+    void step() {
+        if (this.listener == null)
+            return;
+
+        int done = this.done.incrementAndGet();
+        if (done % this.step == 0 || done == this.total)
+            this.listener.onProgress(this.phase, done, this.total);
+    }
+
+    void entries(int count) {
+        this.entryCount = count;
+    }
+
+    void spilled(int entries, long bytes) {
+        this.spilledEntries = entries;
+        this.spilledBytes = bytes;
+    }
+
+    void read(long bytes) {
+        this.bytesRead.add(bytes);
+    }
+
+    /**
+     * Runs an entry through a stage of the pipeline, timing it if anyone is listening.
+     */
+    @Nullable
+    Entry process(int stage, Entry entry) {
+        Transformer transformer = this.stages.get(stage);
+        Object event = Jfr.INSTANCE.beginTransform();
+        if (this.listener == null) {
+            Entry ret = entry.process(transformer);
+            Jfr.INSTANCE.endTransform(event, transformer, entry, ret);
+            return ret;
+        }
+
+        long wall = System.nanoTime();
+        long start = time();
+        Entry ret = entry.process(transformer);
+        this.times[stage].add(time() - start);
+        Jfr.INSTANCE.endTransform(event, transformer, entry, ret);
+        this.listener.onTransform(transformer, entry.getName(), wall, System.nanoTime());
+        this.entries[stage].incrementAndGet();
+        if (ret != entry)
+            this.changed[stage].incrementAndGet();
+        return ret;
+    }
+
+    void classResolved(String name, long start) {
+        if (this.listener != null)
+            this.listener.onClassResolve(name, start, System.nanoTime());
+    }
+
+    private static long time() {
+        return CPU_TIME ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * Ends the last phase, and reports the stats of the run.
+     */
+    void finish(long cacheHits, long cacheMisses, long missing) {
+        phase(null);
+        if (this.listener == null)
+            return;
+
+        List<RunStats.TransformerStats> transformers = new ArrayList<>(this.stages.size());
+        for (int x = 0; x < this.stages.size(); x++) {
+            List<RunStats.PassStats> passes = Collections.emptyList();
+            if (this.passes[x] != null) {
+                List<ClassVisitorTransformer> children = ((VisitorPipeline)this.stages.get(x)).getTransformers();
+                passes = new ArrayList<>(children.size());
+                for (int y = 0; y < children.size(); y++)
+                    passes.add(new PassStatsImpl(describe(children.get(y)), this.passes[x].entries[y].get(), this.passes[x].changed[y].get()));
+                passes = Collections.unmodifiableList(passes);
+            }
+            transformers.add(new TransformerStatsImpl(describe(this.stages.get(x)), this.times[x].sum(), this.entries[x].get(), this.changed[x].get(), passes));
+        }
+
+        this.listener.onRunEnd(new Stats(
+            this.input, this.output, System.nanoTime() - this.start, Collections.unmodifiableMap(new LinkedHashMap<>(this.phases)),
+            Collections.unmodifiableList(transformers), this.entryCount, this.bytesRead.sum(), this.output.length(),
+            cacheHits, cacheMisses, missing, this.spilledEntries, this.spilledBytes
+        ));
+    }
+
+    static String describe(Transformer transformer) {
+        if (transformer instanceof VisitorPipeline) {
+            StringBuilder ret = new StringBuilder();
+            for (Transformer child : ((VisitorPipeline)transformer).getTransformers()) {
+                if (ret.length() > 0)
+                    ret.append(" + ");
+                ret.append(describe(child));
+            }
+            return ret.toString();
+        }
+
+        Class<?> cls = transformer.getClass();
+        return cls.isAnonymousClass() || cls.isSynthetic() ? cls.getName() : cls.getSimpleName();
+    }
+
+    /**
+     * Counts the entries each transformer of a {@link VisitorPipeline} worked on. They share a single pass over each class,
+     * so their time can't be told apart, but which of them ran and which made a change can.
+     */
+    static class Passes {
+        private final AtomicInteger[] entries;
+        private final AtomicInteger[] changed;
+
+        private Passes(int size) {
+            this.entries = new AtomicInteger[size];
+            this.changed = new AtomicInteger[size];
+            for (int x = 0; x < size; x++) {
+                this.entries[x] = new AtomicInteger();
+                this.changed[x] = new AtomicInteger();
+            }
+        }
+
+        void ran(int transformer, boolean changed) {
+            this.entries[transformer].incrementAndGet();
+            if (changed)
+                this.changed[transformer].incrementAndGet();
+        }
+    }
+
+    private static class Stats implements RunStats {
+        private final File input;
+        private final File output;
+        private final long totalTime;
+        private final Map<Phase, Long> phases;
+        private final List<TransformerStats> transformers;
+        private final int entries;
+        private final long bytesRead;
+        private final long bytesWritten;
+        private final long cacheHits;
+        private final long cacheMisses;
+        private final long missing;
+        private final int spilledEntries;
+        private final long spilledBytes;
+
+        private Stats(File input, File output, long totalTime, Map<Phase, Long> phases, List<TransformerStats> transformers,
+                int entries, long bytesRead, long bytesWritten, long cacheHits, long cacheMisses, long missing,
+                int spilledEntries, long spilledBytes) {
+            this.input = input;
+            this.output = output;
+            this.totalTime = totalTime;
+            this.phases = phases;
+            this.transformers = transformers;
+            this.entries = entries;
+            this.bytesRead = bytesRead;
+            this.bytesWritten = bytesWritten;
+            this.cacheHits = cacheHits;
+            this.cacheMisses = cacheMisses;
+            this.missing = missing;
+            this.spilledEntries = spilledEntries;
+            this.spilledBytes = spilledBytes;
+        }
+
+        @Override
+        public File getInput() {
+            return this.input;
+        }
+
+        @Override
+        public File getOutput() {
+            return this.output;
+        }
+
+        @Override
+        public long getTotalTime() {
+            return this.totalTime;
+        }
+
+        @Override
+        public Map<Phase, Long> getPhaseTimes() {
+            return this.phases;
+        }
+
+        @Override
+        public List<TransformerStats> getTransformers() {
+            return this.transformers;
+        }
+
+        @Override
+        public int getEntries() {
+            return this.entries;
+        }
+
+        @Override
+        public long getBytesRead() {
+            return this.bytesRead;
+        }
+
+        @Override
+        public long getBytesWritten() {
+            return this.bytesWritten;
+        }
+
+        @Override
+        public long getClassCacheHits() {
+            return this.cacheHits;
+        }
+
+        @Override
+        public long getClassCacheMisses() {
+            return this.cacheMisses;
+        }
+
+        @Override
+        public long getMissingClasses() {
+            return this.missing;
+        }
+
+        @Override
+        public int getSpilledEntries() {
+            return this.spilledEntries;
+        }
+
+        @Override
+        public long getSpilledBytes() {
+            return this.spilledBytes;
+        }
+    }
+
+    private static class TransformerStatsImpl implements RunStats.TransformerStats {
+        private final String name;
+        private final long time;
+        private final int entries;
+        private final int changed;
+        private final List<RunStats.PassStats> passes;
+
+        private TransformerStatsImpl(String name, long time, int entries, int changed, List<RunStats.PassStats> passes) {
+            this.name = name;
+            this.time = time;
+            this.entries = entries;
+            this.changed = changed;
+            this.passes = passes;
+        }
+
+        @Override
+        public String getName() {
+            return this.name;
+        }
+
+        @Override
+        public long getTime() {
+            return this.time;
+        }
+
+        @Override
+        public int getEntries() {
+            return this.entries;
+        }
+
+        @Override
+        public int getChanged() {
+            return this.changed;
+        }
+
+        @Override
+        public List<RunStats.PassStats> getPasses() {
+            return this.passes;
+        }
+    }
+
+    private static class PassStatsImpl implements RunStats.PassStats {
+        private final String name;
+        private final int entries;
+        private final int changed;
+
+        private PassStatsImpl(String name, int entries, int changed) {
+            this.name = name;
+            this.entries = entries;
+            this.changed = changed;
+        }
+
+        @Override
+        public String getName() {
+            return this.name;
+        }
+
+        @Override
+        public int getEntries() {
+            return this.entries;
+        }
+
+        @Override
+        public int getChanged() {
+            return this.changed;
+        }
+    }
+}
@@ -4,6 +4,7 @@
  */
 package net.minecraftforge.fart.internal;
 
+import net.minecraftforge.fart.api.Logger;
 import net.minecraftforge.fart.api.SignatureStripperConfig;
 import net.minecraftforge.fart.api.Transformer;
 
@@ -18,14 +19,24 @@ import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 
 public class SignatureStripperTransformer implements Transformer {
-    private final Consumer<String> log;
+    private static final Interest INTEREST = Interest.kinds(Interest.Kind.MANIFEST).or(Interest.prefixes(Interest.Kind.RESOURCE, "META-INF/"));
+    private final Logger log;
     private final SignatureStripperConfig config;
 
     public SignatureStripperTransformer(Consumer<String> log, SignatureStripperConfig config) {
+        this(Logger.of(log, null), config);
+    }
+
+    public SignatureStripperTransformer(Logger log, SignatureStripperConfig config) {
         this.log = log;
         this.config = config;
     }
 
+    @Override
+    public Interest getInterest() {
+        return INTEREST;
+    }
+
     @Override
     public ManifestEntry process(ManifestEntry entry) {
         // Remove all signature entries
@@ -58,7 +69,7 @@ public class SignatureStripperTransformer implements Transformer {
                 }
             }
         } catch (final IOException ex) {
-            log.accept("Failed to remove signature entries from manifest: " + ex);
+            log.warn("Failed to remove signature entries from manifest: " + ex);
         }
         return entry;
     }
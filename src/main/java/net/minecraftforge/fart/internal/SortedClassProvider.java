@@ -5,44 +5,71 @@
 package net.minecraftforge.fart.internal;
 
 import net.minecraftforge.fart.api.ClassProvider;
+import net.minecraftforge.fart.api.Logger;
 
 import java.io.IOException;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.Consumer;
+import java.util.concurrent.atomic.LongAdder;
 
 class SortedClassProvider implements ClassProvider {
     List<ClassProvider> classProviders;
-    private final Consumer<String> log;
-    private final Map<String, Optional<? extends IClassInfo>> classCache = new ConcurrentHashMap<>();
+    private final Logger log;
+    private final MemoizingCache<String, Optional<? extends IClassInfo>> classCache = new MemoizingCache<>(this::computeClassInfo);
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder computed = new LongAdder();
+    /** Every class that wasn't found, to log them all at once at the end of the run rather than one line at a time. */
+    private final Set<String> missing = ConcurrentHashMap.newKeySet();
 
-    SortedClassProvider(List<ClassProvider> classProviders, Consumer<String> log) {
+    SortedClassProvider(List<ClassProvider> classProviders, Logger log) {
         this.classProviders = classProviders;
         this.log = log;
     }
 
     @Override
     public Optional<? extends IClassInfo> getClass(String cls) {
-        return this.classCache.computeIfAbsent(cls, this::computeClassInfo);
+        this.lookups.increment();
+        return this.classCache.get(cls);
     }
 
     private Optional<? extends IClassInfo> computeClassInfo(String name) {
+        this.computed.increment();
+        Object event = Jfr.INSTANCE.beginClassLookup();
         for (ClassProvider classProvider : this.classProviders) {
             Optional<? extends IClassInfo> classInfo = classProvider.getClass(name);
 
-            if (classInfo.isPresent())
+            if (classInfo.isPresent()) {
+                Jfr.INSTANCE.endClassLookup(event, name, true);
                 return classInfo;
+            }
         }
 
-        this.log.accept("Can't Find Class: " + name);
+        Jfr.INSTANCE.endClassLookup(event, name, false);
+        this.missing.add(name);
+        this.log.debug(() -> "Can't Find Class: " + name);
 
         return Optional.empty();
     }
 
     void clearCache() {
         this.classCache.clear();
+        this.lookups.reset();
+        this.computed.reset();
+        this.missing.clear();
+    }
+
+    long getCacheHits() {
+        return this.lookups.sum() - this.computed.sum();
+    }
+
+    long getCacheMisses() {
+        return this.computed.sum();
+    }
+
+    Set<String> getMissing() {
+        return this.missing;
     }
 
     @Override
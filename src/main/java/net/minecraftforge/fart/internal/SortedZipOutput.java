@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.fart.internal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+
+import org.jetbrains.annotations.Nullable;
+
+import net.minecraftforge.fart.api.Logger;
+import net.minecraftforge.fart.api.Transformer.Entry;
+
+/**
+ * Collects the output of the transformers while they are still running, and writes it in a stable order once everything is done.
+ * <p>
+ * Entries are encoded by whichever thread hands them over, which in practice means the workers of the {@link AsyncHelper}
+ * that ran the transformers, so compression is spread over the whole pool. Only the encoded form is kept around, in a
+ * reorder buffer sorted the same way the output has always been sorted: the manifest first, then everything else by name.
+ * Once the last entry is in, writing the file is a straight copy.
+ * <p>
+ * Each entry is compressed as a single stream. Splitting large entries into independently compressed blocks would
+ * change the compressed bytes, and the output is expected to be identical to what {@link java.util.zip.ZipOutputStream}
+ * would write at level 6.
+ * <p>
+ * The encoded data held on the heap is limited to a memory budget. Once it is used up, the data of every entry that
+ * follows is spilled to a temporary file, and read back one entry at a time while writing. Which entries are spilled
+ * depends on the order they come in, but the bytes written are the same either way.
+ * <p>
+ * Entries can also be {@linkplain #accept(Entry, long) streamed}, those are read and encoded by the thread writing
+ * the file instead, and nothing of them is held but their name.
+ * <p>
+ * With a {@link BufferPool}, the encoded data is held in direct memory instead of the heap, so that it doesn't have to
+ * be copied around by the garbage collector for the whole run. Each entry's memory goes back to the pool as soon as
+ * it is written.
+ */
+class SortedZipOutput implements Closeable {
+    static final String MANIFEST_NAME = "META-INF/MANIFEST.MF";
+
+    private final boolean stored;
+    private final long budget;
+    @Nullable
+    private final BufferPool pool;
+    private final ConcurrentSkipListMap<String, RawEntry> sorted = new ConcurrentSkipListMap<>(SortedZipOutput::compare);
+    private final List<String> dupes = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicLong held = new AtomicLong();
+    private final AtomicInteger spilledEntries = new AtomicInteger();
+    private final AtomicLong spilledBytes = new AtomicLong();
+    @Nullable
+    private volatile SpillFile spill;
+
+    /**
+     * @param stored {@code true} to store entries without compression, for intermediate files where size doesn't matter
+     * @param budget the most bytes of encoded data to hold in memory, before spilling to disk
+     * @param pool the pool to hold the encoded data in, or {@code null} to hold it on the heap
+     */
+    SortedZipOutput(boolean stored, long budget, @Nullable BufferPool pool) {
+        this.stored = stored;
+        this.budget = budget;
+        this.pool = pool;
+    }
+
+    /**
+     * Encodes a transformed entry on the calling thread and adds it to the reorder buffer.
+     */
+    void accept(Entry entry) {
+        ByteBuffer data = entry.getDataBuffer();
+        if (!this.stored) {
+            accept(RawEntry.deflated(entry.getName(), entry.getTime(), data));
+            return;
+        }
+
+        // Direct data may be released as soon as the entry has been processed, so it can't be kept as is
+        if (data.isDirect())
+            data = ByteBuffer.wrap(entry.getData());
+        accept(RawEntry.stored(entry.getName(), entry.getTime(), data));
+    }
+
+    /**
+     * Adds an entry that is only read, and encoded, while the output is written, so that its data is never held in
+     * memory. The entry's stream must stay readable until then, and the CRC is that of its data.
+     */
+    void accept(Entry entry, long crc) {
+        accept(RawEntry.streamed(entry.getName(), entry.getTime(), this.stored ? ZipEntry.STORED : ZipEntry.DEFLATED, crc, entry.size(), entry::openStream));
+    }
+
+    /**
+     * Returns {@code true} if data encoded with the given zip method can be copied to this output as is.
+     */
+    boolean canCopy(int method) {
+        return method == (this.stored ? ZipEntry.STORED : ZipEntry.DEFLATED);
+    }
+
+    /**
+     * Adds an entry that is already encoded to the reorder buffer.
+     * Data held in memory is copied to the pool when there is one, so pooled input can be released once this returns.
+     *
+     * @see #canCopy(int)
+     */
+    void accept(RawEntry raw) {
+        if (raw.isHeld()) {
+            long size = raw.getCompressedSize();
+            if (this.held.addAndGet(size) > this.budget) {
+                this.held.addAndGet(-size);
+                raw = spill(raw);
+            } else if (this.pool != null) {
+                raw = raw.toPool(this.pool);
+            }
+        }
+
+        if (this.sorted.putIfAbsent(raw.getName(), raw) != null)
+            this.dupes.add(raw.getName());
+    }
+
+    private RawEntry spill(RawEntry raw) {
+        try {
+            RawEntry ret = raw.spill(getSpill());
+            this.spilledEntries.incrementAndGet();
+            this.spilledBytes.addAndGet(raw.getCompressedSize());
+            return ret;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not spill entry to disk: " + raw.getName(), e);
+        }
+    }
+
+    private SpillFile getSpill() throws IOException {
+        SpillFile ret = this.spill;
+        if (ret == null) {
+            synchronized (this) {
+                ret = this.spill;
+                if (ret == null)
+                    this.spill = ret = SpillFile.create();
+            }
+        }
+        return ret;
+    }
+
+    int getSpilledEntries() {
+        return this.spilledEntries.get();
+    }
+
+    long getSpilledBytes() {
+        return this.spilledBytes.get();
+    }
+
+    /**
+     * Writes every accepted entry to the zip file.
+     * The output file is not touched if there are duplicate entries.
+     */
+    void write(File output, Logger logger) throws IOException {
+        if (!this.dupes.isEmpty())
+            throw new IllegalStateException("Duplicate entries detected: " + this.dupes.stream().sorted().collect(Collectors.joining(", ")));
+
+        if (!output.getParentFile().exists())
+            output.getParentFile().mkdirs();
+
+        logger.info("Writing Output: " + output.getAbsolutePath());
+        Set<String> seen = new HashSet<>();
+        try (ZipWriter zip = new ZipWriter(new FileOutputStream(output))) {
+            for (RawEntry e : this.sorted.values()) {
+                String name = e.getName();
+                int idx = name.lastIndexOf('/');
+                if (idx != -1)
+                    addDirectory(zip, seen, name.substring(0, idx), logger);
+
+                logger.verbose(() -> "  " + name);
+                zip.write(e);
+                e.release();
+            }
+        }
+    }
+
+    // Tho Directory entries are not strictly necessary, we add them because some bad implementations of Zip extractors
+    // attempt to extract files without making sure the parents exist.
+    private void addDirectory(ZipWriter zip, Set<String> seen, String path, Logger logger) throws IOException {
+        if (!seen.add(path))
+            return;
+
+        int idx = path.lastIndexOf('/');
+        if (idx != -1)
+            addDirectory(zip, seen, path.substring(0, idx), logger);
+
+        logger.verbose(() -> "  " + path + '/');
+        zip.write(RawEntry.directory(path + '/', this.stored));
+    }
+
+    /**
+     * Releases the pooled data and deletes the spilled data, if any.
+     */
+    @Override
+    public void close() throws IOException {
+        for (RawEntry e : this.sorted.values())
+            e.release();
+        this.sorted.clear();
+
+        SpillFile spill = this.spill;
+        this.spill = null;
+        if (spill != null)
+            spill.close();
+    }
+
+    private static int compare(String o1, String o2) {
+        // In order for JarInputStream to work, MANIFEST has to be the first entry, so make it first!
+        if (MANIFEST_NAME.equals(o1))
+            return MANIFEST_NAME.equals(o2) ? 0 : -1;
+        if (MANIFEST_NAME.equals(o2))
+            return MANIFEST_NAME.equals(o1) ? 0 :  1;
+        return o1.compareTo(o2);
+    }
+}
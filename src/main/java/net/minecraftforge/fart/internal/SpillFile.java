@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.fart.internal;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A temporary file to park encoded output in while it waits to be written, so that it doesn't have to stay on the heap.
+ * <p>
+ * Every write gets its own range of the file up front, so any number of threads can write at once. The file is deleted
+ * once it is closed, or at the latest when the JVM exits.
+ */
+class SpillFile implements Closeable {
+    private final FileChannel channel;
+    private final AtomicLong end = new AtomicLong();
+
+    private SpillFile(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    static SpillFile create() throws IOException {
+        Path path = Files.createTempFile("fart-spill", ".bin");
+        try {
+            return new SpillFile(FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE));
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+    }
+
+    /**
+     * Appends the remaining data of the buffer, without moving its position.
+     *
+     * @return the offset to read the data back from
+     */
+    long write(ByteBuffer data) throws IOException {
+        ByteBuffer buf = data.duplicate();
+        long offset = this.end.getAndAdd(buf.remaining());
+        long position = offset;
+        while (buf.hasRemaining())
+            position += this.channel.write(buf, position);
+        return offset;
+    }
+
+    ByteBuffer read(long offset, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        long position = offset;
+        while (buf.hasRemaining()) {
+            int read = this.channel.read(buf, position);
+            if (read < 0)
+                throw new EOFException("Spilled data ends before " + (offset + length));
+            position += read;
+        }
+        buf.flip();
+        return buf;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.fart.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Map;
+
+import net.minecraftforge.fart.api.RunStats;
+
+/**
+ * Writes the stats of runs as JSON, for the --stats option. Times are in milliseconds.
+ */
+public final class StatsJson {
+    private final StringBuilder buf = new StringBuilder();
+    private int depth = 0;
+    private boolean first = true;
+
+    private StatsJson() {}
+
+    public static void write(File file, RunStats[] runs) throws IOException {
+        StatsJson json = new StatsJson();
+        json.begin(null, '[');
+        for (RunStats run : runs) {
+            if (run != null)
+                json.run(run);
+        }
+        json.end(']');
+        json.buf.append('\n');
+        Files.write(file.toPath(), json.buf.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void run(RunStats run) {
+        begin(null, '{');
+        value("input", run.getInput().getAbsolutePath());
+        value("output", run.getOutput().getAbsolutePath());
+        value("totalMillis", millis(run.getTotalTime()));
+        value("entries", run.getEntries());
+        value("bytesRead", run.getBytesRead());
+        value("bytesWritten", run.getBytesWritten());
+
+        begin("phases", '{');
+        for (Map.Entry<RunStats.Phase, Long> phase : run.getPhaseTimes().entrySet())
+            value(phase.getKey().name().toLowerCase(Locale.ROOT), millis(phase.getValue()));
+        end('}');
+
+        begin("transformers", '[');
+        for (RunStats.TransformerStats transformer : run.getTransformers()) {
+            begin(null, '{');
+            value("name", transformer.getName());
+            value("cpuMillis", millis(transformer.getTime()));
+            value("entries", transformer.getEntries());
+            value("changed", transformer.getChanged());
+            if (!transformer.getPasses().isEmpty()) {
+                begin("passes", '[');
+                for (RunStats.PassStats pass : transformer.getPasses()) {
+                    begin(null, '{');
+                    value("name", pass.getName());
+                    value("entries", pass.getEntries());
+                    value("changed", pass.getChanged());
+                    end('}');
+                }
+                end(']');
+            }
+            end('}');
+        }
+        end(']');
+
+        begin("classCache", '{');
+        value("hits", run.getClassCacheHits());
+        value("misses", run.getClassCacheMisses());
+        value("missing", run.getMissingClasses());
+        end('}');
+
+        begin("spilled", '{');
+        value("entries", run.getSpilledEntries());
+        value("bytes", run.getSpilledBytes());
+        end('}');
+        end('}');
+    }
+
+    private static BigDecimal millis(long nanos) {
+        return BigDecimal.valueOf(nanos).movePointLeft(6).setScale(3, RoundingMode.HALF_UP);
+    }
+
+    private void key(String key) {
+        if (this.depth > 0) {
+            if (!this.first)
+                this.buf.append(',');
+            this.buf.append('\n');
+            indent();
+        }
+        this.first = false;
+        if (key != null)
+            this.buf.append('"').append(key).append("\": ");
+    }
+
+    private void indent() {
+        for (int x = 0; x < this.depth; x++)
+            this.buf.append("  ");
+    }
+
+    private void begin(String key, char bracket) {
+        key(key);
+        this.buf.append(bracket);
+        this.depth++;
+        this.first = true;
+    }
+
+    private void end(char bracket) {
+        this.depth--;
+        if (!this.first) {
+            this.buf.append('\n');
+            indent();
+        }
+        this.buf.append(bracket);
+        this.first = false;
+    }
+
+    private void value(String key, Object value) {
+        key(key);
+        if (value instanceof String)
+            string((String)value);
+        else
+            this.buf.append(value);
+    }
+
+    private void string(String value) {
+        try {
+            Util.writeJsonString(this.buf, value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // StringBuilders don't throw
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.fart.internal;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.ref.WeakReference;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.jetbrains.annotations.Nullable;
+
+import net.minecraftforge.fart.api.RunStats;
+import net.minecraftforge.fart.api.TraceRecorder;
+import net.minecraftforge.fart.api.Transformer;
+
+/**
+ * Keeps the spans of each thread in a list only that thread adds to, so that recording doesn't contend between
+ * workers. The lists are only read when writing, once the runs are done.
+ */
+public class TraceRecorderImpl implements TraceRecorder {
+    private final long origin = System.nanoTime();
+    private final Queue<Spans> threads = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Spans> current = ThreadLocal.withInitial(this::register);
+    private final Map<Transformer, String> names = new ConcurrentHashMap<>();
+
+    private Spans register() {
+        Spans ret = new Spans(Thread.currentThread());
+        this.threads.add(ret);
+        return ret;
+    }
+
+    @Override
+    public void onPhaseEnd(RunStats.Phase phase, long time) {
+        long end = System.nanoTime();
+        this.current.get().add("phase", phase.name().toLowerCase(Locale.ROOT), end - time, end, null);
+    }
+
+    @Override
+    public void onTransform(Transformer transformer, String entry, long start, long end) {
+        String name = this.names.computeIfAbsent(transformer, RunRecorder::describe);
+        this.current.get().add("transform", name, start, end, entry);
+    }
+
+    @Override
+    public void onClassResolve(String name, long start, long end) {
+        this.current.get().add("resolve", name, start, end, null);
+    }
+
+    @Override
+    public void onRunEnd(RunStats stats) {
+        long end = System.nanoTime();
+        this.current.get().add("run", stats.getInput().getName(), end - stats.getTotalTime(), end, stats.getInput().getAbsolutePath());
+    }
+
+    @Override
+    public void write(File file) throws IOException {
+        try (Writer out = new BufferedWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))) {
+            out.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n");
+            out.write("{\"ph\":\"M\",\"pid\":1,\"name\":\"process_name\",\"args\":{\"name\":\"Forge Auto Renaming Tool\"}}");
+            for (Spans spans : this.threads) {
+                if (spans.spans.isEmpty())
+                    continue;
+
+                out.write(",\n{\"ph\":\"M\",\"pid\":1,\"tid\":" + spans.id + ",\"name\":\"thread_name\",\"args\":{\"name\":");
+                Util.writeJsonString(out, spans.name);
+                out.write("}}");
+
+                for (Span span : spans.spans) {
+                    out.write(",\n{\"ph\":\"X\",\"pid\":1,\"tid\":" + spans.id + ",\"cat\":\"" + span.category + "\",\"name\":");
+                    Util.writeJsonString(out, span.name);
+                    out.write(",\"ts\":" + micros(span.start - this.origin) + ",\"dur\":" + micros(span.end - span.start));
+                    if (span.detail != null) {
+                        out.write(",\"args\":{\"detail\":");
+                        Util.writeJsonString(out, span.detail);
+                        out.write('}');
+                    }
+                    out.write('}');
+                }
+            }
+            out.write("\n]}\n");
+        }
+    }
+
+    @Override
+    public void clear() {
+        // Every run uses new worker threads, so forget the ones that are gone for good
+        this.threads.removeIf(spans -> !spans.isAlive());
+        for (Spans spans : this.threads)
+            spans.spans.clear();
+    }
+
+    /** Trace timestamps are in microseconds, keep the nanoseconds as fractions so short spans don't become zero. */
+    private static String micros(long nanos) {
+        return BigDecimal.valueOf(nanos, 3).toPlainString();
+    }
+
+    private static class Spans {
+        private final WeakReference<Thread> thread;
+        private final long id;
+        private final String name;
+        private final List<Span> spans = new ArrayList<>();
+
+        private Spans(Thread thread) {
+            this.thread = new WeakReference<>(thread);
+            this.id = thread.getId();
+            this.name = thread.getName();
+        }
+
+        private boolean isAlive() {
+            Thread thread = this.thread.get();
+            return thread != null && thread.isAlive();
+        }
+
+        private void add(String category, String name, long start, long end, @Nullable String detail) {
+            this.spans.add(new Span(category, name, start, end, detail));
+        }
+    }
+
+    private static class Span {
+        private final String category;
+        private final String name;
+        private final long start;
+        private final long end;
+        @Nullable
+        private final String detail;
+
+        private Span(String category, String name, long start, long end, @Nullable String detail) {
+            this.category = category;
+            this.name = name;
+            this.start = start;
+            this.end = end;
+            this.detail = detail;
+        }
+    }
+}
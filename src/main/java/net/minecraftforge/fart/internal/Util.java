@@ -38,6 +38,29 @@ class Util {
         }
     }
 
+    /**
+     * Writes a string as a quoted JSON string, for the stats and trace files.
+     */
+    public static void writeJsonString(Appendable out, String value) throws IOException {
+        out.append('"');
+        for (int x = 0; x < value.length(); x++) {
+            char c = value.charAt(x);
+            switch (c) {
+                case '"':  out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    if (c < 0x20)
+                        out.append(String.format("\\u%04x", (int)c));
+                    else
+                        out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
     public static String nameToBytecode(Class<?> cls) {
         return cls == null ? null : cls.getName().replace('.', '/');
     }
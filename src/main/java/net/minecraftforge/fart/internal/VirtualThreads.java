@@ -0,0 +1,23 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.fart.internal;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Virtual threads need Java 21, the multi-release jar replaces this with a version that has them when running on it.
+ */
+class VirtualThreads {
+    static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * Creates an executor that runs every task on a new virtual thread.
+     */
+    static ExecutorService create() {
+        throw new UnsupportedOperationException("Virtual threads need Java 21 or newer, and FART to be run from its jar");
+    }
+}
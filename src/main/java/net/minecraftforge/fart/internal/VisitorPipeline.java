@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.fart.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+
+import net.minecraftforge.fart.api.ClassVisitorTransformer;
+import net.minecraftforge.fart.api.Transformer;
+
+/**
+ * Runs a chain of {@link ClassVisitorTransformer}s over each class in a single parse and write.
+ * Non class entries are handed to each transformer in turn, just like any other transformer.
+ * <p>
+ * Each transformer only sees the entries it is {@linkplain Transformer#getInterest() interested} in. For classes that
+ * is decided by the name the class has by the time it gets to that transformer, as an earlier one may rename it.
+ * A renamed class was wanted by whoever renamed it, so the chain as a whole wants any entry one of its transformers wants.
+ */
+public class VisitorPipeline implements Transformer {
+    private final List<ClassVisitorTransformer> transformers;
+    private final Interest interest;
+    @Nullable
+    private volatile RunRecorder.Passes passes;
+
+    private VisitorPipeline(List<ClassVisitorTransformer> transformers) {
+        this.transformers = transformers;
+        Interest interest = Interest.NONE;
+        for (Transformer transformer : transformers)
+            interest = interest.or(transformer.getInterest());
+        this.interest = interest;
+    }
+
+    /**
+     * Groups consecutive visitor transformers into pipelines, keeping everything else as is.
+     */
+    static List<Transformer> fuse(List<Transformer> transformers) {
+        List<Transformer> ret = new ArrayList<>();
+        List<ClassVisitorTransformer> group = new ArrayList<>();
+        for (Transformer transformer : transformers) {
+            if (transformer instanceof ClassVisitorTransformer) {
+                group.add((ClassVisitorTransformer)transformer);
+                continue;
+            }
+            addGroup(ret, group);
+            group = new ArrayList<>();
+            ret.add(transformer);
+        }
+        addGroup(ret, group);
+        return ret;
+    }
+
+    private static void addGroup(List<Transformer> ret, List<ClassVisitorTransformer> group) {
+        if (group.size() == 1)
+            ret.add(group.get(0));
+        else if (!group.isEmpty())
+            ret.add(new VisitorPipeline(group));
+    }
+
+    List<ClassVisitorTransformer> getTransformers() {
+        return this.transformers;
+    }
+
+    /**
+     * Sets where to count the entries each transformer of the run that is using this pipeline worked on.
+     */
+    void setRecorder(@Nullable RunRecorder.Passes passes) {
+        this.passes = passes;
+    }
+
+    public static ClassEntry run(ClassEntry entry, List<ClassVisitorTransformer> transformers) {
+        return run(entry, transformers, null);
+    }
+
+    private static ClassEntry run(ClassEntry entry, List<ClassVisitorTransformer> transformers, @Nullable RunRecorder.Passes stats) {
+        String name = entry.getClassName();
+        List<ClassVisitorTransformer.Pass> passes = new ArrayList<>(transformers.size());
+        // The index of the transformer each pass belongs to, only needed to count them
+        int[] indices = stats == null ? null : new int[transformers.size()];
+        for (int x = 0; x < transformers.size(); x++) {
+            ClassVisitorTransformer transformer = transformers.get(x);
+            if (!transformer.getInterest().wants(Interest.Kind.CLASS, getEntryName(entry, name)))
+                continue;
+            ClassVisitorTransformer.Pass pass = transformer.begin(entry, name);
+            if (pass == null)
+                continue;
+            if (indices != null)
+                indices[passes.size()] = x;
+            passes.add(pass);
+            name = pass.mapClassName(name);
+        }
+
+        if (passes.isEmpty())
+            return entry;
+
+        // Reading the header and constant pool is cheap next to parsing and writing the whole class,
+        // so let the passes that can tell from those alone that they have nothing to do bow out first.
+        ClassReader reader = new ClassReader(entry.getData());
+        int accepted = 0;
+        for (int x = 0; x < passes.size(); x++) {
+            ClassVisitorTransformer.Pass pass = passes.get(x);
+            if (!pass.accepts(reader))
+                continue;
+            if (indices != null)
+                indices[accepted] = indices[x];
+            passes.set(accepted++, pass);
+        }
+        passes.subList(accepted, passes.size()).clear();
+        if (passes.isEmpty())
+            return entry;
+
+        name = entry.getClassName();
+        boolean copyPool = true;
+        for (ClassVisitorTransformer.Pass pass : passes) {
+            name = pass.mapClassName(name);
+            copyPool &= pass.copyConstantPool();
+        }
+
+        ClassWriter writer = copyPool ? new ClassWriter(reader, 0) : new ClassWriter(0);
+        ClassVisitor visitor = writer;
+        for (int x = passes.size() - 1; x >= 0; x--)
+            visitor = passes.get(x).visitor(visitor);
+
+        reader.accept(visitor, 0);
+
+        boolean madeChange = false;
+        for (int x = 0; x < passes.size(); x++) {
+            boolean changed = passes.get(x).madeChange();
+            if (stats != null)
+                stats.ran(indices[x], changed);
+            madeChange |= changed;
+        }
+
+        if (!madeChange)
+            return entry;
+
+        byte[] data = writer.toByteArray();
+        if (entry.isMultiRelease())
+            return ClassEntry.create(name, entry.getTime(), data, entry.getVersion());
+        return ClassEntry.create(name + ".class", entry.getTime(), data);
+    }
+
+    private static String getEntryName(ClassEntry entry, String className) {
+        if (className.equals(entry.getClassName()))
+            return entry.getName();
+        return entry.isMultiRelease() ? "META-INF/versions/" + entry.getVersion() + '/' + className + ".class" : className + ".class";
+    }
+
+    @Override
+    public Interest getInterest() {
+        return this.interest;
+    }
+
+    @Override
+    public ClassEntry process(ClassEntry entry) {
+        return run(entry, this.transformers, this.passes);
+    }
+
+    @Override
+    public ManifestEntry process(ManifestEntry entry) {
+        RunRecorder.Passes stats = this.passes;
+        for (int x = 0; x < this.transformers.size(); x++) {
+            Transformer transformer = this.transformers.get(x);
+            if (!transformer.getInterest().wants(entry))
+                continue;
+            ManifestEntry ret = transformer.process(entry);
+            if (stats != null)
+                stats.ran(x, ret != entry);
+            if (ret == null)
+                return null;
+            entry = ret;
+        }
+        return entry;
+    }
+
+    @Override
+    public ResourceEntry process(ResourceEntry entry) {
+        RunRecorder.Passes stats = this.passes;
+        for (int x = 0; x < this.transformers.size(); x++) {
+            Transformer transformer = this.transformers.get(x);
+            if (!transformer.getInterest().wants(entry))
+                continue;
+            ResourceEntry ret = transformer.process(entry);
+            if (stats != null)
+                stats.ran(x, ret != entry);
+            if (ret == null)
+                return null;
+            entry = ret;
+        }
+        return entry;
+    }
+
+    @Override
+    public Collection<? extends Entry> getExtras() {
+        List<Entry> ret = new ArrayList<>();
+        for (Transformer transformer : this.transformers)
+            ret.addAll(transformer.getExtras());
+        return ret;
+    }
+}
@@ -0,0 +1,528 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.fart.internal;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A minimal zip reader which, unlike {@link java.util.zip.ZipFile}, gives access to the compressed data of an entry
+ * along with its CRC and sizes, so that entries nobody changed can be copied to the output as is.
+ * <p>
+ * The archive is memory mapped, and only the central directory is parsed up front, into one small {@link Record}
+ * per entry. Entry data is handed out as slices of the mapping, so nothing is copied until it is inflated, and a
+ * single reader can be shared by any number of threads. Times are decoded the same way {@code ZipFile} decodes them.
+ * <p>
+ * A file that is about to be overwritten must not be mapped, as truncating a mapped file is fatal on some platforms and
+ * impossible on others. Such files can be opened without mapping, in which case all data is read into the heap.
+ */
+class ZipReader implements Closeable {
+    private static final int LOCSIG = 0x04034b50;
+    private static final int CENSIG = 0x02014b50;
+    private static final int ENDSIG = 0x06054b50;
+    private static final int ZIP64_ENDSIG = 0x06064b50;
+    private static final int ZIP64_LOCSIG = 0x07064b50;
+    private static final int ENDHDR = 22;
+    private static final int LOCHDR = 30;
+    private static final int CENHDR = 46;
+    private static final int ZIP64_LOCHDR = 20;
+    private static final long ZIP64_MAGICVAL = 0xFFFFFFFFL;
+    private static final int ZIP64_EXTID = 0x0001;
+    private static final int EXTID_NTFS = 0x000a;
+    private static final int EXTID_EXTT = 0x5455;
+    private static final long WINDOWS_EPOCH_IN_MICROSECONDS = -11644473600000000L;
+    private static final long WINDOWS_TIME_NOT_AVAILABLE = Long.MIN_VALUE;
+
+    private static final int SEGMENT_SIZE = 1 << 30;
+    private static final ThreadLocal<byte[]> INFLATE_BUFFER = ThreadLocal.withInitial(() -> new byte[0x2000]);
+    private static final ThreadLocal<byte[]> INFLATE_OUTPUT = ThreadLocal.withInitial(() -> new byte[0x8000]);
+
+    private final Path path;
+    private final FileChannel channel;
+    @Nullable
+    private final MappedByteBuffer[] segments;
+    private final List<Record> records;
+    private volatile boolean closed = false;
+
+    private ZipReader(Path path, boolean map) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            this.segments = map ? map(this.channel) : null;
+            this.records = Collections.unmodifiableList(readCentralDirectory());
+        } catch (IOException | RuntimeException e) {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens and maps a zip file.
+     */
+    static ZipReader open(Path path) throws IOException {
+        return new ZipReader(path, true);
+    }
+
+    /**
+     * Opens a zip file, optionally without mapping it.
+     *
+     * @param map {@code false} to read the data with plain file reads instead, for files that will be written to while open
+     */
+    static ZipReader open(Path path, boolean map) throws IOException {
+        return new ZipReader(path, map);
+    }
+
+    // A single mapping can't be larger than 2GB, so large files get split into multiple segments.
+    private static MappedByteBuffer[] map(FileChannel channel) throws IOException {
+        long size = channel.size();
+        MappedByteBuffer[] ret = new MappedByteBuffer[(int)((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+        for (int x = 0; x < ret.length; x++) {
+            long start = (long)x * SEGMENT_SIZE;
+            ret[x] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size - start));
+        }
+        return ret;
+    }
+
+    /**
+     * Returns every entry in the archive, in central directory order, including directories.
+     */
+    List<Record> getRecords() {
+        return this.records;
+    }
+
+    Path getPath() {
+        return this.path;
+    }
+
+    /**
+     * Reads and decompresses the data of an entry.
+     */
+    byte[] read(Record record) throws IOException {
+        byte[] data = new byte[checkSize(record)];
+        read(record, ByteBuffer.wrap(data));
+        return data;
+    }
+
+    /**
+     * Reads and decompresses the data of an entry into the given buffer, which must have room for all of it.
+     * Buffers without an array, such as direct buffers, are filled in chunks.
+     */
+    void read(Record record, ByteBuffer dst) throws IOException {
+        int size = checkSize(record);
+        ByteBuffer raw = getRawData(record);
+        if (record.method == ZipEntry.STORED) {
+            dst.put(raw);
+            return;
+        }
+        if (record.method != ZipEntry.DEFLATED)
+            throw new ZipException("Unsupported compression method " + record.method + " for " + record.name + " in " + this.path);
+
+        // Java 8's Inflater can only read from arrays, so feed it in chunks instead of copying the whole compressed entry
+        byte[] chunk = INFLATE_BUFFER.get();
+        // And it can only write to arrays, so inflate straight into the buffer's array when it has one
+        boolean direct = !dst.hasArray();
+        byte[] out = direct ? INFLATE_OUTPUT.get() : dst.array();
+        int base = direct ? 0 : dst.arrayOffset() + dst.position();
+        Inflater inf = new Inflater(true);
+        try {
+            int len = 0;
+            while (len < size) {
+                if (inf.needsInput()) {
+                    if (!raw.hasRemaining())
+                        break;
+                    int cnt = Math.min(chunk.length, raw.remaining());
+                    raw.get(chunk, 0, cnt);
+                    inf.setInput(chunk, 0, cnt);
+                }
+                int read = direct ? inf.inflate(out, 0, Math.min(out.length, size - len)) : inf.inflate(out, base + len, size - len);
+                if (read == 0 && (inf.finished() || inf.needsDictionary()))
+                    break;
+                if (direct)
+                    dst.put(out, 0, read);
+                len += read;
+            }
+            if (len != size)
+                throw new ZipException("Invalid entry size for " + record.name + " (expected " + size + " but got " + len + " bytes)");
+            if (!direct)
+                ((Buffer)dst).position(dst.position() + len);
+        } catch (DataFormatException e) {
+            throw new ZipException("Invalid compressed data for " + record.name + ": " + e.getMessage());
+        } finally {
+            inf.end();
+        }
+    }
+
+    private static int checkSize(Record record) throws ZipException {
+        if (record.size > Integer.MAX_VALUE)
+            throw new ZipException("Entry too large to read into memory: " + record.name);
+        return (int)record.size;
+    }
+
+    /**
+     * Returns the entry exactly as it is stored in the archive, ready to be written to another zip file without re-encoding it.
+     * The data is not copied, so the returned entry is only valid until this reader is closed.
+     */
+    RawEntry readRaw(Record record) throws IOException {
+        return RawEntry.raw(record.name, record.time, record.method, record.crc, record.size, getRawData(record));
+    }
+
+    /**
+     * Returns the compressed data of an entry. When the archive is mapped, this is a read only slice of the mapping
+     * and is only valid until this reader is closed.
+     */
+    ByteBuffer getRawData(Record record) throws IOException {
+        if (record.csize > Integer.MAX_VALUE)
+            throw new ZipException("Entry too large to read into memory: " + record.name);
+
+        return buffer(dataStart(record), (int)record.csize);
+    }
+
+    /**
+     * Opens a stream of the decompressed data of an entry, which is read from the file as the stream is read.
+     * Unlike the other ways of reading an entry this works for entries of any size, and only holds a small buffer.
+     * The stream can be used from any thread, but only until this reader is closed.
+     */
+    InputStream openStream(Record record) throws IOException {
+        InputStream raw = new RegionStream(dataStart(record), record.csize);
+        if (record.method == ZipEntry.STORED)
+            return raw;
+        if (record.method != ZipEntry.DEFLATED)
+            throw new ZipException("Unsupported compression method " + record.method + " for " + record.name + " in " + this.path);
+        return new InflatingStream(raw);
+    }
+
+    private long dataStart(Record record) throws IOException {
+        ByteBuffer loc = buffer(record.offset, LOCHDR);
+        if (loc.getInt(0) != LOCSIG)
+            throw new ZipException("Invalid local header for " + record.name + " in " + this.path);
+        return record.offset + LOCHDR + (loc.getShort(26) & 0xFFFF) + (loc.getShort(28) & 0xFFFF);
+    }
+
+    /**
+     * Returns a little endian view of part of the file, sliced from the mapping if possible.
+     */
+    private ByteBuffer buffer(long position, int length) throws IOException {
+        if (this.closed)
+            throw new IllegalStateException("Zip file is closed: " + this.path);
+
+        if (this.segments != null) {
+            int idx = (int)(position / SEGMENT_SIZE);
+            int start = (int)(position % SEGMENT_SIZE);
+            if (idx < this.segments.length && (long)start + length <= this.segments[idx].capacity()) {
+                ByteBuffer ret = this.segments[idx].duplicate();
+                ((Buffer)ret).position(start);
+                ((Buffer)ret).limit(start + length);
+                return ret.slice().asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+            }
+            // Straddles two segments, this is rare enough to just copy
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buf.hasRemaining()) {
+            if (this.channel.read(buf, position + buf.position()) < 0)
+                throw new EOFException("Unexpected end of " + this.path);
+        }
+        ((Buffer)buf).flip();
+        return buf;
+    }
+
+    private List<Record> readCentralDirectory() throws IOException {
+        long fileSize = this.channel.size();
+        if (fileSize < ENDHDR)
+            throw new ZipException("Not a zip file: " + this.path);
+
+        // The end record is followed by a comment of at most 0xFFFF bytes, so it has to be within the last 64k
+        int tailSize = (int)Math.min(fileSize, ENDHDR + 0xFFFF);
+        long tailStart = fileSize - tailSize;
+        ByteBuffer tail = buffer(tailStart, tailSize);
+        int end = -1;
+        for (int x = tailSize - ENDHDR; x >= 0; x--) {
+            if (tail.getInt(x) == ENDSIG && x + ENDHDR + (tail.getShort(x + 20) & 0xFFFF) <= tailSize) {
+                end = x;
+                break;
+            }
+        }
+        if (end == -1)
+            throw new ZipException("Could not find end of central directory in " + this.path);
+
+        long count = tail.getShort(end + 10) & 0xFFFF;
+        long cenSize = tail.getInt(end + 12) & ZIP64_MAGICVAL;
+        long cenStart = tail.getInt(end + 16) & ZIP64_MAGICVAL;
+
+        int loc64 = end - ZIP64_LOCHDR;
+        if (loc64 >= 0 && tail.getInt(loc64) == ZIP64_LOCSIG) {
+            ByteBuffer end64 = buffer(tail.getLong(loc64 + 8), 56);
+            if (end64.getInt(0) != ZIP64_ENDSIG)
+                throw new ZipException("Invalid zip64 end of central directory in " + this.path);
+            count = end64.getLong(32);
+            cenSize = end64.getLong(40);
+            cenStart = end64.getLong(48);
+        }
+
+        if (cenSize > Integer.MAX_VALUE)
+            throw new ZipException("Central directory too large in " + this.path);
+
+        ByteBuffer cen = buffer(cenStart, (int)cenSize);
+        byte[] nameBuf = new byte[0x100];
+        List<Record> ret = new ArrayList<>((int)Math.min(count, 0x10000));
+        int pos = 0;
+        while (pos + CENHDR <= cenSize) {
+            if (cen.getInt(pos) != CENSIG)
+                throw new ZipException("Invalid central directory header at " + (cenStart + pos) + " in " + this.path);
+
+            int method = cen.getShort(pos + 10) & 0xFFFF;
+            long dostime = cen.getInt(pos + 12) & ZIP64_MAGICVAL;
+            long crc = cen.getInt(pos + 16) & ZIP64_MAGICVAL;
+            long csize = cen.getInt(pos + 20) & ZIP64_MAGICVAL;
+            long size = cen.getInt(pos + 24) & ZIP64_MAGICVAL;
+            int nlen = cen.getShort(pos + 28) & 0xFFFF;
+            int elen = cen.getShort(pos + 30) & 0xFFFF;
+            int clen = cen.getShort(pos + 32) & 0xFFFF;
+            long offset = cen.getInt(pos + 42) & ZIP64_MAGICVAL;
+
+            if (nameBuf.length < nlen)
+                nameBuf = new byte[nlen];
+            ((Buffer)cen).position(pos + CENHDR);
+            cen.get(nameBuf, 0, nlen);
+            String name = new String(nameBuf, 0, nlen, StandardCharsets.UTF_8);
+            long time = -1;
+
+            // Extra fields are HeaderID(2) DataSize(2) Data...
+            int off = pos + CENHDR + nlen;
+            int extraEnd = off + elen;
+            while (off + 4 < extraEnd) {
+                int tag = cen.getShort(off) & 0xFFFF;
+                int sz = cen.getShort(off + 2) & 0xFFFF;
+                off += 4;
+                if (off + sz > extraEnd)
+                    break;
+
+                if (tag == ZIP64_EXTID) {
+                    int zoff = off;
+                    if (size == ZIP64_MAGICVAL && zoff + 8 <= off + sz) {
+                        size = cen.getLong(zoff);
+                        zoff += 8;
+                    }
+                    if (csize == ZIP64_MAGICVAL && zoff + 8 <= off + sz) {
+                        csize = cen.getLong(zoff);
+                        zoff += 8;
+                    }
+                    if (offset == ZIP64_MAGICVAL && zoff + 8 <= off + sz)
+                        offset = cen.getLong(zoff);
+                } else if (tag == EXTID_NTFS) {
+                    if (sz >= 32 && (cen.getShort(off + 4) & 0xFFFF) == 0x0001 && (cen.getShort(off + 6) & 0xFFFF) == 24) {
+                        long wtime = cen.getLong(off + 8);
+                        if (wtime != WINDOWS_TIME_NOT_AVAILABLE)
+                            time = (wtime / 10 + WINDOWS_EPOCH_IN_MICROSECONDS) / 1000L;
+                    }
+                } else if (tag == EXTID_EXTT) {
+                    if (sz >= 5 && (cen.get(off) & 0x1) != 0)
+                        time = cen.getInt(off + 1) * 1000L;
+                }
+                off += sz;
+            }
+
+            if (time == -1)
+                time = dosToJavaTime(dostime);
+
+            ret.add(new Record(name, time, method, crc, size, csize, offset));
+            pos += CENHDR + nlen + elen + clen;
+        }
+
+        return ret;
+    }
+
+    @SuppressWarnings("deprecation") // Date is only used for the same malformed DOS time fallback that ZipFile uses
+    private static long dosToJavaTime(long dtime) {
+        int year = (int) (((dtime >> 25) & 0x7f) + 1980);
+        int month = (int) ((dtime >> 21) & 0x0f);
+        int day = (int) ((dtime >> 16) & 0x1f);
+        int hour = (int) ((dtime >> 11) & 0x1f);
+        int minute = (int) ((dtime >> 5) & 0x3f);
+        int second = (int) ((dtime << 1) & 0x3e);
+
+        if (month > 0 && month < 13 && day > 0 && hour < 24 && minute < 60 && second < 60) {
+            try {
+                LocalDateTime ldt = LocalDateTime.of(year, month, day, hour, minute, second);
+                return ldt.toEpochSecond(ZoneId.systemDefault().getRules().getOffset(ldt)) * 1000L;
+            } catch (DateTimeException e) {
+                // Fall through to the lenient conversion
+            }
+        }
+        return new Date(year - 1900, month - 1, day, hour, minute, second).getTime();
+    }
+
+    /**
+     * Closes the file and releases the mapping. Any buffers handed out by this reader must not be used afterwards.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed)
+            return;
+        this.closed = true;
+
+        try {
+            this.channel.close();
+        } finally {
+            if (this.segments != null) {
+                for (MappedByteBuffer segment : this.segments)
+                    DirectBuffers.free(segment);
+            }
+        }
+    }
+
+    /**
+     * Reads part of the file through the channel, positional reads don't move the channel so any number of these
+     * can be read at once.
+     */
+    private class RegionStream extends InputStream {
+        private long position;
+        private final long end;
+
+        private RegionStream(long position, long length) {
+            this.position = position;
+            this.end = position + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (this.position >= this.end)
+                return -1;
+            if (ZipReader.this.closed)
+                throw new IllegalStateException("Zip file is closed: " + ZipReader.this.path);
+
+            ByteBuffer buf = ByteBuffer.wrap(b, off, (int)Math.min(len, this.end - this.position));
+            int read = ZipReader.this.channel.read(buf, this.position);
+            if (read < 0)
+                throw new EOFException("Unexpected end of " + ZipReader.this.path);
+            this.position += read;
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return (int)Math.min(Integer.MAX_VALUE, this.end - this.position);
+        }
+    }
+
+    /**
+     * Inflates raw deflate data, the same way {@link java.util.zip.ZipFile} does for its entries.
+     */
+    private static class InflatingStream extends InflaterInputStream {
+        private boolean eof = false;
+
+        private InflatingStream(InputStream in) {
+            super(in, new Inflater(true), 0x2000);
+        }
+
+        @Override
+        protected void fill() throws IOException {
+            if (this.eof)
+                throw new EOFException("Unexpected end of ZLIB input stream");
+            this.len = this.in.read(this.buf, 0, this.buf.length);
+            if (this.len == -1) {
+                // Inflaters without a header may need an extra dummy byte to know they're done
+                this.buf[0] = 0;
+                this.len = 1;
+                this.eof = true;
+            }
+            this.inf.setInput(this.buf, 0, this.len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                // Only inflaters created by the stream itself are ended when it is closed
+                this.inf.end();
+            }
+        }
+    }
+
+    /**
+     * A single entry from the central directory.
+     */
+    static class Record {
+        private final String name;
+        private final long time;
+        private final int method;
+        private final long crc;
+        private final long size;
+        private final long csize;
+        private final long offset;
+
+        private Record(String name, long time, int method, long crc, long size, long csize, long offset) {
+            this.name = name;
+            this.time = time;
+            this.method = method;
+            this.crc = crc;
+            this.size = size;
+            this.csize = csize;
+            this.offset = offset;
+        }
+
+        String getName() {
+            return this.name;
+        }
+
+        long getTime() {
+            return this.time;
+        }
+
+        int getMethod() {
+            return this.method;
+        }
+
+        long getCrc() {
+            return this.crc;
+        }
+
+        long getSize() {
+            return this.size;
+        }
+
+        boolean isDirectory() {
+            return this.name.endsWith("/");
+        }
+
+        @Override
+        public String toString() {
+            return this.name;
+        }
+    }
+}
@@ -0,0 +1,468 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.fart.internal;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes already encoded {@link RawEntry}s to a zip file.
+ * <p>
+ * The headers are laid out exactly like {@link java.util.zip.ZipOutputStream} lays them out for an entry
+ * with only a name and a time set, so that a jar written through this class is byte for byte identical to
+ * one written by {@code ZipOutputStream} at the same compression level. That is what lets the expensive
+ * part, compressing the data, happen somewhere other than the thread that writes the file.
+ * <p>
+ * Streamed entries are the exception, they are read and compressed right here, the same way {@code ZipOutputStream}
+ * would, so that entries too large to hold in memory never have to be.
+ */
+class ZipWriter implements Closeable {
+    private static final int LOCSIG = 0x04034b50;
+    private static final int EXTSIG = 0x08074b50;
+    private static final int CENSIG = 0x02014b50;
+    private static final int ENDSIG = 0x06054b50;
+    private static final int ZIP64_ENDSIG = 0x06064b50;
+    private static final int ZIP64_LOCSIG = 0x07064b50;
+    private static final long ZIP64_MAGICVAL = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGICCOUNT = 0xFFFF;
+    private static final int ZIP64_EXTID = 0x0001;
+    private static final int EXTID_NTFS = 0x000a;
+    private static final int EXTID_EXTT = 0x5455;
+    private static final int FLAG_DATADESCR = 8;
+    private static final int FLAG_UTF8 = 0x800;
+    private static final long DOSTIME_BEFORE_1980 = (1 << 21) | (1 << 16);
+    private static final long UPPER_DOSTIME_BOUND = 128L * 365 * 24 * 60 * 60 * 1000;
+    private static final long UPPER_UNIXTIME_BOUND = 0x7fffffff;
+    private static final long WINDOWS_EPOCH_IN_MICROSECONDS = -11644473600000000L;
+    private static final long WINDOWS_TIME_NOT_AVAILABLE = Long.MIN_VALUE;
+    // ZipOutputStream changed how it writes times that a DOS time can't hold, so we ask the one we're running on.
+    // Java 17 stopped adding a timestamp field for years up to 2099, and Java 9 started writing times after 2038 as NTFS times.
+    private static final boolean DOS_YEARS_TO_2099 = timeFieldLength(LocalDateTime.of(2098, 6, 1, 0, 0)) == 0;
+    private static final boolean NTFS_AFTER_2038 = timeFieldLength(LocalDateTime.of(2108, 6, 1, 0, 0)) == 36;
+
+    private final OutputStream out;
+    private final byte[] copyBuffer = new byte[0x2000];
+    private final byte[] streamBuffer = new byte[0x8000];
+    private final List<Header> headers = new ArrayList<>();
+    private final Set<String> names = new HashSet<>();
+    private long written = 0;
+    private boolean closed = false;
+
+    ZipWriter(OutputStream out) {
+        this.out = new BufferedOutputStream(out, 0x10000);
+    }
+
+    void write(RawEntry entry) throws IOException {
+        if (!this.names.add(entry.getName()))
+            throw new ZipException("duplicate entry: " + entry.getName());
+
+        Header header = new Header(entry, this.written);
+        this.headers.add(header);
+
+        writeLOC(header);
+        if (entry.isStreamed())
+            writeStreamed(header, entry);
+        else
+            writeBytes(entry.getData());
+        if ((header.flag & FLAG_DATADESCR) != 0)
+            writeEXT(header);
+    }
+
+    /**
+     * Returns the length of the extra field {@code ZipOutputStream} writes for an entry with the given time.
+     */
+    private static int timeFieldLength(LocalDateTime time) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            ZipEntry entry = new ZipEntry("a");
+            entry.setTime(time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+            zip.putNextEntry(entry);
+            zip.closeEntry();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write a zip file in memory", e);
+        }
+        byte[] data = bytes.toByteArray();
+        return (data[28] & 0xFF) | (data[29] & 0xFF) << 8;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.closed)
+            return;
+        this.closed = true;
+
+        try {
+            long off = this.written;
+            for (Header header : this.headers)
+                writeCEN(header);
+            writeEND(off, this.written - off);
+            this.out.flush();
+        } finally {
+            this.out.close();
+        }
+    }
+
+    private void writeLOC(Header e) throws IOException {
+        boolean hasZip64 = false;
+        int elen = 0;
+
+        writeInt(LOCSIG);
+        if ((e.flag & FLAG_DATADESCR) != 0) {
+            writeShort(e.version);
+            writeShort(e.flag);
+            writeShort(e.method);
+            writeInt(e.xdostime);
+            writeInt(0);
+            writeInt(0);
+            writeInt(0);
+        } else {
+            if (e.csize >= ZIP64_MAGICVAL || e.size >= ZIP64_MAGICVAL) {
+                hasZip64 = true;
+                writeShort(45);
+            } else {
+                writeShort(e.version);
+            }
+            writeShort(e.flag);
+            writeShort(e.method);
+            writeInt(e.xdostime);
+            writeInt(e.crc);
+            if (hasZip64) {
+                writeInt(ZIP64_MAGICVAL);
+                writeInt(ZIP64_MAGICVAL);
+                elen += 20;
+            } else {
+                writeInt(e.csize);
+                writeInt(e.size);
+            }
+        }
+        writeShort(e.name.length);
+
+        if (e.mtime != -1)
+            elen += e.isNtfsTime() ? 36 : 9;
+        writeShort(elen);
+        writeBytes(e.name, 0, e.name.length);
+        if (hasZip64) {
+            writeShort(ZIP64_EXTID);
+            writeShort(16);
+            writeLong(e.size);
+            writeLong(e.csize);
+        }
+        writeExtendedTime(e);
+    }
+
+    /**
+     * Stored entries need their CRC and size before the data, so the data is checked against them as it is copied.
+     * Deflated entries have a data descriptor, which is filled in with whatever the data turned out to be.
+     */
+    private void writeStreamed(Header header, RawEntry entry) throws IOException {
+        CRC32 crc = new CRC32();
+        long size = 0;
+        long start = this.written;
+        Deflater def = header.method == ZipEntry.DEFLATED ? new Deflater(6, true) : null;
+        try (InputStream in = entry.openStream()) {
+            int cnt;
+            while ((cnt = in.read(this.streamBuffer, 0, this.streamBuffer.length)) != -1) {
+                crc.update(this.streamBuffer, 0, cnt);
+                size += cnt;
+                if (def == null) {
+                    writeBytes(this.streamBuffer, 0, cnt);
+                } else {
+                    def.setInput(this.streamBuffer, 0, cnt);
+                    while (!def.needsInput())
+                        deflate(def);
+                }
+            }
+            if (def != null) {
+                def.finish();
+                while (!def.finished())
+                    deflate(def);
+            }
+        } finally {
+            if (def != null)
+                def.end();
+        }
+
+        if (def == null) {
+            if (size != header.size || crc.getValue() != header.crc)
+                throw new ZipException("Invalid data for " + entry.getName() + ", expected " + header.size + " bytes with CRC " + Long.toHexString(header.crc));
+        } else {
+            header.crc = crc.getValue();
+            header.size = size;
+            header.csize = this.written - start;
+        }
+    }
+
+    private void deflate(Deflater def) throws IOException {
+        int len = def.deflate(this.copyBuffer, 0, this.copyBuffer.length);
+        writeBytes(this.copyBuffer, 0, len);
+    }
+
+    private void writeEXT(Header e) throws IOException {
+        writeInt(EXTSIG);
+        writeInt(e.crc);
+        if (e.csize >= ZIP64_MAGICVAL || e.size >= ZIP64_MAGICVAL) {
+            writeLong(e.csize);
+            writeLong(e.size);
+        } else {
+            writeInt(e.csize);
+            writeInt(e.size);
+        }
+    }
+
+    private void writeCEN(Header e) throws IOException {
+        long csize = e.csize;
+        long size = e.size;
+        long offset = e.offset;
+        int elenZIP64 = 0;
+        boolean hasZip64 = false;
+
+        if (e.csize >= ZIP64_MAGICVAL) {
+            csize = ZIP64_MAGICVAL;
+            elenZIP64 += 8;
+            hasZip64 = true;
+        }
+        if (e.size >= ZIP64_MAGICVAL) {
+            size = ZIP64_MAGICVAL;
+            elenZIP64 += 8;
+            hasZip64 = true;
+        }
+        if (e.offset >= ZIP64_MAGICVAL) {
+            offset = ZIP64_MAGICVAL;
+            elenZIP64 += 8;
+            hasZip64 = true;
+        }
+        writeInt(CENSIG);
+        if (hasZip64) {
+            writeShort(45);
+            writeShort(45);
+        } else {
+            writeShort(e.version);
+            writeShort(e.version);
+        }
+        writeShort(e.flag);
+        writeShort(e.method);
+        writeInt(e.xdostime);
+        writeInt(e.crc);
+        writeInt(csize);
+        writeInt(size);
+        writeShort(e.name.length);
+
+        int elen = 0;
+        if (hasZip64)
+            elen += elenZIP64 + 4;
+        if (e.mtime != -1)
+            elen += e.isNtfsTime() ? 36 : 9;
+        writeShort(elen);
+        writeShort(0); // comment length
+        writeShort(0); // starting disk number
+        writeShort(0); // internal file attributes
+        writeInt(0);   // external file attributes
+        writeInt(offset);
+        writeBytes(e.name, 0, e.name.length);
+
+        if (hasZip64) {
+            writeShort(ZIP64_EXTID);
+            writeShort(elenZIP64);
+            if (size == ZIP64_MAGICVAL)
+                writeLong(e.size);
+            if (csize == ZIP64_MAGICVAL)
+                writeLong(e.csize);
+            if (offset == ZIP64_MAGICVAL)
+                writeLong(e.offset);
+        }
+        writeExtendedTime(e);
+    }
+
+    // The central directory only ever carries the modification time, and that is all we have, so the LOC and CEN forms are the same.
+    private void writeExtendedTime(Header e) throws IOException {
+        if (e.mtime == -1)
+            return;
+
+        if (e.isNtfsTime()) {
+            writeShort(EXTID_NTFS);
+            writeShort(32);
+            writeInt(0);
+            writeShort(0x0001);
+            writeShort(24);
+            writeLong((e.time * 1000 - WINDOWS_EPOCH_IN_MICROSECONDS) * 10);
+            writeLong(WINDOWS_TIME_NOT_AVAILABLE);
+            writeLong(WINDOWS_TIME_NOT_AVAILABLE);
+        } else {
+            writeShort(EXTID_EXTT);
+            writeShort(5);
+            writeByte(0x1); // EXTT_FLAG_LMT
+            writeInt(e.mtime);
+        }
+    }
+
+    private void writeEND(long off, long len) throws IOException {
+        boolean hasZip64 = false;
+        long xlen = len;
+        long xoff = off;
+        if (xlen >= ZIP64_MAGICVAL) {
+            xlen = ZIP64_MAGICVAL;
+            hasZip64 = true;
+        }
+        if (xoff >= ZIP64_MAGICVAL) {
+            xoff = ZIP64_MAGICVAL;
+            hasZip64 = true;
+        }
+        int count = this.headers.size();
+        if (count >= ZIP64_MAGICCOUNT) {
+            hasZip64 = true;
+            count = ZIP64_MAGICCOUNT;
+        }
+        if (hasZip64) {
+            long off64 = this.written;
+            writeInt(ZIP64_ENDSIG);
+            writeLong(56 - 12);
+            writeShort(45);
+            writeShort(45);
+            writeInt(0);
+            writeInt(0);
+            writeLong(this.headers.size());
+            writeLong(this.headers.size());
+            writeLong(len);
+            writeLong(off);
+
+            writeInt(ZIP64_LOCSIG);
+            writeInt(0);
+            writeLong(off64);
+            writeInt(1);
+        }
+        writeInt(ENDSIG);
+        writeShort(0);
+        writeShort(0);
+        writeShort(count);
+        writeShort(count);
+        writeInt(xlen);
+        writeInt(xoff);
+        writeShort(0); // comment length
+    }
+
+    private void writeByte(int v) throws IOException {
+        this.out.write(v & 0xff);
+        this.written += 1;
+    }
+
+    private void writeShort(int v) throws IOException {
+        this.out.write((v >>> 0) & 0xff);
+        this.out.write((v >>> 8) & 0xff);
+        this.written += 2;
+    }
+
+    private void writeInt(long v) throws IOException {
+        this.out.write((int)((v >>>  0) & 0xff));
+        this.out.write((int)((v >>>  8) & 0xff));
+        this.out.write((int)((v >>> 16) & 0xff));
+        this.out.write((int)((v >>> 24) & 0xff));
+        this.written += 4;
+    }
+
+    private void writeLong(long v) throws IOException {
+        writeInt(v);
+        writeInt(v >>> 32);
+    }
+
+    private void writeBytes(byte[] b, int off, int len) throws IOException {
+        this.out.write(b, off, len);
+        this.written += len;
+    }
+
+    private void writeBytes(ByteBuffer data) throws IOException {
+        if (data.hasArray()) {
+            writeBytes(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        } else {
+            // Mapped data from the input, copy it over in chunks
+            while (data.hasRemaining()) {
+                int len = Math.min(this.copyBuffer.length, data.remaining());
+                data.get(this.copyBuffer, 0, len);
+                writeBytes(this.copyBuffer, 0, len);
+            }
+        }
+    }
+
+    /**
+     * Everything needed to write both the local and central headers of an entry.
+     */
+    private static class Header {
+        private final byte[] name;
+        private final long time;
+        private final int version;
+        private final int flag;
+        private final int method;
+        private final long xdostime;
+        private final long mtime; // Unix seconds for the extended timestamp field, or -1 when the DOS time is enough
+        // Only known once the data has been written, for streamed entries
+        private long crc;
+        private long size;
+        private long csize;
+        private final long offset;
+
+        private Header(RawEntry entry, long offset) {
+            this.name = entry.getName().getBytes(StandardCharsets.UTF_8);
+            this.time = entry.getTime();
+            this.method = entry.getMethod();
+            this.version = this.method == ZipEntry.DEFLATED ? 20 : 10;
+            // ZipOutputStream only knows the sizes up front for STORED entries, so deflated ones always get a data descriptor
+            this.flag = (this.method == ZipEntry.DEFLATED ? FLAG_DATADESCR : 0) | FLAG_UTF8;
+            this.crc = entry.getCrc();
+            this.size = entry.getSize();
+            this.csize = entry.getCompressedSize();
+            this.offset = offset;
+
+            this.xdostime = javaToExtendedDosTime(this.time);
+            if (this.xdostime != DOSTIME_BEFORE_1980 && this.time <= UPPER_DOSTIME_BOUND) {
+                this.mtime = -1;
+            } else if (!DOS_YEARS_TO_2099) {
+                this.mtime = Math.floorDiv(this.time, 1000L);
+            } else {
+                int year = toLocal(this.time).getYear();
+                this.mtime = year >= 1980 && year <= 2099 ? -1 : Math.floorDiv(this.time, 1000L);
+            }
+        }
+
+        // Older versions write the unix time anyways, cut down to 32 bits
+        private boolean isNtfsTime() {
+            return this.mtime > UPPER_UNIXTIME_BOUND && NTFS_AFTER_2038;
+        }
+
+        private static LocalDateTime toLocal(long time) {
+            return LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+        }
+
+        private static long javaToExtendedDosTime(long time) {
+            LocalDateTime ldt = toLocal(time);
+            if (ldt.getYear() < 1980)
+                return DOSTIME_BEFORE_1980;
+
+            long dos = ((ldt.getYear() - 1980) << 25 |
+                ldt.getMonthValue() << 21 |
+                ldt.getDayOfMonth() << 16 |
+                ldt.getHour() << 11 |
+                ldt.getMinute() << 5 |
+                ldt.getSecond() >> 1) & 0xffffffffL;
+            return dos + ((time % 2000) << 32);
+        }
+    }
+}
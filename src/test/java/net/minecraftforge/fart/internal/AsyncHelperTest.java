@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.fart.internal;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AsyncHelperTest {
+    private static final List<Integer> INPUTS = Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+
+    @Test
+    public void waitsForRunningTasksAfterFailure() throws InterruptedException {
+        AsyncHelper async = new AsyncHelper(2);
+        try {
+            CountDownLatch slowStarted = new CountDownLatch(1);
+            AtomicBoolean slowFinished = new AtomicBoolean();
+            AtomicInteger started = new AtomicInteger();
+
+            assertThrows(RuntimeException.class, () -> async.consumeAll(INPUTS, 2, String::valueOf, i -> {
+                started.incrementAndGet();
+                if (i == 1) {
+                    slowStarted.countDown();
+                    sleep(200);
+                    slowFinished.set(true);
+                } else if (i == 0) {
+                    await(slowStarted);
+                    throw new IllegalStateException("Failed " + i);
+                }
+            }));
+
+            // Callers close what the tasks read from as soon as this returns, so the slow task must be done by now
+            assertTrue(slowFinished.get());
+            assertEquals(2, started.get());
+        } finally {
+            async.shutdown();
+        }
+    }
+
+    @Test
+    public void invokeAllWaitsForRunningTasksAfterFailure() {
+        AsyncHelper async = new AsyncHelper(2);
+        try {
+            CountDownLatch slowStarted = new CountDownLatch(1);
+            AtomicBoolean slowFinished = new AtomicBoolean();
+
+            RuntimeException e = assertThrows(RuntimeException.class, () -> async.invokeAll(INPUTS, String::valueOf, i -> {
+                if (i == 1) {
+                    slowStarted.countDown();
+                    sleep(200);
+                    slowFinished.set(true);
+                } else if (i == 0) {
+                    await(slowStarted);
+                    throw new IllegalStateException("Failed " + i);
+                }
+                return i;
+            }));
+
+            assertEquals("Failed to execute task 0", e.getMessage());
+            assertTrue(slowFinished.get());
+        } finally {
+            async.shutdown();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.fart.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MemoizingCacheTest {
+    @Test
+    public void computesOnce() {
+        AtomicInteger calls = new AtomicInteger();
+        MemoizingCache<String, String> cache = new MemoizingCache<>(key -> key + calls.incrementAndGet());
+        assertEquals("a1", cache.get("a"));
+        assertEquals("a1", cache.get("a"));
+        assertEquals("b2", cache.get("b"));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void failuresAreNotCached() {
+        AtomicInteger calls = new AtomicInteger();
+        MemoizingCache<String, String> cache = new MemoizingCache<>(key -> {
+            if (calls.incrementAndGet() == 1)
+                throw new IllegalStateException("First try fails");
+            return key;
+        });
+        assertThrows(IllegalStateException.class, () -> cache.get("a"));
+        assertEquals("a", cache.get("a"));
+        assertEquals("a", cache.get("a"));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void nullValuesAreFailures() {
+        AtomicInteger calls = new AtomicInteger();
+        MemoizingCache<String, String> cache = new MemoizingCache<>(key -> calls.incrementAndGet() == 1 ? null : key);
+        assertThrows(NullPointerException.class, () -> cache.get("a"));
+        assertEquals("a", cache.get("a"));
+    }
+
+    @Test
+    public void recursionFails() {
+        AtomicReference<MemoizingCache<String, String>> self = new AtomicReference<>();
+        self.set(new MemoizingCache<>(key -> self.get().get(key)));
+        assertThrows(IllegalStateException.class, () -> self.get().get("a"));
+    }
+
+    @Test
+    public void waitersGetTheComputedValue() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        MemoizingCache<String, Object> cache = new MemoizingCache<>(key -> {
+            calls.incrementAndGet();
+            if ("a".equals(key)) {
+                started.countDown();
+                await(release);
+            }
+            return key + "!";
+        });
+
+        ExecutorService exec = Executors.newFixedThreadPool(8);
+        try {
+            Future<Object> first = exec.submit(() -> cache.get("a"));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            List<Future<Object>> waiters = new ArrayList<>();
+            for (int x = 0; x < 7; x++)
+                waiters.add(exec.submit(() -> cache.get("a")));
+            // Other keys are not held up by the one being computed
+            assertEquals("b!", cache.get("b"));
+
+            release.countDown();
+            Object value = first.get(10, TimeUnit.SECONDS);
+            for (Future<Object> waiter : waiters)
+                assertSame(value, waiter.get(10, TimeUnit.SECONDS));
+            assertEquals(2, calls.get());
+        } finally {
+            exec.shutdownNow();
+        }
+    }
+
+    @Test
+    public void waitersSeeFailuresAndLaterCallersRetry() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        MemoizingCache<String, String> cache = new MemoizingCache<>(key -> {
+            if (calls.incrementAndGet() == 1) {
+                started.countDown();
+                await(release);
+                throw new IllegalStateException("First try fails");
+            }
+            return key;
+        });
+
+        ExecutorService exec = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = exec.submit(() -> cache.get("a"));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            Future<String> waiter = exec.submit(() -> cache.get("a"));
+
+            // Give the waiter time to find the pending computation, a waiter that is late just retries and gets the value
+            Thread.sleep(100);
+            release.countDown();
+
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> first.get(10, TimeUnit.SECONDS));
+            assertTrue(failure.getCause() instanceof IllegalStateException);
+            try {
+                assertEquals("a", waiter.get(10, TimeUnit.SECONDS));
+            } catch (ExecutionException e) {
+                assertSame(failure.getCause(), e.getCause());
+            }
+            assertEquals("a", cache.get("a"));
+        } finally {
+            exec.shutdownNow();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.fart.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import net.minecraftforge.fart.api.Renamer;
+import net.minecraftforge.fart.api.Transformer;
+import net.minecraftforge.srgutils.IMappingFile;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RenamerImplTest {
+    private static final String MAPPINGS =
+        "tsrg2 left right\n" +
+        "a Mapped\n" +
+        "\tb (I)V run\n" +
+        "\t\t0 p_0 first\n" +
+        "\tc (I)V call\n" +
+        "\t\t0 p_0 second\n";
+
+    @TempDir
+    Path temp;
+
+    @Test
+    public void rerunSeesTheChangedInput() throws IOException {
+        IMappingFile map = IMappingFile.load(new ByteArrayInputStream(MAPPINGS.getBytes(StandardCharsets.UTF_8)));
+        Path input = this.temp.resolve("input.jar");
+        Path output = this.temp.resolve("output.jar");
+
+        try (Renamer renamer = Renamer.builder().add(Transformer.renamerFactory(map, true)).logger(s -> {}).build()) {
+            writeInput(input, "b");
+            renamer.run(input.toFile(), output.toFile());
+            assertOutput(output, new String[] { "run" }, "Mapped run (I)V first");
+
+            // Nothing resolved from the first input may be left over for the second
+            writeInput(input, "c");
+            renamer.run(input.toFile(), output.toFile());
+            assertOutput(output, new String[] { "call" }, "Mapped call (I)V second");
+        }
+    }
+
+    private static void assertOutput(Path output, String[] methods, String abstractParams) throws IOException {
+        try (ZipFile zip = new ZipFile(output.toFile())) {
+            byte[] data = read(zip, "Mapped.class");
+            List<String> names = new ArrayList<>();
+            new ClassReader(data).accept(new ClassVisitor(Opcodes.ASM9) {
+                @Override
+                public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                    names.add(name);
+                    return null;
+                }
+            }, 0);
+            assertArrayEquals(methods, names.toArray());
+            assertEquals(abstractParams, new String(read(zip, "fernflower_abstract_parameter_names.txt"), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static byte[] read(ZipFile zip, String name) throws IOException {
+        ZipEntry entry = zip.getEntry(name);
+        if (entry == null)
+            throw new AssertionError("Missing output entry: " + name);
+        return Util.toByteArray(zip.getInputStream(entry));
+    }
+
+    private static void writeInput(Path file, String method) throws IOException {
+        ClassWriter cw = new ClassWriter(0);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "a", null, "java/lang/Object", null);
+        cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, method, "(I)V", null, null).visitEnd();
+        cw.visitEnd();
+
+        try (OutputStream out = Files.newOutputStream(file);
+             ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.putNextEntry(new ZipEntry("a.class"));
+            zip.write(cw.toByteArray());
+            zip.closeEntry();
+        }
+    }
+}
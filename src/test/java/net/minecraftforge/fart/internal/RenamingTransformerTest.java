@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.fart.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import net.minecraftforge.fart.api.ClassProvider;
+import net.minecraftforge.fart.api.Logger;
+import net.minecraftforge.fart.api.Transformer.ClassEntry;
+import net.minecraftforge.fart.api.Transformer.Entry;
+import net.minecraftforge.srgutils.IMappingFile;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RenamingTransformerTest {
+    // Only the first parameter of each method is mapped, the rest have to keep their names
+    private static final String MAPPINGS =
+        "tsrg2 left right\n" +
+        "a Mapped\n" +
+        "\tb (IJI)V run\n" +
+        "\t\t0 p_0 first\n" +
+        "\tc (IJ)V call\n" +
+        "\t\t0 p_0 first\n";
+
+    @Test
+    public void partiallyMappedParameters() throws IOException {
+        byte[] data = createClass();
+        IMappingFile map = IMappingFile.load(new ByteArrayInputStream(MAPPINGS.getBytes(StandardCharsets.UTF_8)));
+
+        try (ClassProvider classProvider = ClassProvider.builder().addClass("a", data).build()) {
+            RenamingTransformer transformer = new RenamingTransformer(classProvider, map, Logger.of(s -> {}, null));
+            ClassEntry renamed = transformer.process(ClassEntry.create("a.class", Entry.STABLE_TIMESTAMP, data));
+
+            assertEquals("Mapped.class", renamed.getName());
+            assertArrayEquals(new String[] { "this", "first", "count", "extra" }, localNames(renamed.getData(), "run"));
+
+            Collection<? extends Entry> extras = transformer.getExtras();
+            assertEquals(1, extras.size());
+            assertEquals("Mapped call (IJ)V first var2", new String(extras.iterator().next().getData(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static byte[] createClass() {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "a", null, "java/lang/Object", null);
+
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "b", "(IJI)V", null, null);
+        mv.visitCode();
+        Label start = new Label();
+        Label end = new Label();
+        mv.visitLabel(start);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitLabel(end);
+        mv.visitLocalVariable("this", "La;", null, start, end, 0);
+        mv.visitLocalVariable("p_0", "I", null, start, end, 1);
+        mv.visitLocalVariable("count", "J", null, start, end, 2);
+        mv.visitLocalVariable("extra", "I", null, start, end, 4);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "c", "(IJ)V", null, null).visitEnd();
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static String[] localNames(byte[] data, String method) {
+        List<String> names = new ArrayList<>();
+        new ClassReader(data).accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                if (!method.equals(name))
+                    return null;
+                return new MethodVisitor(Opcodes.ASM9) {
+                    @Override
+                    public void visitLocalVariable(String name, String descriptor, String signature, Label start, Label end, int index) {
+                        names.add(name);
+                    }
+                };
+            }
+        }, 0);
+        return names.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.fart.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ZipReaderTest {
+    @TempDir
+    Path temp;
+
+    @Test
+    public void readsWhatZipOutputStreamWrote() throws IOException {
+        Path file = this.temp.resolve("input.jar");
+        Map<String, byte[]> data = writeSample(file);
+        readsWhatZipOutputStreamWrote(file, data, true);
+        readsWhatZipOutputStreamWrote(file, data, false);
+    }
+
+    private static void readsWhatZipOutputStreamWrote(Path file, Map<String, byte[]> data, boolean map) throws IOException {
+        try (ZipReader reader = ZipReader.open(file, map);
+             ZipFile zip = new ZipFile(file.toFile())) {
+            List<ZipReader.Record> records = reader.getRecords();
+            assertArrayEquals(data.keySet().toArray(), records.stream().map(ZipReader.Record::getName).toArray());
+
+            for (ZipReader.Record record : records) {
+                ZipEntry entry = zip.getEntry(record.getName());
+                byte[] expected = data.get(record.getName());
+                assertEquals(entry.getTime(), record.getTime(), record.getName());
+                assertEquals(entry.getMethod(), record.getMethod(), record.getName());
+                assertEquals(entry.getCrc(), record.getCrc(), record.getName());
+                assertEquals(expected.length, record.getSize(), record.getName());
+                assertEquals(entry.isDirectory(), record.isDirectory(), record.getName());
+
+                assertArrayEquals(expected, reader.read(record), record.getName());
+                try (InputStream stream = reader.openStream(record)) {
+                    assertArrayEquals(expected, Util.toByteArray(stream), record.getName());
+                }
+
+                ByteBuffer direct = ByteBuffer.allocateDirect(expected.length);
+                reader.read(record, direct);
+                direct.flip();
+                byte[] read = new byte[direct.remaining()];
+                direct.get(read);
+                assertArrayEquals(expected, read, record.getName());
+            }
+        }
+    }
+
+    @Test
+    public void rawEntriesRoundTrip() throws IOException {
+        // Copying every entry as it is stored has to give back the very same file, as that is what passthrough relies on
+        Path file = this.temp.resolve("input.jar");
+        writeSample(file);
+        for (boolean map : new boolean[] { true, false }) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ZipReader reader = ZipReader.open(file, map);
+                 ZipWriter writer = new ZipWriter(bytes)) {
+                for (ZipReader.Record record : reader.getRecords())
+                    writer.write(reader.readRaw(record));
+            }
+            assertArrayEquals(Files.readAllBytes(file), bytes.toByteArray());
+        }
+    }
+
+    @Test
+    public void readsZip64EndRecords() throws IOException {
+        Path file = this.temp.resolve("many.jar");
+        int count = 0x10000 + 10;
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(file))) {
+            for (int x = 0; x < count; x++) {
+                zip.putNextEntry(new ZipEntry("entry" + x + ".txt"));
+                zip.write(Integer.toString(x).getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+
+        try (ZipReader reader = ZipReader.open(file)) {
+            List<ZipReader.Record> records = reader.getRecords();
+            assertEquals(count, records.size());
+            ZipReader.Record last = records.get(count - 1);
+            assertEquals("entry" + (count - 1) + ".txt", last.getName());
+            assertEquals(Integer.toString(count - 1), new String(reader.read(last), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void closedReaderRefusesReads() throws IOException {
+        Path file = this.temp.resolve("input.jar");
+        writeSample(file);
+        ZipReader reader = ZipReader.open(file);
+        ZipReader.Record record = reader.getRecords().get(0);
+        reader.close();
+        assertThrows(IllegalStateException.class, () -> reader.read(record));
+    }
+
+    private static Map<String, byte[]> writeSample(Path file) throws IOException {
+        Random random = new Random(42);
+        byte[] noise = new byte[300_000];
+        random.nextBytes(noise);
+        StringBuilder text = new StringBuilder();
+        for (int x = 0; x < 50_000; x++)
+            text.append("line ").append(x).append('\n');
+
+        long[] times = {
+            time(2021, 6, 15, 12, 30, 45),
+            time(1970, 1, 1, 0, 0, 0),
+            time(2050, 1, 1, 0, 0, 0),
+            time(2108, 1, 1, 0, 0, 0)
+        };
+
+        Map<String, byte[]> ret = new LinkedHashMap<>();
+        try (OutputStream out = Files.newOutputStream(file);
+             ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (int x = 0; x < times.length; x++) {
+                put(zip, ret, "dir" + x + "/", times[x], new byte[0], false);
+                put(zip, ret, "dir" + x + "/empty.txt", times[x], new byte[0], false);
+                put(zip, ret, "dir" + x + "/text.txt", times[x], text.toString().getBytes(StandardCharsets.UTF_8), false);
+                put(zip, ret, "dir" + x + "/noise.bin", times[x], noise, true);
+                put(zip, ret, "dir" + x + "/stored.txt", times[x], "stored".getBytes(StandardCharsets.UTF_8), true);
+            }
+        }
+        return ret;
+    }
+
+    private static void put(ZipOutputStream zip, Map<String, byte[]> entries, String name, long time, byte[] data, boolean stored) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setTime(time);
+        if (stored) {
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(data.length);
+            entry.setCrc(crc.getValue());
+        }
+        zip.putNextEntry(entry);
+        zip.write(data);
+        zip.closeEntry();
+        entries.put(name, data);
+    }
+
+    private static long time(int year, int month, int day, int hour, int minute, int second) {
+        return LocalDateTime.of(year, month, day, hour, minute, second).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
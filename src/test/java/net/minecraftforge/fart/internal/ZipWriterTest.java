@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.fart.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+import net.minecraftforge.fart.api.Transformer.Entry;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * The output of {@link ZipWriter} has to be byte for byte what {@link ZipOutputStream} writes, as jars written before
+ * the two were swapped must not change.
+ */
+public class ZipWriterTest {
+    private static final long[] TIMES = {
+        Entry.STABLE_TIMESTAMP,
+        time(2021, 6, 15, 12, 30, 45) + 1234, // Odd seconds and milliseconds only fit in the extended DOS time
+        time(1970, 1, 1, 0, 0, 0),            // Before 1980 needs the extended timestamp field
+        time(1955, 3, 4, 5, 6, 7),            // As does a negative time
+        time(2050, 1, 1, 0, 0, 0),            // Too late for the unix time of the extended timestamp, so it uses NTFS
+        time(2100, 1, 1, 0, 0, 0),            // After 2099 the year no longer fits in the DOS time
+        time(2108, 1, 1, 0, 0, 0)             // And after 2107 the time no longer fits at all
+    };
+
+    @Test
+    public void deflatedMatchesZipOutputStream() throws IOException {
+        List<Sample> samples = samples();
+        assertArrayEquals(zipOutputStream(samples, false), zipWriter(samples, s -> RawEntry.deflated(s.name, s.time, s.data)));
+    }
+
+    @Test
+    public void deflatedBuffersMatchZipOutputStream() throws IOException {
+        List<Sample> samples = samples();
+        assertArrayEquals(zipOutputStream(samples, false), zipWriter(samples, s -> RawEntry.deflated(s.name, s.time, direct(s.data))));
+    }
+
+    @Test
+    public void storedMatchesZipOutputStream() throws IOException {
+        List<Sample> samples = samples();
+        assertArrayEquals(zipOutputStream(samples, true), zipWriter(samples, s -> RawEntry.stored(s.name, s.time, s.data)));
+        assertArrayEquals(zipOutputStream(samples, true), zipWriter(samples, s -> RawEntry.stored(s.name, s.time, direct(s.data))));
+    }
+
+    @Test
+    public void streamedMatchesZipOutputStream() throws IOException {
+        List<Sample> samples = samples();
+        assertArrayEquals(zipOutputStream(samples, false), zipWriter(samples, s ->
+            RawEntry.streamed(s.name, s.time, ZipEntry.DEFLATED, -1, -1, () -> new ByteArrayInputStream(s.data))));
+        assertArrayEquals(zipOutputStream(samples, true), zipWriter(samples, s ->
+            RawEntry.streamed(s.name, s.time, ZipEntry.STORED, crc(s.data), s.data.length, () -> new ByteArrayInputStream(s.data))));
+    }
+
+    @Test
+    public void directoriesMatchZipOutputStream() throws IOException {
+        List<Sample> samples = new ArrayList<>();
+        samples.add(new Sample("META-INF/", Entry.STABLE_TIMESTAMP, new byte[0]));
+        samples.add(new Sample("net/minecraftforge/", Entry.STABLE_TIMESTAMP, new byte[0]));
+        assertArrayEquals(zipOutputStream(samples, false), zipWriter(samples, s -> RawEntry.directory(s.name, false)));
+        assertArrayEquals(zipOutputStream(samples, true), zipWriter(samples, s -> RawEntry.directory(s.name, true)));
+    }
+
+    @Test
+    public void zip64MatchesZipOutputStream() throws IOException {
+        // More entries than the end record can count, so it's followed by the zip64 end records
+        List<Sample> samples = new ArrayList<>();
+        for (int x = 0; x < 0x10000 + 10; x++)
+            samples.add(new Sample("entry" + x + ".txt", Entry.STABLE_TIMESTAMP, Integer.toString(x).getBytes(StandardCharsets.UTF_8)));
+        assertArrayEquals(zipOutputStream(samples, false), zipWriter(samples, s -> RawEntry.deflated(s.name, s.time, s.data)));
+        assertArrayEquals(zipOutputStream(samples, true), zipWriter(samples, s -> RawEntry.stored(s.name, s.time, s.data)));
+    }
+
+    private static List<Sample> samples() {
+        Random random = new Random(42);
+        byte[] noise = new byte[100_000];
+        random.nextBytes(noise);
+        StringBuilder text = new StringBuilder();
+        for (int x = 0; x < 10_000; x++)
+            text.append("line ").append(x).append('\n');
+
+        List<Sample> ret = new ArrayList<>();
+        for (int x = 0; x < TIMES.length; x++) {
+            ret.add(new Sample("empty" + x + ".txt", TIMES[x], new byte[0]));
+            ret.add(new Sample("text" + x + ".txt", TIMES[x], text.toString().getBytes(StandardCharsets.UTF_8)));
+            ret.add(new Sample("dir/noise" + x + ".bin", TIMES[x], noise));
+            ret.add(new Sample("\u00fcnicode" + x + ".txt", TIMES[x], "\u00fc".getBytes(StandardCharsets.UTF_8)));
+        }
+        return ret;
+    }
+
+    private static byte[] zipOutputStream(List<Sample> samples, boolean stored) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (Sample sample : samples) {
+                ZipEntry entry = new ZipEntry(sample.name);
+                entry.setTime(sample.time);
+                if (stored) {
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(sample.data.length);
+                    entry.setCrc(crc(sample.data));
+                }
+                zip.putNextEntry(entry);
+                zip.write(sample.data);
+                zip.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] zipWriter(List<Sample> samples, Encoder encoder) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipWriter zip = new ZipWriter(bytes)) {
+            for (Sample sample : samples)
+                zip.write(encoder.encode(sample));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static ByteBuffer direct(byte[] data) {
+        ByteBuffer ret = ByteBuffer.allocateDirect(data.length);
+        ret.put(data);
+        ret.flip();
+        return ret;
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+
+    private static long time(int year, int month, int day, int hour, int minute, int second) {
+        return LocalDateTime.of(year, month, day, hour, minute, second).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    @FunctionalInterface
+    private interface Encoder {
+        RawEntry encode(Sample sample) throws IOException;
+    }
+
+    private static class Sample {
+        private final String name;
+        private final long time;
+        private final byte[] data;
+
+        private Sample(String name, long time, byte[] data) {
+            this.name = name;
+            this.time = time;
+            this.data = data;
+        }
+    }
+}